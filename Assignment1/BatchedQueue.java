@@ -0,0 +1,139 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**Queue whose entries are whole producer batches, unbatched again on the consumer side
+putBatch(items) costs one queue operation however many items it carries, so producers
+that coalesce (Producer.withBatching) pay the queue's synchronization once per batch.
+Consumers take single items as usual: each consumer thread takes a batch and hands out
+its items from a private cursor, and returnHeld() puts back what a finishing consumer
+did not get to, so no item is stranded when a consumer is retired.
+size() and capacity() count batches, not items.
+*/
+
+public class BatchedQueue<T> implements ItemQueue<T> {
+
+    private final ItemQueue<List<T>> batches;
+    private final Queue<List<T>> returned = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<ArrayDeque<T>> held = ThreadLocal.withInitial(ArrayDeque::new);
+
+    // capacity is in batches
+    public BatchedQueue(ItemQueue.Type type, int capacity, WaitStrategy waitStrategy) {
+        if (type == ItemQueue.Type.WORK_STEALING) {
+            throw new IllegalArgumentException("Batches must stay whole, not be stolen across lanes: " + type);
+        }
+        this.batches = type.create(capacity, waitStrategy);
+    }
+
+    // Carries batches on an existing queue, for example an InstrumentedQueue so metrics see every batch
+    public BatchedQueue(ItemQueue<List<T>> batches) {
+        if (batches instanceof WorkStealingQueue) {
+            throw new IllegalArgumentException("Batches must stay whole, not be stolen across lanes");
+        }
+        this.batches = batches;
+    }
+
+    public BatchedQueue(ItemQueue.Type type, int capacity) {
+        this(type, capacity, null);
+    }
+
+    // One queue entry for the whole list; the queue takes ownership of it
+    @Override
+    public void putBatch(List<T> items) throws InterruptedException {
+        if (!items.isEmpty()) {
+            batches.put(items);
+        }
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        batches.put(Collections.singletonList(item));
+    }
+
+    @Override
+    public boolean offer(T item) {
+        return batches.offer(Collections.singletonList(item));
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        T item = poll();
+        if (item != null) {
+            return item;
+        }
+        List<T> batch = batches.take();
+        if (batch == null) {
+            // Closed and drained, apart from anything a finished consumer handed back meanwhile
+            batch = returned.poll();
+        }
+        return batch == null ? null : unbatch(batch);
+    }
+
+    @Override
+    public T poll() {
+        ArrayDeque<T> cursor = held.get();
+        if (!cursor.isEmpty()) {
+            return cursor.poll();
+        }
+        List<T> batch = returned.poll();
+        if (batch == null) {
+            batch = batches.poll();
+        }
+        return batch == null ? null : unbatch(batch);
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T item = poll();
+        if (item != null) {
+            return item;
+        }
+        List<T> batch = batches.poll(timeout, unit);
+        return batch == null ? null : unbatch(batch);
+    }
+
+    // Puts the calling thread's untaken items back as one batch for any consumer to pick up
+    @Override
+    public void returnHeld() {
+        ArrayDeque<T> cursor = held.get();
+        if (!cursor.isEmpty()) {
+            returned.add(new ArrayList<>(cursor));
+            cursor.clear();
+        }
+    }
+
+    // Batches queued, including ones handed back by finished consumers
+    @Override
+    public int size() {
+        return batches.size() + returned.size();
+    }
+
+    // Bound in batches
+    @Override
+    public int capacity() {
+        return batches.capacity();
+    }
+
+    @Override
+    public void close() {
+        batches.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return batches.isClosed();
+    }
+
+    // First item of batch; the rest stay with this thread
+    private T unbatch(List<T> batch) {
+        ArrayDeque<T> cursor = held.get();
+        for (int i = 1; i < batch.size(); i++) {
+            cursor.add(batch.get(i));
+        }
+        return batch.get(0);
+    }
+}
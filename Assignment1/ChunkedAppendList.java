@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**Concurrent append-only list built from fixed-size chunks
+Writers claim an index with one atomic increment and write into a lazily created chunk,
+so appends never copy or lock. Readers can walk the list while consumers are still adding.
+*/
+
+public class ChunkedAppendList<T> implements ItemSink<T> {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger claimed = new AtomicInteger(0);
+
+    @Override
+    public void add(T item) {
+        if (item == null) {
+            throw new NullPointerException("ChunkedAppendList does not accept null items");
+        }
+        int index = claimed.getAndIncrement();
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        if (chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalStateException("ChunkedAppendList is full (" + (long) MAX_CHUNKS * CHUNK_SIZE + " items)");
+        }
+        chunkFor(chunkIndex).set(index & CHUNK_MASK, item);
+    }
+
+    // Item at index, or null if that slot has been claimed but not yet written
+    public T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        AtomicReferenceArray<T> chunk = chunks.get(index >>> CHUNK_SHIFT);
+        return chunk == null ? null : chunk.get(index & CHUNK_MASK);
+    }
+
+    // Number of appends started so far; equals the item count once writers are done
+    @Override
+    public int size() {
+        return Math.min(claimed.get(), MAX_CHUNKS * CHUNK_SIZE);
+    }
+
+    // Visits every item written so far, in index order
+    public void forEach(Consumer<? super T> action) {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            T item = get(i);
+            if (item != null) {
+                action.accept(item);
+            }
+        }
+    }
+
+    // Copy of every item written so far
+    public List<T> snapshot() {
+        List<T> copy = new ArrayList<>(size());
+        forEach(copy::add);
+        return copy;
+    }
+
+    private AtomicReferenceArray<T> chunkFor(int chunkIndex) {
+        AtomicReferenceArray<T> chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            // Racing writers may both allocate; only one chunk wins the slot
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**Supervisor that grows and shrinks the consumer pool with load
+Every sample interval it reads the queue depth and how busy each consumer was.
+When the queue stays near capacity it starts another Consumer; when the queue stays
+nearly empty and consumers sit idle it retires the least busy one with a targeted
+stop request, so the other consumers keep running and still drain the queue after close.
+With a PipelineCompletion attached, consumers are tracked by it and the pool stops
+growing once the queue is closed; the closed check and the registration are one step,
+so no consumer joins after the drain has started.
+*/
+
+public class ElasticConsumerPool {
+
+    private final ItemQueue<String> sharedQueue;
+    private final IntFunction<ProducerConsumerDemo.Consumer> consumerFactory;
+
+    private int minConsumers = 1;
+    private int maxConsumers = Runtime.getRuntime().availableProcessors();
+    private long sampleIntervalMillis = 100;
+    private double highWatermark = 0.8;
+    private double lowWatermark = 0.1;
+    private double idleUtilization = 0.2;
+    private int sustainedSamples = 3;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private PipelineCompletion<String> completion;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private ExecutorService executor;
+    private ScheduledExecutorService supervisor;
+    private int nextWorkerNumber = 1;
+    private int highStreak;
+    private int lowStreak;
+    private long lastSampleNanos;
+    private int spawned;
+    private int retired;
+
+    // consumerFactory builds a configured Consumer for worker number n (1-based)
+    public ElasticConsumerPool(ItemQueue<String> sharedQueue,
+                               IntFunction<ProducerConsumerDemo.Consumer> consumerFactory) {
+        this.sharedQueue = sharedQueue;
+        this.consumerFactory = consumerFactory;
+    }
+
+    public ElasticConsumerPool withBounds(int minConsumers, int maxConsumers) {
+        if (minConsumers < 1 || maxConsumers < minConsumers) {
+            throw new IllegalArgumentException("Need 1 <= minConsumers <= maxConsumers");
+        }
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        return this;
+    }
+
+    // Queue fill ratio above which to grow and below which to consider shrinking
+    public ElasticConsumerPool withWatermarks(double highWatermark, double lowWatermark) {
+        if (lowWatermark < 0 || highWatermark > 1 || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Need 0 <= lowWatermark < highWatermark <= 1");
+        }
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        return this;
+    }
+
+    // Average busy fraction below which consumers count as idle
+    public ElasticConsumerPool withIdleUtilization(double idleUtilization) {
+        this.idleUtilization = idleUtilization;
+        return this;
+    }
+
+    // How often to sample, and how many consecutive samples must agree before scaling
+    public ElasticConsumerPool withSampling(long intervalMillis, int sustainedSamples) {
+        if (intervalMillis < 1 || sustainedSamples < 1) {
+            throw new IllegalArgumentException("intervalMillis and sustainedSamples must be >= 1");
+        }
+        this.sampleIntervalMillis = intervalMillis;
+        this.sustainedSamples = sustainedSamples;
+        return this;
+    }
+
+    public ElasticConsumerPool withExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    // Registers every spawned consumer with the completion protocol
+    public ElasticConsumerPool withCompletion(PipelineCompletion<String> completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    // Starts minConsumers consumers and the supervisor
+    public synchronized void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Pool already started");
+        }
+        executor = executionMode.newExecutor("elastic-consumer");
+        for (int i = 0; i < minConsumers; i++) {
+            spawn();
+        }
+        lastSampleNanos = System.nanoTime();
+        supervisor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "consumer-pool-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        supervisor.scheduleAtFixedRate(this::sample, sampleIntervalMillis, sampleIntervalMillis,
+                                       TimeUnit.MILLISECONDS);
+    }
+
+    // Stops scaling and waits for every consumer to exit (after the queue is closed)
+    public void awaitTermination() throws InterruptedException {
+        List<Future<?>> tasks = new ArrayList<>();
+        synchronized (this) {
+            if (supervisor != null) {
+                supervisor.shutdownNow();
+            }
+            for (Worker worker : workers) {
+                tasks.add(worker.task);
+            }
+        }
+        ProducerConsumerDemo.awaitAll(tasks);
+        synchronized (this) {
+            executor.shutdown();
+        }
+    }
+
+    public synchronized int activeConsumers() {
+        int active = 0;
+        for (Worker worker : workers) {
+            if (!worker.consumer.isStopRequested() && !worker.task.isDone()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public synchronized int spawnedCount() {
+        return spawned;
+    }
+
+    public synchronized int retiredCount() {
+        return retired;
+    }
+
+    // One supervisor tick: measure depth and utilization, then grow, shrink or hold
+    synchronized void sample() {
+        long now = System.nanoTime();
+        long interval = Math.max(1, now - lastSampleNanos);
+        lastSampleNanos = now;
+
+        double depthRatio = (double) sharedQueue.size() / sharedQueue.capacity();
+        double utilizationSum = 0;
+        Worker leastBusy = null;
+        double leastBusyUtilization = Double.MAX_VALUE;
+        int active = 0;
+        for (Iterator<Worker> it = workers.iterator(); it.hasNext(); ) {
+            Worker worker = it.next();
+            if (worker.task.isDone()) {
+                it.remove();
+                continue;
+            }
+            if (worker.consumer.isStopRequested()) {
+                continue;
+            }
+            double utilization = worker.utilizationSince(interval);
+            utilizationSum += utilization;
+            active++;
+            if (utilization < leastBusyUtilization) {
+                leastBusyUtilization = utilization;
+                leastBusy = worker;
+            }
+        }
+        double averageUtilization = active == 0 ? 0 : utilizationSum / active;
+
+        highStreak = depthRatio >= highWatermark ? highStreak + 1 : 0;
+        lowStreak = depthRatio <= lowWatermark && averageUtilization < idleUtilization ? lowStreak + 1 : 0;
+
+        if (highStreak >= sustainedSamples && active < maxConsumers && spawn()) {
+            highStreak = 0;
+        } else if (lowStreak >= sustainedSamples && active > minConsumers && leastBusy != null) {
+            leastBusy.consumer.requestStop();
+            retired++;
+            lowStreak = 0;
+        }
+    }
+
+    // Starts one more consumer; false, starting nothing, once the queue is closed
+    private boolean spawn() {
+        ProducerConsumerDemo.Consumer consumer = consumerFactory.apply(nextWorkerNumber)
+            .withPollInterval(Math.max(1, sampleIntervalMillis / 2));
+        Runnable task;
+        if (completion == null) {
+            task = sharedQueue.isClosed() ? null : consumer;
+        } else {
+            task = completion.tryTrackConsumer(consumer);
+        }
+        if (task == null) {
+            return false;
+        }
+        nextWorkerNumber++;
+        workers.add(new Worker(consumer, executor.submit(task)));
+        spawned++;
+        return true;
+    }
+
+    // A running consumer and the busy time seen at the previous sample
+    private static final class Worker {
+        final ProducerConsumerDemo.Consumer consumer;
+        final Future<?> task;
+        private long lastBusyNanos;
+
+        Worker(ProducerConsumerDemo.Consumer consumer, Future<?> task) {
+            this.consumer = consumer;
+            this.task = task;
+        }
+
+        double utilizationSince(long intervalNanos) {
+            long busy = consumer.busyNanos();
+            double utilization = (double) (busy - lastBusyNanos) / intervalNanos;
+            lastBusyNanos = busy;
+            return Math.min(1.0, utilization);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**Event logging for the producer/consumer hot loop
+Direct mode prints each event as it happens, exactly like the original println calls.
+Async mode has each worker write a fixed-size binary record (event, thread id, item,
+value, counter, timestamp) into its own single-writer ring; a background thread formats
+and flushes the rings in batches, so workers never block on the console.
+Rings start at INITIAL_RING_CAPACITY events and double only when a worker outruns the
+flusher, up to the configured capacity, so thousands of short-lived (e.g. virtual) threads
+cost a few hundred bytes each; a ring is unregistered once its thread has died and it is empty.
+Item events can be sampled so only 1 in N is recorded.
+*/
+
+public final class EventLog implements AutoCloseable {
+
+    // Verbosity: OFF records nothing, INFO records lifecycle events, DEBUG adds per-item events
+    public enum Level { OFF, ERROR, INFO, DEBUG }
+
+    // Kinds of event Producer and Consumer emit, with the level at which each is recorded
+    public enum Event {
+        PRODUCED(Level.DEBUG),
+        BATCH_PRODUCED(Level.DEBUG),
+        PRODUCER_FINISHED(Level.INFO),
+        CONSUMED(Level.DEBUG),
+        BATCH_CONSUMED(Level.DEBUG),
+        TERMINATION_RECEIVED(Level.INFO),
+        CONSUMER_FINISHED(Level.INFO),
+        RETIRED(Level.INFO),
+        QUEUE_DRAINED(Level.INFO),
+        INTERRUPTED(Level.ERROR);
+
+        final Level level;
+
+        Event(Level level) {
+            this.level = level;
+        }
+
+        // Same wording the workers have always printed
+        String format(String worker, String item, long value, long counter) {
+            switch (this) {
+                case PRODUCED:             return worker + " produced: " + item + " (Total produced: " + counter + ")";
+                case BATCH_PRODUCED:       return worker + " produced batch of " + value + " (Total produced: " + counter + ")";
+                case PRODUCER_FINISHED:    return worker + " finished producing.";
+                case CONSUMED:             return worker + " consumed: " + item + " (Total consumed: " + counter + ")";
+                case BATCH_CONSUMED:       return worker + " consumed batch of " + value + " (Total consumed: " + counter + ")";
+                case TERMINATION_RECEIVED: return worker + " received termination signal.";
+                case CONSUMER_FINISHED:    return worker + " finished consuming.";
+                case RETIRED:              return worker + " retired by stop request.";
+                case QUEUE_DRAINED:        return worker + " found the queue closed and drained.";
+                case INTERRUPTED:          return worker + " was interrupted.";
+                default: throw new IllegalStateException("Unknown event: " + this);
+            }
+        }
+    }
+
+    // Shared direct logger used by workers that are not given one, matching the original output
+    public static final EventLog CONSOLE = direct(Level.DEBUG);
+
+    private static final Event[] EVENTS = Event.values();
+    private static final int DEFAULT_RING_CAPACITY = 4096;
+    static final int INITIAL_RING_CAPACITY = 16;
+
+    private final Level level;
+    private final boolean async;
+    private final int sampleEvery;
+    private final long flushIntervalNanos;
+    private final int ringCapacity;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final long startNanos = System.nanoTime();
+
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> localRing = ThreadLocal.withInitial(this::registerRing);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private EventLog(Level level, boolean async, int sampleEvery, long flushIntervalMillis,
+                     int ringCapacity, PrintStream out, PrintStream err) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery must be >= 1: " + sampleEvery);
+        }
+        this.level = level;
+        this.async = async;
+        this.sampleEvery = sampleEvery;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.ringCapacity = Integer.highestOneBit(Math.max(2, ringCapacity - 1)) << 1;
+        this.out = out;
+        this.err = err;
+        if (async && level != Level.OFF) {
+            flusher = new Thread(this::flushLoop, "event-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    // Prints each event synchronously on the calling thread
+    public static EventLog direct(Level level) {
+        return new EventLog(level, false, 1, 0, DEFAULT_RING_CAPACITY, System.out, System.err);
+    }
+
+    // Records 1 in sampleEvery item events into per-thread rings, flushed every flushIntervalMillis
+    public static EventLog async(Level level, int sampleEvery, long flushIntervalMillis) {
+        return async(level, sampleEvery, flushIntervalMillis, DEFAULT_RING_CAPACITY, System.out, System.err);
+    }
+
+    public static EventLog async(Level level, int sampleEvery, long flushIntervalMillis,
+                                 int ringCapacity, PrintStream out, PrintStream err) {
+        return new EventLog(level, true, sampleEvery, flushIntervalMillis, ringCapacity, out, err);
+    }
+
+    public boolean isEnabled(Event event) {
+        return event.level.compareTo(level) <= 0;
+    }
+
+    // Records one event; never blocks in async mode (events are dropped and counted if a ring is full)
+    public void log(Event event, String worker, String item, long value, long counter) {
+        if (!isEnabled(event)) {
+            return;
+        }
+        if (!async) {
+            (event == Event.INTERRUPTED ? err : out).println(event.format(worker, item, value, counter));
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        localRing.get().write(event, worker, item, value, counter);
+    }
+
+    // Events lost because a worker outran the flusher
+    public long droppedEvents() {
+        return dropped.get();
+    }
+
+    // Event slots currently allocated across the registered rings
+    long allocatedSlots() {
+        long slots = 0;
+        for (Ring ring : rings) {
+            slots += ring.allocatedSlots();
+        }
+        return slots;
+    }
+
+    // Stops the flusher after writing out everything recorded so far
+    @Override
+    public void close() {
+        if (flusher == null || closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            err.println("EventLog dropped " + dropped.get() + " events (ring full)");
+        }
+    }
+
+    private Ring registerRing() {
+        Ring ring = new Ring(Thread.currentThread(), ringCapacity);
+        rings.add(ring);
+        return ring;
+    }
+
+    private void flushLoop() {
+        StringBuilder outBatch = new StringBuilder(8192);
+        StringBuilder errBatch = new StringBuilder();
+        while (true) {
+            boolean finalPass = closed;
+            for (Ring ring : rings) {
+                ring.drain(outBatch, errBatch);
+                if (!ring.owner.isAlive() && ring.isEmpty()) {
+                    rings.remove(ring);
+                }
+            }
+            if (outBatch.length() > 0) {
+                out.print(outBatch);
+                out.flush();
+                outBatch.setLength(0);
+            }
+            if (errBatch.length() > 0) {
+                err.print(errBatch);
+                err.flush();
+                errBatch.setLength(0);
+            }
+            if (finalPass) {
+                return;
+            }
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+    }
+
+    //Single-writer ring of fixed-size event records owned by one worker thread
+    // It grows by handing the flusher a bigger buffer: the old buffer records the position
+    // the new one takes over from, and the flusher follows the link once it reaches it
+    private final class Ring {
+        private static final int LONGS_PER_EVENT = 4; // event, value, counter, timestamp
+        private static final int REFS_PER_EVENT = 2;  // worker name, item
+
+        final Thread owner;
+        private final long threadId;
+        private final int maxCapacity;
+        private Buffer writeBuffer;                            // owner only
+        private Buffer readBuffer;                             // flusher only
+        private final AtomicLong published = new AtomicLong(); // written by the owner
+        private final AtomicLong consumed = new AtomicLong();  // written by the flusher
+        private long sampleCounter;
+
+        Ring(Thread owner, int maxCapacity) {
+            this.owner = owner;
+            this.threadId = owner.getId();
+            this.maxCapacity = maxCapacity;
+            this.writeBuffer = new Buffer(Math.min(INITIAL_RING_CAPACITY, maxCapacity));
+            this.readBuffer = writeBuffer;
+        }
+
+        void write(Event event, String worker, String item, long value, long counter) {
+            if (event.level == Level.DEBUG && sampleEvery > 1 && sampleCounter++ % sampleEvery != 0) {
+                return;
+            }
+            long position = published.get();
+            Buffer buffer = writeBuffer;
+            if (position - consumed.get() > buffer.mask) {
+                if (buffer.mask + 1 >= maxCapacity) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                // Positions from here on live in the bigger buffer; the volatile link publishes jumpAt
+                Buffer grown = new Buffer((buffer.mask + 1) << 1);
+                buffer.jumpAt = position;
+                buffer.next = grown;
+                writeBuffer = grown;
+                buffer = grown;
+            }
+            int slot = (int) position & buffer.mask;
+            int base = slot * LONGS_PER_EVENT;
+            buffer.records[base] = event.ordinal();
+            buffer.records[base + 1] = value;
+            buffer.records[base + 2] = counter;
+            buffer.records[base + 3] = System.nanoTime();
+            buffer.refs[slot * REFS_PER_EVENT] = worker;
+            buffer.refs[slot * REFS_PER_EVENT + 1] = item;
+            published.lazySet(position + 1);
+        }
+
+        boolean isEmpty() {
+            return consumed.get() == published.get();
+        }
+
+        // Read by the flusher, so it may lag the owner's latest growth by one buffer
+        int allocatedSlots() {
+            return readBuffer.mask + 1;
+        }
+
+        void drain(StringBuilder outBatch, StringBuilder errBatch) {
+            long position = consumed.get();
+            long limit = published.get();
+            Buffer buffer = readBuffer;
+            for (; position < limit; position++) {
+                Buffer next;
+                while ((next = buffer.next) != null && position >= buffer.jumpAt) {
+                    buffer = next;
+                }
+                int slot = (int) position & buffer.mask;
+                int base = slot * LONGS_PER_EVENT;
+                Event event = EVENTS[(int) buffer.records[base]];
+                String worker = buffer.refs[slot * REFS_PER_EVENT];
+                String item = buffer.refs[slot * REFS_PER_EVENT + 1];
+                buffer.refs[slot * REFS_PER_EVENT] = null;
+                buffer.refs[slot * REFS_PER_EVENT + 1] = null;
+                StringBuilder target = event == Event.INTERRUPTED ? errBatch : outBatch;
+                target.append(String.format("[%10.3f ms T%d] ", (buffer.records[base + 3] - startNanos) / 1e6, threadId))
+                      .append(event.format(worker, item, buffer.records[base + 1], buffer.records[base + 2]))
+                      .append(System.lineSeparator());
+            }
+            readBuffer = buffer;
+            consumed.lazySet(limit);
+        }
+    }
+
+    //Record storage of one ring; next is set when the owner outgrows it
+    private static final class Buffer {
+        final long[] records;
+        final String[] refs;
+        final int mask;
+        long jumpAt;
+        volatile Buffer next;
+
+        Buffer(int capacity) {
+            this.records = new long[capacity * Ring.LONGS_PER_EVENT];
+            this.refs = new String[capacity * Ring.REFS_PER_EVENT];
+            this.mask = capacity - 1;
+        }
+    }
+}
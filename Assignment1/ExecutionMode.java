@@ -0,0 +1,52 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**How Producer and Consumer runnables are scheduled onto threads
+PLATFORM runs one OS thread per worker; VIRTUAL runs each worker on a virtual
+thread so I/O-bound producers that block in sleep or put do not pin an OS thread.
+*/
+
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    // Resolved once; null when the running JDK has no virtual threads (before Java 21)
+    private static final Method VIRTUAL_EXECUTOR_FACTORY = findVirtualExecutorFactory();
+
+    // True if this mode can run on the current JDK
+    public boolean isSupported() {
+        return this == PLATFORM || VIRTUAL_EXECUTOR_FACTORY != null;
+    }
+
+    // Executor that starts a new thread of this kind for every submitted task
+    public ExecutorService newExecutor(String namePrefix) {
+        if (this == PLATFORM) {
+            return Executors.newCachedThreadPool(namedPlatformThreads(namePrefix));
+        }
+        if (VIRTUAL_EXECUTOR_FACTORY == null) {
+            throw new UnsupportedOperationException(
+                "Virtual threads require Java 21 or newer (running " + System.getProperty("java.version") + ")");
+        }
+        try {
+            return (ExecutorService) VIRTUAL_EXECUTOR_FACTORY.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory namedPlatformThreads(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> new Thread(runnable, namePrefix + "-" + counter.incrementAndGet());
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Compares platform-thread and virtual-thread execution of the producer-consumer pipeline
+Producers keep their simulated sleep (the I/O stand-in) and block on a small shared queue;
+consumers run without delay, so the run shows how many blocked producers each mode sustains.
+Usage: java ExecutionModeComparison [producers] [itemsPerProducer]
+*/
+
+public class ExecutionModeComparison {
+
+    // Platform threads each reserve an OS stack, so the compared runs are capped well below the virtual-only one
+    private static final int PLATFORM_PRODUCER_LIMIT = 5_000;
+    private static final int NUM_CONSUMERS = 8;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int CONSUMER_BATCH_SIZE = 64;
+
+    // Outcome of one run
+    static class Result {
+        final ExecutionMode mode;
+        final int producers;
+        final int items;
+        final long elapsedNanos;
+        final long peakHeapBytes;
+        final int peakPlatformThreads;
+
+        Result(ExecutionMode mode, int producers, int items, long elapsedNanos,
+               long peakHeapBytes, int peakPlatformThreads) {
+            this.mode = mode;
+            this.producers = producers;
+            this.items = items;
+            this.elapsedNanos = elapsedNanos;
+            this.peakHeapBytes = peakHeapBytes;
+            this.peakPlatformThreads = peakPlatformThreads;
+        }
+
+        double itemsPerSecond() {
+            return items / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s producers=%,7d items=%,8d time=%,8.1f ms throughput=%,10.0f items/s "
+                                 + "peakHeap=%,7.1f MB peakOsThreads=%,d",
+                mode, producers, items, elapsedNanos / 1e6, itemsPerSecond(),
+                peakHeapBytes / (1024.0 * 1024.0), peakPlatformThreads);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int itemsPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        System.out.println("=== Execution Mode Comparison ===");
+        System.out.println("Requested Producers: " + producers);
+        System.out.println("Items per Producer: " + itemsPerProducer);
+        System.out.println("Consumers: " + NUM_CONSUMERS);
+        System.out.println("Java Version: " + System.getProperty("java.version"));
+        System.out.println("================================\n");
+
+        // Both modes run at the same producer count so throughput and memory compare like for like;
+        // the platform limit caps that count, and the full count is a separate virtual-only row
+        int comparedProducers = Math.min(producers, PLATFORM_PRODUCER_LIMIT);
+        if (comparedProducers < producers) {
+            System.out.println("Modes compared at " + comparedProducers + " producers (platform limit).");
+        }
+        List<Result> compared = new ArrayList<>();
+        compared.add(run(ExecutionMode.PLATFORM, comparedProducers, itemsPerProducer));
+        Result virtualOnly = null;
+        if (ExecutionMode.VIRTUAL.isSupported()) {
+            compared.add(run(ExecutionMode.VIRTUAL, comparedProducers, itemsPerProducer));
+            if (comparedProducers < producers) {
+                virtualOnly = run(ExecutionMode.VIRTUAL, producers, itemsPerProducer);
+            }
+        } else {
+            System.out.println("VIRTUAL run skipped: virtual threads require Java 21 or newer.");
+        }
+
+        System.out.println("\n=== Results (" + comparedProducers + " producers per mode) ===");
+        compared.forEach(System.out::println);
+        if (virtualOnly != null) {
+            System.out.println("\n=== Virtual only (" + producers + " producers, beyond the platform limit) ===");
+            System.out.println(virtualOnly);
+        }
+    }
+
+    // Runs the full pipeline once in the given mode and samples heap and thread usage while it runs
+    static Result run(ExecutionMode mode, int producers, int itemsPerProducer) throws InterruptedException {
+        ItemQueue<String> sharedQueue = ItemQueue.Type.RING_MPMC.create(QUEUE_CAPACITY);
+        List<String> destinationContainer = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger totalProduced = new AtomicInteger(0);
+        AtomicInteger totalConsumed = new AtomicInteger(0);
+
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "memory-sampler");
+        sampler.setDaemon(true);
+
+        // Per-item console output would dominate both modes, so the measured run logs nothing
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+        long start = System.nanoTime();
+        sampler.start();
+        try {
+            ExecutorService workers = mode.newExecutor("worker");
+            PipelineCompletion<String> completion = new PipelineCompletion<>(sharedQueue);
+            List<Future<?>> consumerTasks = new ArrayList<>();
+            for (int i = 0; i < NUM_CONSUMERS; i++) {
+                consumerTasks.add(workers.submit(completion.trackConsumer(
+                    new ProducerConsumerDemo.Consumer(sharedQueue, destinationContainer,
+                                                      "Consumer-" + (i + 1), totalConsumed)
+                        .withBatching(CONSUMER_BATCH_SIZE, 0)
+                        .withSimulatedDelay(0, 0)
+                        .withEventLog(silent))));
+            }
+
+            for (int i = 0; i < producers; i++) {
+                List<String> producerData = new ArrayList<>(itemsPerProducer);
+                for (int j = 0; j < itemsPerProducer; j++) {
+                    producerData.add("P" + i + "-Item-" + j);
+                }
+                workers.submit(completion.trackProducer(
+                    new ProducerConsumerDemo.Producer(producerData, sharedQueue,
+                                                      "Producer-" + (i + 1), totalProduced)
+                        .withEventLog(silent)));
+            }
+
+            // Close once every producer is done; each consumer exits when it finds the queue drained
+            completion.awaitProducersAndClose();
+            ProducerConsumerDemo.awaitAll(consumerTasks);
+            workers.shutdown();
+        } finally {
+            sampler.interrupt();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (totalConsumed.get() != producers * itemsPerProducer) {
+            throw new IllegalStateException(mode + " run lost items: consumed " + totalConsumed.get()
+                                            + " of " + producers * itemsPerProducer);
+        }
+        Result result = new Result(mode, producers, totalConsumed.get(), elapsed,
+                                   peakHeap.get(), threads.getPeakThreadCount());
+        System.out.println(result);
+        return result;
+    }
+}
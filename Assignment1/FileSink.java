@@ -0,0 +1,404 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**Durable sink that appends consumed items, one per line, to a file with group commit
+Consumers only hand their bytes to a pending group; one writer thread copies each group
+through a direct buffer into a FileChannel and then forces it to disk, so however many
+consumers are adding, the cost is one write burst and at most one fsync per group.
+Items added while a group is being forced form the next group.
+Durability levels: NONE never forces (the OS decides when data reaches disk), PERIODIC
+forces at most once per window and add() does not wait, GROUP makes add() return only once
+its item has been forced. flush() and close() always wait until everything added is forced.
+Bytes added but not yet written are bounded by maxPendingBytes: above it add() waits for the
+writer, so a disk slower than the consumers slows them down instead of filling the heap.
+*/
+
+public class FileSink implements ItemSink<String>, AutoCloseable {
+
+    // When add() may return relative to the item reaching disk
+    public enum Durability { NONE, PERIODIC, GROUP }
+
+    public static final int DEFAULT_BUFFER_BYTES = 64 * 1024;
+    public static final long DEFAULT_WINDOW_MILLIS = 10;
+    public static final long DEFAULT_MAX_PENDING_BYTES = 8L * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Durability durability;
+    private final long windowNanos;
+    private final ByteBuffer buffer;
+    private final long maxPendingBytes;
+    private final Thread writer;
+    private final long openedAt = System.nanoTime();
+
+    // Group state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition progress = lock.newCondition();
+    private List<byte[]> pending = new ArrayList<>();
+    private long pendingBytes;
+    private long peakPendingBytes;
+    private long accepted;
+    private long written;
+    private long durable;
+    private long forceRequestedUpTo;
+    private boolean closed;
+    private IOException failure;
+
+    // Read without the lock for reporting
+    private volatile long bytesWritten;
+    private volatile long fsyncCount;
+    private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+
+    // Appends to path (created if missing); windowMillis only applies to PERIODIC
+    public FileSink(Path path, Durability durability, long windowMillis, int bufferBytes, long maxPendingBytes) {
+        if (windowMillis < 0 || bufferBytes < 1 || maxPendingBytes < 1) {
+            throw new IllegalArgumentException("windowMillis must be >= 0, bufferBytes and maxPendingBytes >= 1");
+        }
+        this.path = path;
+        this.durability = durability;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        this.maxPendingBytes = maxPendingBytes;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open sink file " + path, e);
+        }
+        this.writer = new Thread(this::writeGroups, "file-sink-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public FileSink(Path path, Durability durability, long windowMillis, int bufferBytes) {
+        this(path, durability, windowMillis, bufferBytes, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    public FileSink(Path path, Durability durability) {
+        this(path, durability, DEFAULT_WINDOW_MILLIS, DEFAULT_BUFFER_BYTES);
+    }
+
+    @Override
+    public void add(String item) {
+        byte[] record = encode(item);
+        long sequence;
+        lock.lock();
+        try {
+            awaitRoom(record.length);
+            pending.add(record);
+            addPendingBytes(record.length);
+            sequence = ++accepted;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (durability == Durability.GROUP) {
+            awaitDurable(sequence);
+        }
+    }
+
+    // One group entry per item but a single wait for the whole batch
+    @Override
+    public void addAll(Collection<? extends String> items) {
+        List<byte[]> encoded = new ArrayList<>(items.size());
+        long bytes = 0;
+        for (String item : items) {
+            byte[] record = encode(item);
+            encoded.add(record);
+            bytes += record.length;
+        }
+        long sequence;
+        lock.lock();
+        try {
+            awaitRoom(bytes);
+            pending.addAll(encoded);
+            addPendingBytes(bytes);
+            accepted += encoded.size();
+            sequence = accepted;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (durability == Durability.GROUP) {
+            awaitDurable(sequence);
+        }
+    }
+
+    // Waits until everything added so far is on disk, whatever the durability level
+    @Override
+    public void flush() {
+        long sequence;
+        lock.lock();
+        try {
+            sequence = accepted;
+            forceRequestedUpTo = Math.max(forceRequestedUpTo, sequence);
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    // Items accepted so far
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, accepted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces what is pending, stops the writer and closes the file
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                work.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+                channel.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close sink file " + path, e);
+            }
+        }
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    public long fsyncCount() {
+        return fsyncCount;
+    }
+
+    public LatencyHistogram fsyncLatency() {
+        return fsyncLatency;
+    }
+
+    // Most bytes ever added but not yet written
+    public long peakPendingBytes() {
+        lock.lock();
+        try {
+            return peakPendingBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The writer thread, so a test can interrupt it
+    Thread writer() {
+        return writer;
+    }
+
+    // Write throughput since the sink was opened
+    public double bytesPerSecond() {
+        return bytesWritten / ((System.nanoTime() - openedAt) / 1e9);
+    }
+
+    public String report() {
+        long fsyncs = fsyncCount;
+        return String.format("%s (%s): %d items, %.1f MB/s, %d fsyncs (%.1f items each), fsync p50 %d us, p99 %d us",
+            path.getFileName(), durability, size(), bytesPerSecond() / (1024 * 1024), fsyncs,
+            fsyncs == 0 ? 0.0 : (double) durable() / fsyncs,
+            TimeUnit.NANOSECONDS.toMicros(fsyncLatency.percentile(50)),
+            TimeUnit.NANOSECONDS.toMicros(fsyncLatency.percentile(99)));
+    }
+
+    private long durable() {
+        lock.lock();
+        try {
+            return durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writer thread: take the pending group, write it, force it when the durability level asks for it
+    private void writeGroups() {
+        long lastForce = System.nanoTime();
+        while (true) {
+            List<byte[]> group;
+            boolean force;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed && !forceDue(lastForce)) {
+                    if (durability == Durability.PERIODIC && durable < written) {
+                        work.awaitNanos(lastForce + windowNanos - System.nanoTime());
+                    } else {
+                        work.awaitUninterruptibly();
+                    }
+                }
+                if (pending.isEmpty() && closed) {
+                    return;
+                }
+                group = pending;
+                pending = new ArrayList<>();
+            } catch (InterruptedException e) {
+                // Nobody would write or force again; fail the sink so waiters see it instead of hanging
+                fail(new InterruptedIOException("File sink writer interrupted"));
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                long bytes = write(group);
+                lock.lock();
+                try {
+                    written += group.size();
+                    pendingBytes -= bytes;
+                    // Adders waiting for room can go on before the force
+                    progress.signalAll();
+                    force = forceDue(lastForce);
+                } finally {
+                    lock.unlock();
+                }
+                if (force) {
+                    long start = System.nanoTime();
+                    channel.force(false);
+                    fsyncLatency.record(System.nanoTime() - start);
+                    fsyncCount++;
+                    lastForce = System.nanoTime();
+                }
+                lock.lock();
+                try {
+                    if (force) {
+                        durable = written;
+                    }
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+    }
+
+    // Stops the sink after a write failure; every waiter wakes up and sees it
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            closed = true;
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether written data should be forced now; caller holds the lock
+    private boolean forceDue(long lastForce) {
+        if (durable >= written) {
+            return false;
+        }
+        if (forceRequestedUpTo > durable) {
+            return true;
+        }
+        switch (durability) {
+            case GROUP:    return true;
+            case PERIODIC: return System.nanoTime() - lastForce >= windowNanos;
+            default:       return false;
+        }
+    }
+
+    // Copies the group through the direct buffer; records larger than the buffer are written on their own
+    private long write(List<byte[]> group) throws IOException {
+        long bytes = 0;
+        for (byte[] record : group) {
+            if (record.length > buffer.remaining()) {
+                drain();
+            }
+            if (record.length > buffer.capacity()) {
+                ByteBuffer large = ByteBuffer.wrap(record);
+                while (large.hasRemaining()) {
+                    channel.write(large);
+                }
+            } else {
+                buffer.put(record);
+            }
+            bytes += record.length;
+        }
+        drain();
+        bytesWritten += bytes;
+        return bytes;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Waits until sequence is forced; the sink may have failed or closed meanwhile
+    private void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durable < sequence && failure == null) {
+                if (closed && writer.getState() == Thread.State.TERMINATED) {
+                    break;
+                }
+                progress.awaitUninterruptibly();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Sink file write failed: " + path, failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits while adding bytes would exceed maxPendingBytes; a lone oversized add still goes through. Caller holds the lock
+    private void awaitRoom(long bytes) {
+        checkOpen();
+        while (pendingBytes > 0 && pendingBytes + bytes > maxPendingBytes) {
+            progress.awaitUninterruptibly();
+            checkOpen();
+        }
+    }
+
+    // Caller holds the lock
+    private void addPendingBytes(long bytes) {
+        pendingBytes += bytes;
+        peakPendingBytes = Math.max(peakPendingBytes, pendingBytes);
+    }
+
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException("Sink file write failed: " + path, failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Sink is closed");
+        }
+    }
+
+    private static byte[] encode(String item) {
+        return (item + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
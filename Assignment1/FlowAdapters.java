@@ -0,0 +1,345 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**java.util.concurrent.Flow adapters with explicit request(n) demand
+Publishers emit only what their subscriber has requested and run on an Executor, so no
+thread is parked per producer: when nothing is available they reschedule themselves
+after RETRY_MILLIS instead of blocking. Subscribers request in batches and replenish
+half a batch at a time, so at most batchSize items are ever in flight per subscription.
+Used by Producer.asPublisher and Consumer.asSubscriber, and to connect a queue to
+non-blocking upstreams (toQueue) and downstreams (fromQueue).
+*/
+
+final class FlowAdapters {
+
+    // How long a publisher with demand but no items waits before looking again
+    static final long RETRY_MILLIS = 1;
+
+    private FlowAdapters() {
+    }
+
+    // Items claimed from a shared source; several subscribers split the source between them
+    static <T> Flow.Publisher<T> fromSource(WorkSource<T> source, Executor executor,
+                                            java.util.function.Consumer<? super T> onEmit) {
+        return subscriber -> subscribe(subscriber, new SourcePull<>(source), executor, onEmit);
+    }
+
+    // Items taken from a queue; completes once the queue is closed and drained
+    static <T> Flow.Publisher<T> fromQueue(ItemQueue<T> queue, Executor executor) {
+        return subscriber -> subscribe(subscriber, new QueuePull<>(queue), executor, item -> { });
+    }
+
+    // Subscriber that offers into a queue without blocking; items the queue cannot take yet are retried later
+    static <T> QueueSubscriber<T> toQueue(ItemQueue<T> queue, int batchSize, Executor executor) {
+        return new QueueSubscriber<>(queue, batchSize, executor);
+    }
+
+    private static <T> void subscribe(Flow.Subscriber<? super T> subscriber, Pull<T> pull, Executor executor,
+                                      java.util.function.Consumer<? super T> onEmit) {
+        PullSubscription<T> subscription = new PullSubscription<>(subscriber, pull, executor, onEmit);
+        subscriber.onSubscribe(subscription);
+    }
+
+    // Non-blocking item source behind a publisher
+    private interface Pull<T> {
+        // Next item, or null if none is available right now
+        T next();
+
+        // True once no item will ever be available again
+        boolean finished();
+    }
+
+    //Reads one claimed chunk at a time from a WorkSource
+    private static final class SourcePull<T> implements Pull<T> {
+        private final WorkSource<T> source;
+        private List<T> chunk;
+        private int index;
+        private boolean exhausted;
+
+        SourcePull(WorkSource<T> source) {
+            this.source = source;
+        }
+
+        @Override
+        public T next() {
+            if (exhausted) {
+                return null;
+            }
+            if (chunk == null || index == chunk.size()) {
+                chunk = source.claim();
+                index = 0;
+                if (chunk == null) {
+                    exhausted = true;
+                    return null;
+                }
+            }
+            return chunk.get(index++);
+        }
+
+        // Claims ahead once the chunk is used up, so completion is signalled even when demand ends exactly there
+        @Override
+        public boolean finished() {
+            if (!exhausted && (chunk == null || index == chunk.size())) {
+                chunk = source.claim();
+                index = 0;
+                exhausted = chunk == null;
+            }
+            return exhausted;
+        }
+    }
+
+    //Polls a queue without waiting
+    private static final class QueuePull<T> implements Pull<T> {
+        private final ItemQueue<T> queue;
+
+        QueuePull(ItemQueue<T> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public T next() {
+            return queue.poll();
+        }
+
+        @Override
+        public boolean finished() {
+            return queue.isDrained();
+        }
+    }
+
+    //Emits up to the requested demand; runs are serialized through the wip counter
+    private static final class PullSubscription<T> implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final Pull<T> pull;
+        private final Executor executor;
+        private final java.util.function.Consumer<? super T> onEmit;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        private boolean done;
+
+        PullSubscription(Flow.Subscriber<? super T> subscriber, Pull<T> pull, Executor executor,
+                         java.util.function.Consumer<? super T> onEmit) {
+            this.subscriber = subscriber;
+            this.pull = pull;
+            this.executor = executor;
+            this.onEmit = onEmit;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Signalled from run() so it cannot overlap an onNext already in flight (Reactive Streams 1.3)
+                if (invalidRequest == null) {
+                    invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+                }
+                schedule();
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            boolean starved = false;
+            do {
+                long requested = demand.get();
+                long emitted = 0;
+                starved = false;
+                if (invalidRequest != null && !cancelled && !done) {
+                    done = true;
+                    cancelled = true;
+                    subscriber.onError(invalidRequest);
+                }
+                while (emitted < requested && !cancelled && !done) {
+                    T item = pull.next();
+                    if (item == null) {
+                        starved = true;
+                        break;
+                    }
+                    onEmit.accept(item);
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (emitted > 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                if (!cancelled && !done && pull.finished()) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+            if (starved && !done && !cancelled) {
+                // Demand but nothing to send: look again later rather than holding this thread
+                CompletableFuture.delayedExecutor(RETRY_MILLIS, TimeUnit.MILLISECONDS, executor)
+                    .execute(this::schedule);
+            }
+        }
+    }
+
+    //Batched-demand subscriber that stores items in a sink
+    static final class SinkSubscriber<T> implements Flow.Subscriber<T> {
+        private final ItemSink<T> sink;
+        private final int batchSize;
+        private final java.util.function.Consumer<? super T> onItem;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private int sinceRequest;
+        private volatile Throwable error;
+
+        SinkSubscriber(ItemSink<T> sink, int batchSize, java.util.function.Consumer<? super T> onItem) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+            }
+            this.sink = sink;
+            this.batchSize = batchSize;
+            this.onItem = onItem;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(T item) {
+            sink.add(item);
+            onItem.accept(item);
+            // Top up once half the batch has arrived, keeping at most batchSize in flight
+            if (++sinceRequest >= (batchSize + 1) / 2) {
+                subscription.request(sinceRequest);
+                sinceRequest = 0;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            sink.flushAll();
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            // onNext may have run on several executor threads, so every thread's buffer is published
+            sink.flushAll();
+            finished.countDown();
+        }
+
+        // Waits for onComplete or onError; false on timeout
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+
+        // Failure signalled by the publisher, or null
+        public Throwable error() {
+            return error;
+        }
+    }
+
+    //Feeds a queue from a publisher; demand only grows as items are accepted by the queue
+    static final class QueueSubscriber<T> implements Flow.Subscriber<T> {
+        private final ItemQueue<T> queue;
+        private final int batchSize;
+        private final Executor executor;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final ArrayDeque<T> pending = new ArrayDeque<>();
+        private Flow.Subscription subscription;
+        private long outstanding;
+        private int accepted;
+        private boolean completed;
+        private boolean retryScheduled;
+
+        QueueSubscriber(ItemQueue<T> queue, int batchSize, Executor executor) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be >= 1: " + batchSize);
+            }
+            this.queue = queue;
+            this.batchSize = batchSize;
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            outstanding = batchSize;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public synchronized void onNext(T item) {
+            outstanding--;
+            pending.add(item);
+            flush();
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            completed = true;
+            finished.countDown();
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            completed = true;
+            flush();
+        }
+
+        // Waits until the publisher completed and every item is in the queue; false on timeout
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+
+        // Moves pending items into the queue, then requests as many more as it accepted
+        private synchronized void flush() {
+            while (!pending.isEmpty() && queue.offer(pending.peek())) {
+                pending.poll();
+                accepted++;
+            }
+            if (completed) {
+                if (pending.isEmpty()) {
+                    finished.countDown();
+                    return;
+                }
+            } else if (accepted > 0 && (accepted >= (batchSize + 1) / 2 || outstanding == 0)) {
+                outstanding += accepted;
+                subscription.request(accepted);
+                accepted = 0;
+            }
+            if (!pending.isEmpty() && (outstanding == 0 || completed) && !retryScheduled) {
+                // Queue full and no onNext coming to flush again: try later instead of blocking
+                retryScheduled = true;
+                CompletableFuture.delayedExecutor(RETRY_MILLIS, TimeUnit.MILLISECONDS, executor)
+                    .execute(this::retry);
+            }
+        }
+
+        private synchronized void retry() {
+            retryScheduled = false;
+            flush();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.concurrent.TimeUnit;
+
+/**ItemQueue decorator that feeds PipelineMetrics
+Each item is stamped when it is put and its handoff latency is recorded when it is taken.
+Time spent waiting on a full queue (producers) or an empty one (consumers) is accumulated.
+The stamp is a small holder object, so this adds one allocation per item; leave metrics
+off for allocation-sensitive runs.
+*/
+
+public class InstrumentedQueue<T> implements ItemQueue<T> {
+
+    private final ItemQueue<Stamped<T>> delegate;
+    private final PipelineMetrics metrics;
+
+    public InstrumentedQueue(ItemQueue.Type type, int capacity, PipelineMetrics metrics) {
+        this(type, capacity, null, metrics);
+    }
+
+    public InstrumentedQueue(ItemQueue.Type type, int capacity, WaitStrategy waitStrategy, PipelineMetrics metrics) {
+        this.delegate = type.create(capacity, waitStrategy);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        Stamped<T> stamped = new Stamped<>(item, System.nanoTime());
+        if (delegate.offer(stamped)) {
+            return;
+        }
+        delegate.put(stamped);
+        metrics.recordProducerBlocked(System.nanoTime() - stamped.enqueuedAt);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        return delegate.offer(new Stamped<>(item, System.nanoTime()));
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        Stamped<T> stamped = delegate.poll();
+        if (stamped == null) {
+            long waitStart = System.nanoTime();
+            stamped = delegate.take();
+            metrics.recordConsumerBlocked(System.nanoTime() - waitStart);
+        }
+        return unwrap(stamped);
+    }
+
+    @Override
+    public T poll() {
+        return unwrap(delegate.poll());
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Stamped<T> stamped = delegate.poll();
+        if (stamped == null) {
+            long waitStart = System.nanoTime();
+            stamped = delegate.poll(timeout, unit);
+            metrics.recordConsumerBlocked(System.nanoTime() - waitStart);
+        }
+        return unwrap(stamped);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int capacity() {
+        return delegate.capacity();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    private T unwrap(Stamped<T> stamped) {
+        if (stamped == null) {
+            return null;
+        }
+        metrics.recordHandoff(System.nanoTime() - stamped.enqueuedAt);
+        return stamped.item;
+    }
+
+    // Item plus the time it was put
+    private static final class Stamped<T> {
+        final T item;
+        final long enqueuedAt;
+
+        Stamped(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**Runs Producer and Consumer in separate JVMs connected by a SharedMemoryQueue
+With no arguments this process creates the queue, starts a consumer JVM on it and produces.
+The roles can also be started by hand on the same host:
+  java InterProcessDemo producer [items] [queueFile]
+  java InterProcessDemo consumer [queueFile]
+The producer closes the shared queue when it is done; the consumer exits once it is drained.
+*/
+
+public class InterProcessDemo {
+
+    static final String DEFAULT_QUEUE_NAME = "producer-consumer-queue";
+    static final int QUEUE_CAPACITY = 1024;
+    static final int MAX_ITEM_BYTES = 64;
+
+    public static void main(String[] args) throws Exception {
+        String role = args.length > 0 ? args[0] : "both";
+        switch (role) {
+            case "producer": {
+                int items = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+                Path path = args.length > 2 ? Paths.get(args[2]) : SharedMemoryQueue.defaultPath(DEFAULT_QUEUE_NAME);
+                produce(SharedMemoryQueue.create(path, QUEUE_CAPACITY, MAX_ITEM_BYTES), items);
+                break;
+            }
+            case "consumer": {
+                Path path = args.length > 1 ? Paths.get(args[1]) : SharedMemoryQueue.defaultPath(DEFAULT_QUEUE_NAME);
+                consume(SharedMemoryQueue.open(path, 30_000));
+                break;
+            }
+            case "both": {
+                int items = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+                Path path = SharedMemoryQueue.defaultPath(DEFAULT_QUEUE_NAME);
+                SharedMemoryQueue queue = SharedMemoryQueue.create(path, QUEUE_CAPACITY, MAX_ITEM_BYTES);
+                Process consumer = startConsumerProcess(path);
+                produce(queue, items);
+                if (!consumer.waitFor(60, TimeUnit.SECONDS)) {
+                    consumer.destroy();
+                    throw new IllegalStateException("Consumer process did not finish");
+                }
+                queue.unlink();
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown role: " + role + " (expected producer or consumer)");
+        }
+    }
+
+    // Launches "java InterProcessDemo consumer <path>" with this JVM's class path, sharing its console
+    static Process startConsumerProcess(Path path) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                  InterProcessDemo.class.getName(), "consumer", path.toString())
+            .inheritIO()
+            .start();
+    }
+
+    static void produce(SharedMemoryQueue queue, int items) {
+        List<String> source = new ArrayList<>(items);
+        for (int i = 1; i <= items; i++) {
+            source.add("Item-" + i);
+        }
+        AtomicInteger produced = new AtomicInteger(0);
+        long start = System.nanoTime();
+        new ProducerConsumerDemo.Producer(source, queue, "Producer-" + ProcessHandle.current().pid(), produced)
+            .withSimulatedDelay(0, 0)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF))
+            .run();
+        queue.close();
+        System.out.printf("Producer process put %d items into %s in %.1f ms%n",
+            produced.get(), queue.path(), (System.nanoTime() - start) / 1e6);
+    }
+
+    static void consume(SharedMemoryQueue queue) {
+        List<String> destination = new ArrayList<>();
+        AtomicInteger consumed = new AtomicInteger(0);
+        long start = System.nanoTime();
+        new ProducerConsumerDemo.Consumer(queue, destination, "Consumer-" + ProcessHandle.current().pid(), consumed)
+            .withSimulatedDelay(0, 0)
+            .withPollInterval(10)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF))
+            .run();
+        System.out.printf("Consumer process received %d items in %.1f ms%n",
+            consumed.get(), (System.nanoTime() - start) / 1e6);
+    }
+}
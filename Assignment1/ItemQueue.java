@@ -0,0 +1,222 @@
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**Bounded queue abstraction shared by Producer and Consumer
+Lets the demo swap the JDK blocking queues for the lock-free RingBufferQueue
+put, offer, putBatch and close come from ProducerQueue, the side producers see
+*/
+
+public interface ItemQueue<T> extends ProducerQueue<T> {
+
+    // Removes the head item, waiting until one is available; returns null once the queue is closed and drained
+    T take() throws InterruptedException;
+
+    // Removes the head item, or returns null if the queue is empty
+    T poll();
+
+    // Removes the head item, waiting up to the given time for one to arrive
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    // Hands back items the calling thread took from the queue but was not given yet; consumers call this when they finish
+    default void returnHeld() {
+    }
+
+    // Approximate number of items currently queued
+    int size();
+
+    // Maximum number of items the queue can hold
+    int capacity();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Closed and empty: consumers can stop without waiting for a termination item
+    default boolean isDrained() {
+        return isClosed() && isEmpty();
+    }
+
+    // Moves up to maxItems available items into target without waiting, returns the count moved
+    default int drainTo(Collection<? super T> target, int maxItems) {
+        int drained = 0;
+        T item;
+        while (drained < maxItems && (item = poll()) != null) {
+            target.add(item);
+            drained++;
+        }
+        return drained;
+    }
+
+    // Wraps an existing BlockingQueue so it can be passed to Producer and Consumer
+    static <T> ItemQueue<T> of(BlockingQueue<T> queue) {
+        return new Blocking<>(queue, null);
+    }
+
+    // As of(queue), but blocked put/take wait according to waitStrategy
+    static <T> ItemQueue<T> of(BlockingQueue<T> queue, WaitStrategy waitStrategy) {
+        return new Blocking<>(queue, waitStrategy);
+    }
+
+    //Available queue implementations, selectable from configuration
+    enum Type {
+        LINKED_BLOCKING,
+        ARRAY_BLOCKING,
+        RING_SPSC,
+        RING_MPSC,
+        RING_MPMC,
+        WORK_STEALING;
+
+        public <T> ItemQueue<T> create(int capacity) {
+            return create(capacity, null);
+        }
+
+        // waitStrategy null keeps each type's own default
+        public <T> ItemQueue<T> create(int capacity, WaitStrategy waitStrategy) {
+            WaitStrategy ringWait = waitStrategy != null ? waitStrategy : WaitStrategy.SPIN_THEN_PARK;
+            switch (this) {
+                case LINKED_BLOCKING: return of(new LinkedBlockingQueue<>(capacity), waitStrategy);
+                case ARRAY_BLOCKING:  return of(new ArrayBlockingQueue<>(capacity), waitStrategy);
+                case RING_SPSC:       return RingBufferQueue.spsc(capacity, ringWait);
+                case RING_MPSC:       return RingBufferQueue.mpsc(capacity, ringWait);
+                case RING_MPMC:       return RingBufferQueue.mpmc(capacity, ringWait);
+                case WORK_STEALING:   return new WorkStealingQueue<>(capacity,
+                                          Runtime.getRuntime().availableProcessors(),
+                                          WorkStealingQueue.Distribution.ROUND_ROBIN, ringWait);
+                default: throw new IllegalStateException("Unknown queue type: " + this);
+            }
+        }
+    }
+
+    //Adapter that delegates to a java.util.concurrent BlockingQueue
+    // Waits are signalled by the adapter itself rather than the JDK queue's own locks, so close()
+    // can release them too; without a strategy a blocked put/take parks straight away, as the JDK
+    // queue would. Items put into the wrapped queue directly, bypassing this adapter, raise no
+    // signal and are noticed when the park times out (within WaitStrategy.MAX_PARK_NANOS)
+    final class Blocking<T> implements ItemQueue<T> {
+        private final BlockingQueue<T> queue;
+        private final int capacity;
+        private final WaitStrategy waitStrategy;
+        private final boolean signalling;
+        private final WaitStrategy.Signal notEmpty = new WaitStrategy.Signal();
+        private final WaitStrategy.Signal notFull = new WaitStrategy.Signal();
+        private volatile boolean closed;
+
+        Blocking(BlockingQueue<T> queue, WaitStrategy waitStrategy) {
+            this.queue = queue;
+            this.waitStrategy = waitStrategy != null ? waitStrategy : WaitStrategy.TIMED_PARK;
+            this.signalling = this.waitStrategy.parks();
+            long total = (long) queue.size() + queue.remainingCapacity();
+            this.capacity = (int) Math.min(Integer.MAX_VALUE, total);
+        }
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            int attempt = 0;
+            while (!offer(item)) {
+                waitStrategy.idle(attempt++, notFull, this::hasRoom);
+            }
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            int attempt = 0;
+            T item;
+            while ((item = poll()) == null) {
+                if (closed && queue.isEmpty()) {
+                    return null;
+                }
+                waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+            }
+            return item;
+        }
+
+        @Override
+        public boolean offer(T item) {
+            checkOpen();
+            if (!queue.offer(item)) {
+                return false;
+            }
+            if (signalling) {
+                notEmpty.signalAll();
+            }
+            return true;
+        }
+
+        @Override
+        public T poll() {
+            T item = queue.poll();
+            if (item != null && signalling) {
+                notFull.signalAll();
+            }
+            return item;
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int attempt = 0;
+            T item;
+            while ((item = poll()) == null) {
+                if (System.nanoTime() - deadline >= 0 || closed && isEmpty()) {
+                    return null;
+                }
+                waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+            }
+            return item;
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> target, int maxItems) {
+            int drained = queue.drainTo(target, maxItems);
+            if (drained > 0 && signalling) {
+                notFull.signalAll();
+            }
+            return drained;
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Queue is closed");
+            }
+        }
+
+        // Wake conditions rechecked by a parked waiter after it registers with the signal
+        private boolean hasItem() {
+            return !queue.isEmpty() || closed;
+        }
+
+        private boolean hasRoom() {
+            return queue.remainingCapacity() > 0 || closed;
+        }
+
+        // Underlying JDK queue, for callers that need the full BlockingQueue API
+        public BlockingQueue<T> unwrap() {
+            return queue;
+        }
+    }
+}
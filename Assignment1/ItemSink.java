@@ -0,0 +1,68 @@
+import java.util.Collection;
+import java.util.List;
+
+/**Destination abstraction for consumed items
+Lets consumers write somewhere other than one synchronized list so they do not
+serialize on a single monitor
+*/
+
+public interface ItemSink<T> {
+
+    // Stores one consumed item
+    void add(T item);
+
+    // Stores a batch of consumed items
+    default void addAll(Collection<? extends T> items) {
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    // Publishes anything the calling thread has buffered; consumers call this when they finish
+    default void flush() {
+    }
+
+    // Publishes what every thread has buffered; for a stream whose completion may arrive on a
+    // different thread from its adds, such as a Flow subscriber fed from an executor
+    default void flushAll() {
+        flush();
+    }
+
+    // Number of items stored so far, including any still buffered
+    int size();
+
+    // Sink that appends straight into a list, holding the list's monitor per call (the original behaviour)
+    static <T> ItemSink<T> of(List<T> list) {
+        return new ListSink<>(list);
+    }
+
+    //Appends to a shared list under its monitor
+    final class ListSink<T> implements ItemSink<T> {
+        private final List<T> list;
+
+        ListSink(List<T> list) {
+            this.list = list;
+        }
+
+        @Override
+        public void add(T item) {
+            synchronized (list) {
+                list.add(item);
+            }
+        }
+
+        @Override
+        public void addAll(Collection<? extends T> items) {
+            synchronized (list) {
+                list.addAll(items);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (list) {
+                return list.size();
+            }
+        }
+    }
+}
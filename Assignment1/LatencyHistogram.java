@@ -0,0 +1,97 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**Lock-free log-linear histogram in the style of HdrHistogram
+Values (normally nanoseconds) fall into power-of-two ranges, each split into 32 linear
+sub-buckets, so any recorded value is reported within about 3% of its true size.
+Recording is one atomic increment and never allocates.
+*/
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    // Records one value; negative values are clamped to zero
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexFor(v));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(v);
+        if (v > maxValue.get()) {
+            maxValue.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public long count() {
+        return totalCount.get();
+    }
+
+    public long max() {
+        return maxValue.get();
+    }
+
+    public double mean() {
+        long count = totalCount.get();
+        return count == 0 ? 0.0 : (double) totalValue.get() / count;
+    }
+
+    // Value at the given percentile (0-100], reported as the top of its bucket; 0 when empty
+    public long percentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    // Clears all recorded values; concurrent records may land on either side of the reset
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d p999=%d max=%d",
+            count(), mean(), percentile(50), percentile(99), percentile(99.9), max());
+    }
+
+    // Small values map one-to-one; larger ones keep their top SUB_BUCKET_BITS bits
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+        int top = (int) (value >>> shift); // in [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+        return shift * SUB_BUCKET_HALF + top;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long top = index - (long) shift * SUB_BUCKET_HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
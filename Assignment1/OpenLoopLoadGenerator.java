@@ -0,0 +1,190 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**Open-loop load generator with coordinated-omission-corrected latency
+Items are sent on a fixed schedule (item i is due at start + i / rate) whether or not the
+pipeline keeps up, the way independent users would arrive. When a put blocks, later items
+are sent late but are still measured from when they were due, so queueing behind a
+saturated pipeline shows up in the corrected latency instead of being silently omitted.
+Each item carries its due and actual send times; recordingSink() wraps the consumers'
+destination and records both latencies on delivery.
+Run directly to find the saturation point of consumers doing CPU-bound work:
+  java OpenLoopLoadGenerator [consumers] [serviceMicros] [seconds] [rate1,rate2,...]
+*/
+
+public class OpenLoopLoadGenerator {
+
+    // Closer than this to the due time the generator spins instead of parking
+    static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ItemQueue<String> queue;
+    private final double itemsPerSecond;
+    private final LatencyHistogram corrected = new LatencyHistogram();
+    private final LatencyHistogram uncorrected = new LatencyHistogram();
+    private volatile long sent;
+    private volatile long sendNanos;
+    private volatile long maxLagNanos;
+
+    public OpenLoopLoadGenerator(ItemQueue<String> queue, double itemsPerSecond) {
+        if (itemsPerSecond <= 0) {
+            throw new IllegalArgumentException("itemsPerSecond must be positive: " + itemsPerSecond);
+        }
+        this.queue = queue;
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    // Sends count items on schedule from the calling thread; an item that falls behind is sent late, never skipped
+    public void run(long count) throws InterruptedException {
+        double intervalNanos = 1e9 / itemsPerSecond;
+        long start = System.nanoTime();
+        long lag = 0;
+        for (long i = 0; i < count; i++) {
+            long due = start + (long) (i * intervalNanos);
+            long now;
+            while ((now = System.nanoTime()) - due < 0) {
+                if (due - now > SPIN_THRESHOLD_NANOS) {
+                    LockSupport.parkNanos(due - now - SPIN_THRESHOLD_NANOS);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            lag = Math.max(lag, now - due);
+            queue.put("Load-" + i + "@" + due + "@" + now);
+            sent = i + 1;
+        }
+        sendNanos = System.nanoTime() - start;
+        maxLagNanos = lag;
+    }
+
+    // Destination for the consumers that records each item's latency before storing it
+    public ItemSink<String> recordingSink(ItemSink<String> destination) {
+        return new ItemSink<String>() {
+            @Override
+            public void add(String item) {
+                record(item, System.nanoTime());
+                destination.add(item);
+            }
+
+            @Override
+            public void flush() {
+                destination.flush();
+            }
+
+            @Override
+            public void flushAll() {
+                destination.flushAll();
+            }
+
+            @Override
+            public int size() {
+                return destination.size();
+            }
+        };
+    }
+
+    // Latency from when each item was due (coordinated omission corrected)
+    public LatencyHistogram correctedLatency() {
+        return corrected;
+    }
+
+    // Latency from when each item was actually sent, as a closed-loop tool would report it
+    public LatencyHistogram uncorrectedLatency() {
+        return uncorrected;
+    }
+
+    // Call once the consumers have drained the queue
+    public Report report() {
+        return new Report(this);
+    }
+
+    private void record(String item, long now) {
+        int sentAt = item.lastIndexOf('@');
+        int dueAt = item.lastIndexOf('@', sentAt - 1);
+        corrected.record(now - Long.parseLong(item.substring(dueAt + 1, sentAt)));
+        uncorrected.record(now - Long.parseLong(item.substring(sentAt + 1)));
+    }
+
+    //Outcome of one run
+    public static final class Report {
+        public final double targetRate;
+        public final double sendRate;
+        public final long sent;
+        public final long delivered;
+        public final long maxLagNanos;
+        public final long correctedP99Nanos;
+        public final long uncorrectedP99Nanos;
+
+        Report(OpenLoopLoadGenerator generator) {
+            this.targetRate = generator.itemsPerSecond;
+            this.sent = generator.sent;
+            this.sendRate = generator.sendNanos == 0 ? 0 : sent / (generator.sendNanos / 1e9);
+            this.delivered = generator.corrected.count();
+            this.maxLagNanos = generator.maxLagNanos;
+            this.correctedP99Nanos = generator.corrected.percentile(99);
+            this.uncorrectedP99Nanos = generator.uncorrected.percentile(99);
+        }
+
+        // Fell behind its schedule by more than 5%
+        public boolean isSaturated() {
+            return sendRate < targetRate * 0.95;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,10.0f %,10.0f %8d %10.1f %10.1f %10.1f%s",
+                targetRate, sendRate, delivered, maxLagNanos / 1e3,
+                correctedP99Nanos / 1e3, uncorrectedP99Nanos / 1e3, isSaturated() ? "  saturated" : "");
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int consumers = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        long serviceMicros = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+        String rates = args.length > 3 ? args[3] : "5000,10000,15000,20000,25000,30000";
+
+        System.out.println("=== Open-Loop Load Test ===");
+        System.out.println("Consumers: " + consumers + " (CPU burn " + serviceMicros + " us per item)");
+        System.out.println("Capacity estimate: " + (consumers * 1_000_000 / serviceMicros) + " items/s");
+        System.out.println("================================\n");
+        System.out.println(String.format("%10s %10s %8s %10s %10s %10s",
+            "target/s", "sent/s", "items", "lag us", "p99 us", "naive p99"));
+
+        double saturation = 0;
+        for (String rate : rates.split(",")) {
+            Report report = runOnce(Double.parseDouble(rate.trim()), consumers,
+                WorkloadModel.cpuBurn(TimeUnit.MICROSECONDS.toNanos(serviceMicros)), seconds);
+            System.out.println(report);
+            if (!report.isSaturated()) {
+                saturation = Math.max(saturation, report.targetRate);
+            }
+        }
+        System.out.printf("%nHighest rate sustained: %,.0f items/s%n", saturation);
+    }
+
+    // One rate against a fresh queue and consumer set; returns once everything sent is delivered
+    static Report runOnce(double rate, int consumers, WorkloadModel workload, double seconds)
+            throws InterruptedException {
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(1024);
+        OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(queue, rate);
+        ItemSink<String> sink = generator.recordingSink(
+            new ThreadLocalBufferSink<>(Collections.synchronizedList(new ArrayList<>())));
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        for (int i = 0; i < consumers; i++) {
+            Thread consumer = new Thread(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(queue, sink, "Consumer-" + (i + 1), new AtomicInteger())
+                    .withWorkload(workload)
+                    .withPollInterval(10)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+            consumer.start();
+        }
+        generator.run((long) (rate * seconds));
+        completion.awaitProducersAndClose();
+        completion.awaitDrained(60, TimeUnit.SECONDS);
+        return generator.report();
+    }
+}
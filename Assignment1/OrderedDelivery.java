@@ -0,0 +1,382 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**Opt-in order-preserving delivery for several consumers
+queue() stamps every item with a sequence number as it enters a FIFO ItemQueue; consumers
+take and process items in parallel as usual, and sink() commits them into the destination
+through a bounded reorder buffer, so the destination sees items in sequence order.
+Producers that claim from source() number each item by its position in the source (chunk
+start plus offset), so the destination matches the source exactly however many producers
+race; without it items are numbered in the order they enter the queue.
+Each consumer thread remembers the sequence numbers it took, in order; an item it takes but
+never adds (a poison pill, a filtered item) is committed as a gap when it adds the next item
+or flushes. With enqueue numbering the smallest outstanding number is always at the queue
+head or in a consumer's hands; with source numbering a put waits until its number fits in
+the window, so consumers never wait on a number a blocked producer still holds.
+The destination should keep insertion order (ItemSink.of, ChunkedAppendList), not buffer per thread.
+*/
+
+public final class OrderedDelivery<T> {
+
+    // Reorder window used when none is given
+    public static final int DEFAULT_WINDOW = 1024;
+
+    private static final Object SKIPPED = new Object();
+    // Sequence of an item put in source mode by a thread that did not claim it (a poison pill)
+    private static final long UNSEQUENCED = -1;
+
+    private final ItemQueue<Sequenced<T>> delegate;
+    private final ItemSink<T> destination;
+    private final SequencedQueue queue = new SequencedQueue();
+    private final ReorderingSink sink = new ReorderingSink();
+    private final WaitStrategy waitStrategy;
+    private final ThreadLocal<ArrayDeque<Sequenced<T>>> taken = ThreadLocal.withInitial(ArrayDeque::new);
+    // Source positions this producer thread claimed but has not put yet, oldest first
+    private final ThreadLocal<ArrayDeque<long[]>> claimed = ThreadLocal.withInitial(ArrayDeque::new);
+    private volatile WorkSource<T> source;
+
+    private final Object sequencer = new Object();
+    private long nextSequence;
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition windowAdvanced = commitLock.newCondition();
+    private final Object[] window;
+    private volatile long committed;
+    private int buffered;
+    private int peakBuffered;
+
+    public OrderedDelivery(ItemQueue.Type type, int capacity, ItemSink<T> destination) {
+        this(type, capacity, destination, DEFAULT_WINDOW);
+    }
+
+    public OrderedDelivery(ItemQueue.Type type, int capacity, ItemSink<T> destination, int windowSize) {
+        this(type, capacity, destination, windowSize, null);
+    }
+
+    // waitStrategy applies to the underlying queue and to producers waiting for room (null for the type's default)
+    public OrderedDelivery(ItemQueue.Type type, int capacity, ItemSink<T> destination, int windowSize,
+                           WaitStrategy waitStrategy) {
+        if (type == ItemQueue.Type.WORK_STEALING) {
+            throw new IllegalArgumentException("Ordered delivery needs a FIFO queue, not " + type);
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be >= 1: " + windowSize);
+        }
+        this.delegate = type.create(capacity, waitStrategy);
+        this.waitStrategy = waitStrategy != null ? waitStrategy : WaitStrategy.SPIN_THEN_PARK;
+        this.destination = destination;
+        this.window = new Object[windowSize];
+    }
+
+    // Queue for producers and consumers to share
+    public ItemQueue<T> queue() {
+        return queue;
+    }
+
+    // Wraps the producers' source so every item is numbered by its source position; call before producing
+    public synchronized WorkSource<T> source(WorkSource<T> items) {
+        if (source != null) {
+            throw new IllegalStateException("A source is already attached");
+        }
+        source = new IndexedSource(items);
+        return source;
+    }
+
+    // Destination for consumers; commits in sequence order
+    public ItemSink<T> sink() {
+        return sink;
+    }
+
+    // Most items ever held back waiting for an earlier one
+    public int peakReorderDepth() {
+        commitLock.lock();
+        try {
+            return peakBuffered;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private T unwrap(Sequenced<T> entry) {
+        if (entry == null) {
+            return null;
+        }
+        taken.get().addLast(entry);
+        return entry.item;
+    }
+
+    // Matches items against what this thread took, adding gaps for anything taken but not delivered
+    private void commit(Collection<? extends T> items, boolean flushAll) {
+        ArrayDeque<Sequenced<T>> pending = taken.get();
+        List<Sequenced<T>> ready = new ArrayList<>(items.size());
+        for (T item : items) {
+            Sequenced<T> entry;
+            while ((entry = pending.pollFirst()) != null && entry.item != item) {
+                ready.add(new Sequenced<>(entry.sequence, null));
+            }
+            if (entry == null) {
+                throw new IllegalStateException("Item was not taken from the ordered queue on this thread: " + item);
+            }
+            ready.add(entry);
+        }
+        if (flushAll) {
+            Sequenced<T> entry;
+            while ((entry = pending.pollFirst()) != null) {
+                ready.add(new Sequenced<>(entry.sequence, null));
+            }
+        }
+        // A batch may have been taken slightly out of order; committing lowest first keeps the window moving
+        ready.sort(Comparator.comparingLong(entry -> entry.sequence));
+        while (!ready.isEmpty() && ready.get(0).sequence == UNSEQUENCED) {
+            if (ready.get(0).item != null) {
+                throw new IllegalStateException("Item was not claimed from the ordered source: " + ready.get(0).item);
+            }
+            ready.remove(0);
+        }
+
+        List<T> run = new ArrayList<>();
+        commitLock.lock();
+        try {
+            for (Sequenced<T> entry : ready) {
+                while (entry.sequence - committed >= window.length) {
+                    windowAdvanced.awaitUninterruptibly();
+                }
+                window[slot(entry.sequence)] = entry.item == null ? SKIPPED : entry.item;
+                peakBuffered = Math.max(peakBuffered, ++buffered);
+                if (entry.sequence == committed) {
+                    releaseContiguous(run);
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    // Moves the contiguous committed prefix out of the window into the destination; caller holds the lock
+    @SuppressWarnings("unchecked")
+    private void releaseContiguous(List<T> run) {
+        Object value;
+        while ((value = window[slot(committed)]) != null) {
+            window[slot(committed)] = null;
+            if (value != SKIPPED) {
+                run.add((T) value);
+            }
+            committed++;
+            buffered--;
+        }
+        if (!run.isEmpty()) {
+            destination.addAll(run);
+            run.clear();
+        }
+        windowAdvanced.signalAll();
+    }
+
+    // Source mode: blocks a put until its number fits in the reorder window
+    private void awaitWindow(long sequence) throws InterruptedException {
+        if (sequence - committed < window.length) {
+            return;
+        }
+        commitLock.lock();
+        try {
+            while (sequence - committed >= window.length) {
+                windowAdvanced.await();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % window.length);
+    }
+
+    // Item plus its sequence number (source position, or queue position without a source); a null item marks a gap
+    static final class Sequenced<T> {
+        final long sequence;
+        final T item;
+
+        Sequenced(long sequence, T item) {
+            this.sequence = sequence;
+            this.item = item;
+        }
+    }
+
+    //Records, per producer thread, the source positions of each claimed chunk
+    private final class IndexedSource implements WorkSource<T> {
+        private final WorkSource<T> items;
+
+        IndexedSource(WorkSource<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public Chunk<T> claimChunk() {
+            Chunk<T> chunk = items.claimChunk();
+            if (chunk != null && !chunk.items.isEmpty()) {
+                claimed.get().addLast(new long[] {chunk.start, chunk.start + chunk.items.size()});
+            }
+            return chunk;
+        }
+
+        @Override
+        public long claimedItems() {
+            return items.claimedItems();
+        }
+
+        @Override
+        public void close() {
+            items.close();
+        }
+    }
+
+    //Numbers items on the way in and records, per consumer thread, what was taken
+    private final class SequencedQueue implements ItemQueue<T> {
+        private final WaitStrategy.Signal notFull = new WaitStrategy.Signal();
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            if (source != null) {
+                long[] range = claimed.get().peekFirst();
+                if (range != null) {
+                    awaitWindow(range[0]);
+                }
+            }
+            int attempt = 0;
+            while (!offer(item)) {
+                waitStrategy.idle(attempt++, notFull, this::hasRoom);
+            }
+        }
+
+        // Wake condition rechecked by a parked producer after it registers with the signal
+        private boolean hasRoom() {
+            return delegate.size() < delegate.capacity() || delegate.isClosed();
+        }
+
+        // Every removal goes through this queue, so it can wake producers waiting for room
+        private <E> E removed(E entry) {
+            if (entry != null && waitStrategy.parks()) {
+                notFull.signalAll();
+            }
+            return entry;
+        }
+
+        @Override
+        public boolean offer(T item) {
+            return source != null ? offerAtSourcePosition(item) : offerInArrivalOrder(item);
+        }
+
+        // The next position this thread claimed; a producer puts its items in the order it claimed them
+        private boolean offerAtSourcePosition(T item) {
+            ArrayDeque<long[]> ranges = claimed.get();
+            long[] range = ranges.peekFirst();
+            if (range == null) {
+                return delegate.offer(new Sequenced<>(UNSEQUENCED, item));
+            }
+            if (range[0] - committed >= window.length || !delegate.offer(new Sequenced<>(range[0], item))) {
+                return false;
+            }
+            if (++range[0] == range[1]) {
+                ranges.pollFirst();
+            }
+            return true;
+        }
+
+        // Numbering and enqueue happen under one monitor so queue order equals sequence order
+        private boolean offerInArrivalOrder(T item) {
+            synchronized (sequencer) {
+                if (!delegate.offer(new Sequenced<>(nextSequence, item))) {
+                    return false;
+                }
+                nextSequence++;
+                return true;
+            }
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            return unwrap(removed(delegate.take()));
+        }
+
+        @Override
+        public T poll() {
+            return unwrap(removed(delegate.poll()));
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return unwrap(removed(delegate.poll(timeout, unit)));
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> target, int maxItems) {
+            List<Sequenced<T>> entries = new ArrayList<>(Math.min(maxItems, delegate.capacity()));
+            int drained = delegate.drainTo(entries, maxItems);
+            if (drained > 0) {
+                removed(entries);
+            }
+            for (Sequenced<T> entry : entries) {
+                target.add(unwrap(entry));
+            }
+            return drained;
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int capacity() {
+            return delegate.capacity();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return delegate.isClosed();
+        }
+    }
+
+    //Commits through the reorder window into the destination
+    private final class ReorderingSink implements ItemSink<T> {
+
+        @Override
+        public void add(T item) {
+            commit(Collections.singletonList(item), false);
+        }
+
+        @Override
+        public void addAll(Collection<? extends T> items) {
+            commit(items, false);
+        }
+
+        // Releases this thread's undelivered positions so later items are not held back
+        @Override
+        public void flush() {
+            commit(Collections.<T>emptyList(), true);
+            destination.flush();
+        }
+
+        @Override
+        public void flushAll() {
+            commit(Collections.<T>emptyList(), true);
+            destination.flushAll();
+        }
+
+        @Override
+        public int size() {
+            return destination.size();
+        }
+    }
+}
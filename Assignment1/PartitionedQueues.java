@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**Key-affinity routing of items to consumer-owned queues
+A key extractor maps each item to one of N partitions, each with its own bounded ItemQueue
+and normally one consumer, so every item with a given key is handled by the same thread and
+per-key state needs no locks. Producers put through router(), a ProducerQueue that cannot be
+taken from; consumer i takes from partition(i).
+MODULO routing hashes the key modulo N. CONSISTENT routing places each partition at many
+points on a hash ring, so resize() moves only about 1/N of the keys instead of nearly all.
+*/
+
+public final class PartitionedQueues<T> {
+
+    // How a key's hash is turned into a partition
+    public enum Routing { MODULO, CONSISTENT }
+
+    // Ring points per partition; more points give a more even spread
+    static final int VIRTUAL_NODES = 128;
+
+    private final ItemQueue.Type type;
+    private final int capacityPerPartition;
+    private final Function<? super T, ?> keyExtractor;
+    private final Routing routing;
+    private final List<ItemQueue<T>> partitions = new ArrayList<>();
+    private final Router router = new Router();
+
+    // Replaced as a whole on resize so routing reads need no lock
+    private volatile Table table;
+
+    public PartitionedQueues(ItemQueue.Type type, int capacityPerPartition, int partitionCount,
+                             Function<? super T, ?> keyExtractor, Routing routing) {
+        if (type == ItemQueue.Type.WORK_STEALING) {
+            throw new IllegalArgumentException("Partitions must not steal from each other: " + type);
+        }
+        this.type = type;
+        this.capacityPerPartition = capacityPerPartition;
+        this.keyExtractor = keyExtractor;
+        this.routing = routing;
+        resize(partitionCount);
+    }
+
+    // Producer side: put/offer route by key, close closes every partition
+    public ProducerQueue<T> router() {
+        return router;
+    }
+
+    // Queue owned by the consumer for partition index
+    public synchronized ItemQueue<T> partition(int index) {
+        return partitions.get(index);
+    }
+
+    public int partitionCount() {
+        return table.count;
+    }
+
+    // Items queued across every partition
+    public int size() {
+        int size = 0;
+        for (ItemQueue<T> partition : snapshot()) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    // Every partition is closed and empty
+    public boolean isDrained() {
+        for (ItemQueue<T> partition : snapshot()) {
+            if (!partition.isDrained()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sweeps every partition, including ones retired by resize(), so a drain after a
+    // deadline collects whatever no consumer got to; pass it to PipelineCompletion as the sweep
+    public int drainTo(Collection<? super T> target, int maxItems) {
+        int drained = 0;
+        for (ItemQueue<T> partition : snapshot()) {
+            if (drained >= maxItems) {
+                break;
+            }
+            drained += partition.drainTo(target, maxItems - drained);
+        }
+        return drained;
+    }
+
+    public int partitionOf(T item) {
+        return table.partitionFor(keyExtractor.apply(item));
+    }
+
+    // Changes the number of partitions routed to. New partitions get fresh queues; removed ones keep
+    // theirs until drained. Items already queued stay where they are, so call this at a quiet point
+    // if per-key order across the change matters.
+    public synchronized void resize(int partitionCount) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("partitionCount must be >= 1: " + partitionCount);
+        }
+        while (partitions.size() < partitionCount) {
+            partitions.add(type.create(capacityPerPartition));
+        }
+        table = new Table(partitionCount, routing, partitions.toArray(new ItemQueue<?>[0]));
+    }
+
+    // Every partition queue, including ones retired by resize()
+    @SuppressWarnings("unchecked")
+    private List<ItemQueue<T>> snapshot() {
+        List<ItemQueue<T>> queues = new ArrayList<>();
+        for (ItemQueue<?> queue : table.queues) {
+            queues.add((ItemQueue<T>) queue);
+        }
+        return queues;
+    }
+
+    // Spreads a hashCode so neighbouring keys land far apart
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Partition lookup for one partition count, with the queues as of that resize
+    private static final class Table {
+        final int count;
+        final Routing routing;
+        final ItemQueue<?>[] queues;
+        final int[] ringPoints;
+        final int[] ringOwners;
+
+        Table(int count, Routing routing, ItemQueue<?>[] queues) {
+            this.count = count;
+            this.routing = routing;
+            this.queues = queues;
+            if (routing == Routing.MODULO) {
+                ringPoints = null;
+                ringOwners = null;
+                return;
+            }
+            long[] entries = new long[count * VIRTUAL_NODES];
+            for (int partition = 0; partition < count; partition++) {
+                for (int node = 0; node < VIRTUAL_NODES; node++) {
+                    int point = mix(mix(partition) + node * 0x85EBCA6B);
+                    // Point in the high 32 bits so sorting orders by point, owner in the low bits
+                    entries[partition * VIRTUAL_NODES + node] = ((long) point << 32) | partition;
+                }
+            }
+            Arrays.sort(entries);
+            ringPoints = new int[entries.length];
+            ringOwners = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                ringPoints[i] = (int) (entries[i] >> 32);
+                ringOwners[i] = (int) entries[i];
+            }
+        }
+
+        int partitionFor(Object key) {
+            int hash = mix(key == null ? 0 : key.hashCode());
+            if (routing == Routing.MODULO) {
+                return Math.floorMod(hash, count);
+            }
+            // First ring point at or after the hash, wrapping to the start
+            int index = Arrays.binarySearch(ringPoints, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return ringOwners[index == ringPoints.length ? 0 : index];
+        }
+    }
+
+    //Producer-side view that puts each item on its key's partition
+    private final class Router implements ProducerQueue<T> {
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            target(item).put(item);
+        }
+
+        @Override
+        public boolean offer(T item) {
+            return target(item).offer(item);
+        }
+
+        // Closes every partition, so each consumer sees its own queue closed and drained
+        @Override
+        public void close() {
+            for (ItemQueue<T> partition : snapshot()) {
+                partition.close();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            for (ItemQueue<T> partition : snapshot()) {
+                if (!partition.isClosed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private ItemQueue<T> target(T item) {
+            Table current = table;
+            return (ItemQueue<T>) current.queues[current.partitionFor(keyExtractor.apply(item))];
+        }
+    }
+}
@@ -0,0 +1,405 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**Multi-stage pipeline built from the same pieces as the single-hop demo
+Chains N stages (map or filter), each with its own worker count and bounded ItemQueue,
+ending in an ItemSink: source -> parse -> enrich -> filter -> sink.
+Adjacent stateless stages with the same worker count are fused onto the same thread,
+so an item passes between them with a method call instead of a queue handoff.
+Stages are closed in order with PipelineCompletion, and stats() reports per-stage
+throughput, backlog and utilization so the bottleneck stage stands out.
+An item whose stage (or the sink) throws is dropped and counted against that stage; the worker
+keeps running so upstream never blocks on a dead segment, and awaitCompletion() throws once
+the run has finished if any item failed.
+Build with: Pipeline.<String>builder().map("parse", ...).workers(2).filter(...).build(sink)
+*/
+
+public final class Pipeline<I> {
+
+    static final int DEFAULT_CAPACITY = 64;
+    private static final long POLL_MILLIS = 10;
+    // Failures kept for failures() and the awaitCompletion() exception; all of them are counted
+    static final int MAX_RECORDED_FAILURES = 100;
+
+    private final List<Segment> segments;
+    private final ItemSink<Object> sink;
+    private final ExecutionMode executionMode;
+    private final List<Future<?>> tasks = new ArrayList<>();
+    private ExecutorService executor;
+    private long startNanos;
+    private volatile long endNanos;
+    private final LongAdder failedItems = new LongAdder();
+    private final List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+
+    private Pipeline(List<Segment> segments, ItemSink<Object> sink, ExecutionMode executionMode) {
+        this.segments = segments;
+        this.sink = sink;
+        this.executionMode = executionMode;
+    }
+
+    public static <T> Builder<T, T> builder() {
+        return new Builder<>();
+    }
+
+    // Starts every stage's workers and a feeder that puts the source items into the first queue
+    public synchronized Pipeline<I> start(Iterable<? extends I> source) {
+        if (executor != null) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        executor = executionMode.newExecutor("pipeline");
+        startNanos = System.nanoTime();
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            Segment next = s + 1 < segments.size() ? segments.get(s + 1) : null;
+            for (int w = 0; w < segment.workers; w++) {
+                Runnable worker = new Worker(segment, next);
+                worker = segment.completion.trackConsumer(worker);
+                if (next != null) {
+                    worker = next.completion.trackProducer(worker);
+                }
+                tasks.add(executor.submit(worker));
+            }
+        }
+        Segment first = segments.get(0);
+        tasks.add(executor.submit(first.completion.trackProducer(() -> {
+            try {
+                for (I item : source) {
+                    first.queue.put(item);
+                }
+            } catch (InterruptedException e) {
+                // The rest of the source is never fed; report it rather than finish as if it ran out
+                Thread.currentThread().interrupt();
+                recordFailure("source", e);
+            } catch (RuntimeException e) {
+                recordFailure("source", e);
+            }
+        })));
+        return this;
+    }
+
+    // Closes each stage's queue once everything upstream has finished, then waits for every worker;
+    // throws IllegalStateException (caused by the first failure) if any item failed along the way
+    public void awaitCompletion() throws InterruptedException {
+        List<Future<?>> started;
+        synchronized (this) {
+            if (executor == null) {
+                throw new IllegalStateException("Pipeline not started");
+            }
+            started = new ArrayList<>(tasks);
+        }
+        for (Segment segment : segments) {
+            segment.completion.awaitProducersAndClose();
+        }
+        ProducerConsumerDemo.awaitAll(started);
+        endNanos = System.nanoTime();
+        executor.shutdown();
+        List<RuntimeException> recorded = failures();
+        if (!recorded.isEmpty()) {
+            IllegalStateException failure = new IllegalStateException(
+                failedItems.sum() + " item(s) failed in the pipeline: " + recorded.get(0).getMessage(), recorded.get(0));
+            for (RuntimeException other : recorded.subList(1, recorded.size())) {
+                failure.addSuppressed(other);
+            }
+            throw failure;
+        }
+    }
+
+    // Items that failed in a stage or the sink, including any not kept in failures()
+    public long failedItems() {
+        return failedItems.sum();
+    }
+
+    // Up to MAX_RECORDED_FAILURES failures, each naming where it happened
+    public List<RuntimeException> failures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    private void recordFailure(String where, Exception e) {
+        failedItems.increment();
+        synchronized (failures) {
+            if (failures.size() < MAX_RECORDED_FAILURES) {
+                failures.add(new IllegalStateException("Stage '" + where + "' failed: " + e, e));
+            }
+        }
+    }
+
+    // Number of threads-and-queue hops after fusion
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    // Per-stage readout; valid while running and after completion
+    public List<StageStats> stats() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        double seconds = Math.max(1, end - startNanos) / 1e9;
+        List<StageStats> stats = new ArrayList<>();
+        for (int s = 0; s < segments.size(); s++) {
+            Segment segment = segments.get(s);
+            double utilization = segment.busyNanos.sum() / (seconds * 1e9 * segment.workers);
+            for (Stage stage : segment.stages) {
+                stats.add(new StageStats(stage.name, s, segment.workers, stage.in.sum(), stage.out.sum(),
+                    stage.failed.sum(), stage.out.sum() / seconds, segment.queue.size(), segment.queue.capacity(),
+                    Math.min(1.0, utilization)));
+            }
+        }
+        return stats;
+    }
+
+    // The stage whose segment spends the largest share of its worker time processing
+    public StageStats bottleneck() {
+        StageStats busiest = null;
+        for (StageStats stage : stats()) {
+            if (busiest == null || stage.utilization > busiest.utilization) {
+                busiest = stage;
+            }
+        }
+        return busiest;
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("%-12s %3s %7s %9s %9s %7s %10s %9s %6s%n",
+            "Stage", "Seg", "Workers", "In", "Out", "Failed", "Out/s", "Backlog", "Busy"));
+        for (StageStats stage : stats()) {
+            report.append(stage).append(System.lineSeparator());
+        }
+        StageStats bottleneck = bottleneck();
+        if (bottleneck != null) {
+            report.append("Bottleneck: ").append(bottleneck.name);
+        }
+        return report.toString();
+    }
+
+    //Readout for one logical stage; fused stages share their segment's backlog and utilization
+    public static final class StageStats {
+        public final String name;
+        public final int segment;
+        public final int workers;
+        public final long itemsIn;
+        public final long itemsOut;
+        public final long itemsFailed;
+        public final double outPerSecond;
+        public final int backlog;
+        public final int capacity;
+        public final double utilization;
+
+        StageStats(String name, int segment, int workers, long itemsIn, long itemsOut, long itemsFailed,
+                   double outPerSecond, int backlog, int capacity, double utilization) {
+            this.name = name;
+            this.segment = segment;
+            this.workers = workers;
+            this.itemsIn = itemsIn;
+            this.itemsOut = itemsOut;
+            this.itemsFailed = itemsFailed;
+            this.outPerSecond = outPerSecond;
+            this.backlog = backlog;
+            this.capacity = capacity;
+            this.utilization = utilization;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %3d %7d %9d %9d %7d %10.1f %4d/%-4d %5.0f%%",
+                name, segment, workers, itemsIn, itemsOut, itemsFailed, outPerSecond, backlog, capacity,
+                utilization * 100);
+        }
+    }
+
+    //Fluent description of the stages; I is the source item type, O the current output type
+    public static final class Builder<I, O> {
+        private final List<Stage> stages = new ArrayList<>();
+        private ItemQueue.Type queueType = ItemQueue.Type.RING_MPMC;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+        private boolean fusion = true;
+
+        private Builder() {
+        }
+
+        // Transforms each item; returning null drops it
+        @SuppressWarnings("unchecked")
+        public <R> Builder<I, R> map(String name, Function<? super O, ? extends R> function) {
+            stages.add(new Stage(name, item -> function.apply((O) item)));
+            return (Builder<I, R>) this;
+        }
+
+        // Keeps only items matching the predicate
+        @SuppressWarnings("unchecked")
+        public Builder<I, O> filter(String name, Predicate<? super O> predicate) {
+            stages.add(new Stage(name, item -> predicate.test((O) item) ? item : null));
+            return this;
+        }
+
+        // Worker threads for the most recently added stage
+        public Builder<I, O> workers(int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("workers must be >= 1: " + workers);
+            }
+            lastStage().workers = workers;
+            return this;
+        }
+
+        // Capacity of the queue in front of the most recently added stage (unused if it is fused)
+        public Builder<I, O> capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+            }
+            lastStage().capacity = capacity;
+            return this;
+        }
+
+        // Marks the most recently added stage as keeping state across items, so it always gets its own queue
+        public Builder<I, O> stateful() {
+            lastStage().stateful = true;
+            return this;
+        }
+
+        public Builder<I, O> withQueueType(ItemQueue.Type queueType) {
+            this.queueType = queueType;
+            return this;
+        }
+
+        public Builder<I, O> withExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        // Turns stage fusion off, giving every stage its own queue and threads
+        public Builder<I, O> withFusion(boolean fusion) {
+            this.fusion = fusion;
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Pipeline<I> build(ItemSink<? super O> sink) {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("Pipeline needs at least one stage");
+            }
+            List<Segment> segments = new ArrayList<>();
+            Segment current = null;
+            Stage previous = null;
+            for (Stage stage : stages) {
+                if (current == null || !canFuse(previous, stage)) {
+                    current = new Segment(queueType.create(stage.capacity), stage.workers);
+                    segments.add(current);
+                }
+                current.stages.add(stage);
+                previous = stage;
+            }
+            return new Pipeline<>(segments, (ItemSink<Object>) sink, executionMode);
+        }
+
+        private boolean canFuse(Stage previous, Stage next) {
+            return fusion && !previous.stateful && !next.stateful && previous.workers == next.workers;
+        }
+
+        private Stage lastStage() {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("Add a stage first");
+            }
+            return stages.get(stages.size() - 1);
+        }
+    }
+
+    // One logical stage and its counters
+    private static final class Stage {
+        final String name;
+        final Function<Object, Object> function;
+        int workers = 1;
+        int capacity = DEFAULT_CAPACITY;
+        boolean stateful;
+        final LongAdder in = new LongAdder();
+        final LongAdder out = new LongAdder();
+        final LongAdder failed = new LongAdder();
+
+        Stage(String name, Function<Object, Object> function) {
+            this.name = name;
+            this.function = function;
+        }
+    }
+
+    // Fused run of stages sharing one input queue and one set of workers
+    private static final class Segment {
+        final ItemQueue<Object> queue;
+        final int workers;
+        final List<Stage> stages = new ArrayList<>();
+        final PipelineCompletion<Object> completion;
+        final LongAdder busyNanos = new LongAdder();
+
+        Segment(ItemQueue<Object> queue, int workers) {
+            this.queue = queue;
+            this.workers = workers;
+            this.completion = new PipelineCompletion<>(queue);
+        }
+    }
+
+    // Takes from its segment's queue, runs the fused stages in turn and hands the result downstream
+    private final class Worker implements Runnable {
+        private final Segment segment;
+        private final Segment next;
+
+        Worker(Segment segment, Segment next) {
+            this.segment = segment;
+            this.next = next;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Object item = segment.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (segment.queue.isDrained()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    long start = System.nanoTime();
+                    Stage current = null;
+                    try {
+                        for (Stage stage : segment.stages) {
+                            current = stage;
+                            stage.in.increment();
+                            item = stage.function.apply(item);
+                            if (item == null) {
+                                break;
+                            }
+                            stage.out.increment();
+                        }
+                    } catch (RuntimeException e) {
+                        // Drop just this item; a dead worker would leave upstream blocked on a full queue
+                        current.failed.increment();
+                        recordFailure(current.name, e);
+                        item = null;
+                    }
+                    segment.busyNanos.add(System.nanoTime() - start);
+                    if (item == null) {
+                        continue;
+                    }
+                    if (next != null) {
+                        next.queue.put(item);
+                    } else {
+                        try {
+                            sink.add(item);
+                        } catch (RuntimeException e) {
+                            recordFailure("sink", e);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (next == null) {
+                    sink.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**Shutdown protocol that replaces the recirculating poison pill
+Producers and consumers are tracked by two running counts, so there is no limit on how many
+workers are tracked (a Phaser would cap at 65535). Once every producer has finished the
+queue is closed, and each consumer exits on its own as soon as it sees the queue closed
+and drained, so all consumers stop in parallel instead of handing a pill down the line.
+The drain is bounded by a deadline; anything still queued after it is reported as undelivered.
+Closing wakes every consumer blocked in take(), which then returns null once the queue is
+drained, so tracked consumers need no poll interval to notice the close.
+Consumers started while the pipeline runs (an elastic pool) go through tryTrackConsumer,
+which refuses once the queue is closed, so none can register after the drain has begun.
+*/
+
+public class PipelineCompletion<T> {
+
+    private final ProducerQueue<T> queue;
+    private final Sweep<T> leftovers;
+    private WorkSource<?> source;
+    private final Tracker producers = new Tracker();
+    private final Tracker consumers = new Tracker();
+    // Orders late consumer registrations against the close and the start of the drain
+    private final Object closeLock = new Object();
+    private volatile long closedAtNanos;
+
+    public PipelineCompletion(ItemQueue<T> queue) {
+        this(queue, queue::drainTo);
+    }
+
+    // For a queue producers cannot take from, such as PartitionedQueues.router(); leftovers
+    // removes what is still queued behind it when the drain misses its deadline
+    public PipelineCompletion(ProducerQueue<T> queue, Sweep<T> leftovers) {
+        this.queue = queue;
+        this.leftovers = leftovers;
+    }
+
+    // Closes source once every tracked producer has stopped, so a source they left unfinished is not leaked
+    public PipelineCompletion<T> withSource(WorkSource<?> source) {
+        this.source = source;
+        return this;
+    }
+
+    // Wraps a producer so its completion (normal or not) counts towards closing the queue
+    public Runnable trackProducer(Runnable producer) {
+        producers.register();
+        return () -> {
+            try {
+                producer.run();
+            } finally {
+                producers.arrive();
+            }
+        };
+    }
+
+    // Wraps a consumer so awaitDrained() can tell when it has exited
+    public Runnable trackConsumer(Runnable consumer) {
+        consumers.register();
+        return () -> {
+            try {
+                consumer.run();
+            } finally {
+                consumers.arrive();
+            }
+        };
+    }
+
+    // Like trackConsumer, but returns null instead of registering once the queue is closed
+    public Runnable tryTrackConsumer(Runnable consumer) {
+        synchronized (closeLock) {
+            if (queue.isClosed()) {
+                return null;
+            }
+            return trackConsumer(consumer);
+        }
+    }
+
+    // Waits for every tracked producer to finish, then closes the source, if any, and the queue to further puts
+    public void awaitProducersAndClose() throws InterruptedException {
+        producers.await(Long.MAX_VALUE);
+        if (source != null) {
+            source.close();
+        }
+        synchronized (closeLock) {
+            queue.close();
+            closedAtNanos = System.nanoTime();
+        }
+    }
+
+    public boolean isClosed() {
+        return queue.isClosed();
+    }
+
+    // Waits up to the deadline for every tracked consumer to exit; on timeout the items still
+    // queued are removed and returned in the report so nothing is silently dropped
+    public Report<T> awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        // A registration that saw the queue open completes before this point, so it is waited for
+        synchronized (closeLock) {
+            if (!queue.isClosed()) {
+                throw new IllegalStateException("awaitProducersAndClose() must be called first");
+            }
+        }
+        boolean drainedInTime = consumers.await(unit.toNanos(timeout));
+        List<T> undelivered = new ArrayList<>();
+        int lingering = 0;
+        if (!drainedInTime) {
+            leftovers.drainTo(undelivered, Integer.MAX_VALUE);
+            lingering = (int) Math.min(Integer.MAX_VALUE, consumers.running());
+        }
+        return new Report<>(drainedInTime, System.nanoTime() - closedAtNanos, lingering, undelivered);
+    }
+
+    //Removes up to maxItems queued items into target without waiting, returning the count moved
+    public interface Sweep<T> {
+        int drainTo(Collection<? super T> target, int maxItems);
+    }
+
+    //Number of tracked workers still running; waiters are woken when it reaches zero
+    private static final class Tracker {
+        private final AtomicLong running = new AtomicLong();
+
+        void register() {
+            running.incrementAndGet();
+        }
+
+        void arrive() {
+            if (running.decrementAndGet() == 0) {
+                // Notifying under the monitor means a waiter between its check and wait() cannot miss it
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        long running() {
+            return running.get();
+        }
+
+        // True once nothing is running, false if timeoutNanos passed first
+        synchronized boolean await(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + Math.min(timeoutNanos, Long.MAX_VALUE / 2);
+            while (running.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
+    //Outcome of the drain: whether it met the deadline and what was left behind
+    public static final class Report<T> {
+        public final boolean drainedInTime;
+        public final long drainNanos;
+        public final int lingeringConsumers;
+        public final List<T> undelivered;
+
+        Report(boolean drainedInTime, long drainNanos, int lingeringConsumers, List<T> undelivered) {
+            this.drainedInTime = drainedInTime;
+            this.drainNanos = drainNanos;
+            this.lingeringConsumers = lingeringConsumers;
+            this.undelivered = Collections.unmodifiableList(undelivered);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            report.append("Drained In Time: ").append(drainedInTime).append(System.lineSeparator());
+            report.append(String.format("Close To Drain: %.1f ms", drainNanos / 1e6)).append(System.lineSeparator());
+            report.append("Consumers Still Running: ").append(lingeringConsumers).append(System.lineSeparator());
+            report.append("Undelivered Items: ").append(undelivered.size());
+            if (!undelivered.isEmpty()) {
+                report.append(' ').append(undelivered);
+            }
+            return report.toString();
+        }
+    }
+}
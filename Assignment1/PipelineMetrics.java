@@ -0,0 +1,257 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**In-process metrics for the producer-consumer pipeline
+Tracks enqueue-to-dequeue (handoff) latency, per-item processing time, time producers
+spend blocked on a full queue and consumers on an empty one, periodic queue-depth samples
+and striped throughput counters. Read it through snapshot() or over JMX.
+*/
+
+public class PipelineMetrics implements PipelineMetricsMBean, AutoCloseable {
+
+    private final LatencyHistogram handoffLatency = new LatencyHistogram();
+    private final LatencyHistogram processingTime = new LatencyHistogram();
+    private final LatencyHistogram queueDepth = new LatencyHistogram();
+    private final LongAdder produced = new LongAdder();
+    private final LongAdder consumed = new LongAdder();
+    private final LongAdder producerBlockedNanos = new LongAdder();
+    private final LongAdder consumerBlockedNanos = new LongAdder();
+
+    private volatile long startNanos = System.nanoTime();
+    private volatile ItemQueue<?> sampledQueue;
+    private ScheduledExecutorService depthSampler;
+    private ObjectName registeredName;
+
+    public void recordProduced() {
+        produced.increment();
+    }
+
+    public void recordProduced(int items) {
+        produced.add(items);
+    }
+
+    public void recordConsumed(int items) {
+        consumed.add(items);
+    }
+
+    public void recordHandoff(long nanos) {
+        handoffLatency.record(nanos);
+    }
+
+    public void recordProcessing(long nanos) {
+        processingTime.record(nanos);
+    }
+
+    public void recordProducerBlocked(long nanos) {
+        producerBlockedNanos.add(nanos);
+    }
+
+    public void recordConsumerBlocked(long nanos) {
+        consumerBlockedNanos.add(nanos);
+    }
+
+    public LatencyHistogram handoffLatency() {
+        return handoffLatency;
+    }
+
+    public LatencyHistogram processingTime() {
+        return processingTime;
+    }
+
+    // Samples queue.size() every intervalMillis on a daemon thread until close()
+    public synchronized void startQueueDepthSampling(ItemQueue<?> queue, long intervalMillis) {
+        if (depthSampler != null) {
+            throw new IllegalStateException("Queue depth sampling already started");
+        }
+        sampledQueue = queue;
+        depthSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "queue-depth-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        depthSampler.scheduleAtFixedRate(() -> queueDepth.record(queue.size()),
+                                         0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Exposes these metrics as ProducerConsumerDemo:type=PipelineMetrics,name=<name>
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("ProducerConsumerDemo:type=PipelineMetrics,name=" + name);
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics MBean '" + name + "'", e);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    // Stops depth sampling and unregisters the MBean
+    @Override
+    public synchronized void close() {
+        if (depthSampler != null) {
+            depthSampler.shutdownNow();
+            depthSampler = null;
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                System.err.println("Could not unregister " + registeredName + ": " + e.getMessage());
+            }
+            registeredName = null;
+        }
+    }
+
+    // ========== JMX ATTRIBUTES ==========
+
+    @Override
+    public long getItemsProduced() {
+        return produced.sum();
+    }
+
+    @Override
+    public long getItemsConsumed() {
+        return consumed.sum();
+    }
+
+    @Override
+    public double getConsumedPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0.0 : consumed.sum() / seconds;
+    }
+
+    @Override
+    public long getHandoffLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(handoffLatency.percentile(50));
+    }
+
+    @Override
+    public long getHandoffLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(handoffLatency.percentile(99));
+    }
+
+    @Override
+    public long getHandoffLatencyP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(handoffLatency.percentile(99.9));
+    }
+
+    @Override
+    public long getProcessingTimeP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(processingTime.percentile(50));
+    }
+
+    @Override
+    public long getProcessingTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(processingTime.percentile(99));
+    }
+
+    @Override
+    public long getProcessingTimeP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(processingTime.percentile(99.9));
+    }
+
+    @Override
+    public long getProducerBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(producerBlockedNanos.sum());
+    }
+
+    @Override
+    public long getConsumerBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(consumerBlockedNanos.sum());
+    }
+
+    @Override
+    public int getQueueDepth() {
+        ItemQueue<?> queue = sampledQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return (int) queueDepth.max();
+    }
+
+    @Override
+    public double getMeanQueueDepth() {
+        return queueDepth.mean();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        ItemQueue<?> queue = sampledQueue;
+        return queue == null ? 0 : queue.capacity();
+    }
+
+    @Override
+    public void reset() {
+        handoffLatency.reset();
+        processingTime.reset();
+        queueDepth.reset();
+        produced.reset();
+        consumed.reset();
+        producerBlockedNanos.reset();
+        consumerBlockedNanos.reset();
+        startNanos = System.nanoTime();
+    }
+
+    //Point-in-time copy of the metrics
+    public static final class Snapshot {
+        public final long itemsProduced;
+        public final long itemsConsumed;
+        public final double consumedPerSecond;
+        public final long handoffP50Nanos;
+        public final long handoffP99Nanos;
+        public final long handoffP999Nanos;
+        public final long processingP50Nanos;
+        public final long processingP99Nanos;
+        public final long processingP999Nanos;
+        public final long producerBlockedNanos;
+        public final long consumerBlockedNanos;
+        public final int maxQueueDepth;
+        public final double meanQueueDepth;
+        public final int queueCapacity;
+
+        Snapshot(PipelineMetrics metrics) {
+            this.itemsProduced = metrics.produced.sum();
+            this.itemsConsumed = metrics.consumed.sum();
+            this.consumedPerSecond = metrics.getConsumedPerSecond();
+            this.handoffP50Nanos = metrics.handoffLatency.percentile(50);
+            this.handoffP99Nanos = metrics.handoffLatency.percentile(99);
+            this.handoffP999Nanos = metrics.handoffLatency.percentile(99.9);
+            this.processingP50Nanos = metrics.processingTime.percentile(50);
+            this.processingP99Nanos = metrics.processingTime.percentile(99);
+            this.processingP999Nanos = metrics.processingTime.percentile(99.9);
+            this.producerBlockedNanos = metrics.producerBlockedNanos.sum();
+            this.consumerBlockedNanos = metrics.consumerBlockedNanos.sum();
+            this.maxQueueDepth = metrics.getMaxQueueDepth();
+            this.meanQueueDepth = metrics.getMeanQueueDepth();
+            this.queueCapacity = metrics.getQueueCapacity();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "Items produced/consumed: %d / %d (%.1f consumed/s)%n"
+                + "Handoff latency (us):    p50=%d p99=%d p999=%d%n"
+                + "Processing time (us):    p50=%d p99=%d p999=%d%n"
+                + "Producer blocked (ms):   %d%n"
+                + "Consumer blocked (ms):   %d%n"
+                + "Queue depth:             mean=%.1f max=%d capacity=%d",
+                itemsProduced, itemsConsumed, consumedPerSecond,
+                handoffP50Nanos / 1000, handoffP99Nanos / 1000, handoffP999Nanos / 1000,
+                processingP50Nanos / 1000, processingP99Nanos / 1000, processingP999Nanos / 1000,
+                producerBlockedNanos / 1_000_000, consumerBlockedNanos / 1_000_000,
+                meanQueueDepth, maxQueueDepth, queueCapacity);
+        }
+    }
+}
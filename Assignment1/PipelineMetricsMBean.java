@@ -0,0 +1,38 @@
+/**JMX view of PipelineMetrics
+Times are reported in microseconds (latencies) or milliseconds (accumulated blocking)
+*/
+
+public interface PipelineMetricsMBean {
+
+    long getItemsProduced();
+
+    long getItemsConsumed();
+
+    double getConsumedPerSecond();
+
+    long getHandoffLatencyP50Micros();
+
+    long getHandoffLatencyP99Micros();
+
+    long getHandoffLatencyP999Micros();
+
+    long getProcessingTimeP50Micros();
+
+    long getProcessingTimeP99Micros();
+
+    long getProcessingTimeP999Micros();
+
+    long getProducerBlockedMillis();
+
+    long getConsumerBlockedMillis();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    double getMeanQueueDepth();
+
+    int getQueueCapacity();
+
+    void reset();
+}
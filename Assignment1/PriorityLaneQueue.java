@@ -0,0 +1,301 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**Multi-lane queue that serves urgent items ahead of bulk backlog
+A lane function tags each item with a lane (0 is the most urgent); every lane is its own
+lock-free ring, so producers on different lanes never contend. Consumers pick the next lane
+with either weighted round-robin (lane i gets weights[i] turns per round, empty lanes give
+their turn away) or strict priority, where each waiting lane counts how often it was passed
+over and the most starved one is served once its count reaches starvationLimit, so every
+backlogged lane gets a turn, not only the lowest. The scheduling state is kept per consumer
+thread, so dequeue needs no global lock. Each lane records its depth and queueing latency.
+With a parking wait strategy, a consumer waiting on all lanes parks on one queue-wide signal
+that every put raises.
+*/
+
+public class PriorityLaneQueue<T> implements ItemQueue<T> {
+
+    // How consumers choose between non-empty lanes
+    public enum Scheduling { WEIGHTED, STRICT }
+
+    public static final int DEFAULT_STARVATION_LIMIT = 64;
+
+    private final Lane<T>[] lanes;
+    private final ToIntFunction<? super T> laneOf;
+    private final ThreadLocal<Cursor> cursors;
+    private Scheduling scheduling = Scheduling.WEIGHTED;
+    private int starvationLimit = DEFAULT_STARVATION_LIMIT;
+    private WaitStrategy waitStrategy = WaitStrategy.SPIN_THEN_PARK;
+    private final WaitStrategy.Signal notEmpty = new WaitStrategy.Signal();
+    private volatile boolean closed;
+
+    // Weighted lanes with weights laneCount, laneCount - 1, ..., 1
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PriorityLaneQueue(int laneCount, int capacityPerLane, ToIntFunction<? super T> laneOf) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("laneCount must be >= 1: " + laneCount);
+        }
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane<>(RingBufferQueue.mpmc(capacityPerLane), laneCount - i);
+        }
+        this.laneOf = laneOf;
+        this.cursors = ThreadLocal.withInitial(() -> new Cursor(lanes.length));
+    }
+
+    // Turns per round for each lane under WEIGHTED scheduling, most urgent lane first
+    public PriorityLaneQueue<T> withWeights(int... weights) {
+        if (weights.length != lanes.length) {
+            throw new IllegalArgumentException("Expected " + lanes.length + " weights, got " + weights.length);
+        }
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 1) {
+                throw new IllegalArgumentException("Weights must be >= 1: " + weights[i]);
+            }
+            lanes[i].weight = weights[i];
+        }
+        scheduling = Scheduling.WEIGHTED;
+        return this;
+    }
+
+    // Always serves the most urgent non-empty lane, except once for any waiting lane passed over starvationLimit times
+    public PriorityLaneQueue<T> withStrictPriority(int starvationLimit) {
+        if (starvationLimit < 1) {
+            throw new IllegalArgumentException("starvationLimit must be >= 1: " + starvationLimit);
+        }
+        this.starvationLimit = starvationLimit;
+        scheduling = Scheduling.STRICT;
+        return this;
+    }
+
+    // How take() waits while every lane is empty
+    public PriorityLaneQueue<T> withWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        checkOpen();
+        lane(item).queue.put(new Stamped<>(item, System.nanoTime()));
+        if (waitStrategy.parks()) {
+            notEmpty.signalAll();
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        checkOpen();
+        if (!lane(item).queue.offer(new Stamped<>(item, System.nanoTime()))) {
+            return false;
+        }
+        if (waitStrategy.parks()) {
+            notEmpty.signalAll();
+        }
+        return true;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        int attempt = 0;
+        T item;
+        while ((item = poll()) == null) {
+            if (closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public T poll() {
+        return scheduling == Scheduling.STRICT ? pollStrict(cursors.get()) : pollWeighted(cursors.get());
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        T item;
+        while ((item = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0 || closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane<T> lane : lanes) {
+            size += lane.queue.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        int capacity = 0;
+        for (Lane<T> lane : lanes) {
+            capacity += lane.queue.capacity();
+        }
+        return capacity;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        notEmpty.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int laneDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    // Time items of this lane spent queued, from put to take
+    public LatencyHistogram laneLatency(int lane) {
+        return lanes[lane].latency;
+    }
+
+    // One line per lane: depth, items taken and queueing latency percentiles
+    public String laneReport() {
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < lanes.length; i++) {
+            LatencyHistogram latency = lanes[i].latency;
+            report.append(String.format("Lane %d (weight %d): depth %d, taken %d, p50 %d us, p99 %d us, max %d us%n",
+                i, lanes[i].weight, laneDepth(i), latency.count(),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(latency.max())));
+        }
+        return report.toString();
+    }
+
+    // Weighted round-robin: stay on a lane until its turns are used or it is empty, then move on
+    private T pollWeighted(Cursor cursor) {
+        for (int visited = 0; visited <= lanes.length; visited++) {
+            if (cursor.credit == 0) {
+                cursor.lane = cursor.lane + 1 == lanes.length ? 0 : cursor.lane + 1;
+                cursor.credit = lanes[cursor.lane].weight;
+            }
+            Stamped<T> stamped = lanes[cursor.lane].queue.poll();
+            if (stamped != null) {
+                cursor.credit--;
+                return unwrap(lanes[cursor.lane], stamped);
+            }
+            cursor.credit = 0; // Empty lane gives its turn away
+        }
+        return null;
+    }
+
+    // Strict priority, except that the most starved waiting lane is served once it reaches starvationLimit
+    private T pollStrict(Cursor cursor) {
+        int starved = mostStarved(cursor);
+        if (starved > 0) {
+            Stamped<T> stamped = lanes[starved].queue.poll();
+            if (stamped != null) {
+                return served(cursor, starved, stamped);
+            }
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            Stamped<T> stamped = lanes[i].queue.poll();
+            if (stamped != null) {
+                return served(cursor, i, stamped);
+            }
+        }
+        return null;
+    }
+
+    // Lane passed over most often, if at or past the limit; ties go to the more urgent lane
+    private int mostStarved(Cursor cursor) {
+        int starved = -1;
+        int most = starvationLimit - 1;
+        for (int i = 1; i < lanes.length; i++) {
+            if (cursor.passedOver[i] > most) {
+                most = cursor.passedOver[i];
+                starved = i;
+            }
+        }
+        return starved;
+    }
+
+    // Every other lane still waiting has been passed over once more; the served lane and empty lanes start again
+    private T served(Cursor cursor, int lane, Stamped<T> stamped) {
+        for (int i = 0; i < lanes.length; i++) {
+            cursor.passedOver[i] = i != lane && !lanes[i].queue.isEmpty() ? cursor.passedOver[i] + 1 : 0;
+        }
+        return unwrap(lanes[lane], stamped);
+    }
+
+    private Lane<T> lane(T item) {
+        int lane = laneOf.applyAsInt(item);
+        if (lane < 0 || lane >= lanes.length) {
+            throw new IllegalArgumentException("Lane " + lane + " out of range for " + item);
+        }
+        return lanes[lane];
+    }
+
+    private T unwrap(Lane<T> lane, Stamped<T> stamped) {
+        lane.latency.record(System.nanoTime() - stamped.enqueuedAt);
+        return stamped.item;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+    }
+
+    // Wake condition rechecked by a parked consumer after it registers with the signal
+    private boolean hasItem() {
+        return !isEmpty() || closed;
+    }
+
+    // One priority level
+    private static final class Lane<T> {
+        final ItemQueue<Stamped<T>> queue;
+        final LatencyHistogram latency = new LatencyHistogram();
+        int weight;
+
+        Lane(ItemQueue<Stamped<T>> queue, int weight) {
+            this.queue = queue;
+            this.weight = weight;
+        }
+    }
+
+    // A consumer thread's position in the schedule
+    private static final class Cursor {
+        int lane;
+        int credit;
+        final int[] passedOver;
+
+        Cursor(int laneCount) {
+            this.passedOver = new int[laneCount];
+            // The first weighted poll moves on to lane 0
+            this.lane = laneCount - 1;
+        }
+    }
+
+    // Item plus the time it was put
+    private static final class Stamped<T> {
+        final T item;
+        final long enqueuedAt;
+
+        Stamped(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
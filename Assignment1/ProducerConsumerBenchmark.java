@@ -0,0 +1,368 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**Benchmark harness for producer-consumer configurations (No JMH required)
+Sweeps queue implementation, capacity, producer/consumer counts, consumer batch size and
+item size over the real Producer/Consumer pipeline with the simulated sleep removed.
+Each configuration gets warmup and measured iterations; results report throughput (ops/s),
+p50/p99/p999 handoff latency and allocation rate measured per worker thread.
+Each configuration runs in a fresh JVM (as JMH forks do): in one JVM the ItemQueue call sites
+turn megamorphic once a second queue type has run, and that JIT profile would skew every later
+row. fork=false runs them all in this JVM instead, which is faster but only fair for one queue type.
+Run directly with: java ProducerConsumerBenchmark [name=v1,v2 ...] [-csv]
+  queue=RING_MPMC,LINKED_BLOCKING capacity=64,1024 threads=1x1,4x4 batch=1,64
+  itemSize=16,256 items=200000 warmup=2 iterations=5 fork=true
+*/
+
+public class ProducerConsumerBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Protocol between the parent run and the JVM it forks for each configuration
+    private static final String CHILD_FLAG = "-forked";
+    private static final String RESULT_PREFIX = "RESULT ";
+    private static final String CSV_PREFIX = "CSV ";
+
+    // One point in the parameter sweep
+    static class Config {
+        final ItemQueue.Type queueType;
+        final int capacity;
+        final int producers;
+        final int consumers;
+        final int batchSize;
+        final int itemSize;
+
+        Config(ItemQueue.Type queueType, int capacity, int producers, int consumers, int batchSize, int itemSize) {
+            this.queueType = queueType;
+            this.capacity = capacity;
+            this.producers = producers;
+            this.consumers = consumers;
+            this.batchSize = batchSize;
+            this.itemSize = itemSize;
+        }
+
+        // Single-producer / single-consumer rings are only valid for matching thread counts
+        boolean isValid() {
+            switch (queueType) {
+                case RING_SPSC: return producers == 1 && consumers == 1;
+                case RING_MPSC: return consumers == 1;
+                default: return true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-15s cap=%-5d %dx%-2d batch=%-3d item=%-4d",
+                queueType, capacity, producers, consumers, batchSize, itemSize);
+        }
+    }
+
+    // Measurements of one iteration
+    static class Sample {
+        final double opsPerSecond;
+        final long allocatedBytes;
+        final long elapsedNanos;
+
+        Sample(double opsPerSecond, long allocatedBytes, long elapsedNanos) {
+            this.opsPerSecond = opsPerSecond;
+            this.allocatedBytes = allocatedBytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    // Aggregated result for one configuration
+    static class Result {
+        final Config config;
+        final double meanOps;
+        final double stdDevOps;
+        final long p50Nanos;
+        final long p99Nanos;
+        final long p999Nanos;
+        final double allocMbPerSecond;
+        final double bytesPerOp;
+
+        Result(Config config, List<Sample> samples, LatencyHistogram latency, int items) {
+            this.config = config;
+            double sum = 0;
+            for (Sample sample : samples) {
+                sum += sample.opsPerSecond;
+            }
+            this.meanOps = sum / samples.size();
+            double squares = 0;
+            for (Sample sample : samples) {
+                squares += (sample.opsPerSecond - meanOps) * (sample.opsPerSecond - meanOps);
+            }
+            this.stdDevOps = Math.sqrt(squares / samples.size());
+            this.p50Nanos = latency.percentile(50);
+            this.p99Nanos = latency.percentile(99);
+            this.p999Nanos = latency.percentile(99.9);
+            long bytes = 0;
+            long nanos = 0;
+            for (Sample sample : samples) {
+                bytes += sample.allocatedBytes;
+                nanos += sample.elapsedNanos;
+            }
+            this.allocMbPerSecond = bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+            this.bytesPerOp = (double) bytes / ((long) items * samples.size());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %,12.0f +- %,10.0f %8.1f %8.1f %8.1f %9.1f %8.1f",
+                config, meanOps, stdDevOps, p50Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3,
+                allocMbPerSecond, bytesPerOp);
+        }
+
+        String toCsv() {
+            return String.join(",", config.queueType.name(), String.valueOf(config.capacity),
+                String.valueOf(config.producers), String.valueOf(config.consumers),
+                String.valueOf(config.batchSize), String.valueOf(config.itemSize),
+                String.format("%.0f", meanOps), String.format("%.0f", stdDevOps),
+                String.valueOf(p50Nanos), String.valueOf(p99Nanos), String.valueOf(p999Nanos),
+                String.format("%.2f", allocMbPerSecond), String.format("%.2f", bytesPerOp));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("queue", "LINKED_BLOCKING,ARRAY_BLOCKING,RING_MPMC");
+        options.put("capacity", "64,1024");
+        options.put("threads", "1x1,4x4,8x8");
+        options.put("batch", "1,64");
+        options.put("itemSize", "16");
+        options.put("items", "200000");
+        options.put("warmup", "2");
+        options.put("iterations", "5");
+        options.put("fork", "true");
+        boolean csv = false;
+        boolean child = false;
+        for (String arg : args) {
+            if (arg.equals("-csv")) {
+                csv = true;
+                continue;
+            }
+            if (arg.equals(CHILD_FLAG)) {
+                child = true;
+                continue;
+            }
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2 || !options.containsKey(pair[0])) {
+                throw new IllegalArgumentException("Unknown option: " + arg + " (expected one of " + options.keySet() + ")");
+            }
+            options.put(pair[0], pair[1]);
+        }
+
+        int items = Integer.parseInt(options.get("items"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        int iterations = Integer.parseInt(options.get("iterations"));
+        boolean fork = Boolean.parseBoolean(options.get("fork"));
+        List<Config> configs = sweep(options);
+
+        if (child) {
+            // Forked for a single configuration: report it to the parent and exit
+            for (Config config : configs) {
+                Result result = measure(config, items, warmup, iterations);
+                System.out.println(RESULT_PREFIX + result);
+                System.out.println(CSV_PREFIX + result.toCsv());
+            }
+            return;
+        }
+
+        System.out.println("=== Producer-Consumer Benchmark ===");
+        System.out.println("Items per iteration: " + items);
+        System.out.println("Warmup / measured iterations: " + warmup + " / " + iterations);
+        System.out.println("Configurations: " + configs.size() + (fork ? " (one JVM each)" : " (shared JVM)"));
+        System.out.println("================================\n");
+        System.out.println(String.format("%-50s %27s %8s %8s %8s %9s %8s",
+            "Configuration", "ops/s", "p50 us", "p99 us", "p999 us", "alloc MB/s", "B/op"));
+
+        List<String> csvRows = new ArrayList<>();
+        for (Config config : configs) {
+            String[] row;
+            if (fork) {
+                row = measureInFork(config, items, warmup, iterations);
+            } else {
+                Result result = measure(config, items, warmup, iterations);
+                row = new String[] {result.toString(), result.toCsv()};
+            }
+            csvRows.add(row[1]);
+            System.out.println(row[0]);
+        }
+
+        if (csv) {
+            System.out.println("\nqueue,capacity,producers,consumers,batch,itemSize,opsPerSec,stdDev,"
+                               + "p50Nanos,p99Nanos,p999Nanos,allocMBPerSec,bytesPerOp");
+            csvRows.forEach(System.out::println);
+        }
+    }
+
+    // Warmup and measured iterations of one configuration, plus the instrumented latency pass
+    static Result measure(Config config, int items, int warmup, int iterations) throws InterruptedException {
+        List<String> payloads = payloads(items, config.itemSize);
+        for (int i = 0; i < warmup; i++) {
+            runIteration(config, payloads, null);
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            samples.add(runIteration(config, payloads, null));
+        }
+        // Latency comes from a separate instrumented pass so its timestamps do not skew the allocation figures
+        PipelineMetrics metrics = new PipelineMetrics();
+        runIteration(config, payloads, metrics);
+        return new Result(config, samples, metrics.handoffLatency(), items);
+    }
+
+    // Runs one configuration in a child JVM with this JVM's options and class path;
+    // returns its table row and CSV row
+    static String[] measureInFork(Config config, int items, int warmup, int iterations)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ProducerConsumerBenchmark.class.getName());
+        command.add(CHILD_FLAG);
+        command.add("queue=" + config.queueType.name());
+        command.add("capacity=" + config.capacity);
+        command.add("threads=" + config.producers + "x" + config.consumers);
+        command.add("batch=" + config.batchSize);
+        command.add("itemSize=" + config.itemSize);
+        command.add("items=" + items);
+        command.add("warmup=" + warmup);
+        command.add("iterations=" + iterations);
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String row = null;
+        String csvRow = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    row = line.substring(RESULT_PREFIX.length());
+                } else if (line.startsWith(CSV_PREFIX)) {
+                    csvRow = line.substring(CSV_PREFIX.length());
+                } else {
+                    output.append(line).append(System.lineSeparator());
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || row == null || csvRow == null) {
+            throw new IllegalStateException(config + " failed in its forked JVM (exit " + exitCode + ")"
+                                            + System.lineSeparator() + output);
+        }
+        return new String[] {row, csvRow};
+    }
+
+    // Cartesian product of the swept parameters, skipping invalid queue/thread combinations
+    static List<Config> sweep(Map<String, String> options) {
+        List<Config> configs = new ArrayList<>();
+        for (String queue : options.get("queue").split(",")) {
+            for (String capacity : options.get("capacity").split(",")) {
+                for (String threads : options.get("threads").split(",")) {
+                    String[] counts = threads.split("x");
+                    for (String batch : options.get("batch").split(",")) {
+                        for (String itemSize : options.get("itemSize").split(",")) {
+                            Config config = new Config(ItemQueue.Type.valueOf(queue.trim()),
+                                Integer.parseInt(capacity.trim()), Integer.parseInt(counts[0].trim()),
+                                Integer.parseInt(counts[1].trim()), Integer.parseInt(batch.trim()),
+                                Integer.parseInt(itemSize.trim()));
+                            if (config.isValid()) {
+                                configs.add(config);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    // Runs the full pipeline once; metrics, when given, switch the queue to the instrumented variant
+    static Sample runIteration(Config config, List<String> payloads, PipelineMetrics metrics)
+            throws InterruptedException {
+        ItemQueue<String> sharedQueue = metrics == null
+            ? config.queueType.create(config.capacity)
+            : new InstrumentedQueue<>(config.queueType, config.capacity, metrics);
+        List<String> destinationContainer = Collections.synchronizedList(new ArrayList<>(payloads.size()));
+        ItemSink<String> sink = new ThreadLocalBufferSink<>(destinationContainer);
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+        LongAdder allocated = new LongAdder();
+        PipelineCompletion<String> completion = new PipelineCompletion<>(sharedQueue);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < config.producers; i++) {
+            int start = i * payloads.size() / config.producers;
+            int end = (i + 1) * payloads.size() / config.producers;
+            ProducerConsumerDemo.Producer producer = new ProducerConsumerDemo.Producer(
+                payloads.subList(start, end), sharedQueue, "Producer-" + (i + 1), produced)
+                .withSimulatedDelay(0, 0)
+                .withEventLog(silent);
+            producers.add(new Thread(completion.trackProducer(measuringAllocation(producer, allocated))));
+        }
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < config.consumers; i++) {
+            ProducerConsumerDemo.Consumer consumer = new ProducerConsumerDemo.Consumer(
+                sharedQueue, sink, "Consumer-" + (i + 1), consumed)
+                .withBatching(config.batchSize, 0)
+                .withSimulatedDelay(0, 0)
+                .withEventLog(silent);
+            consumers.add(new Thread(completion.trackConsumer(measuringAllocation(consumer, allocated))));
+        }
+
+        long start = System.nanoTime();
+        consumers.forEach(Thread::start);
+        producers.forEach(Thread::start);
+        completion.awaitProducersAndClose();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (consumed.get() != payloads.size()) {
+            throw new IllegalStateException(config + " lost items: consumed " + consumed.get() + " of " + payloads.size());
+        }
+        return new Sample(payloads.size() / (elapsed / 1e9), allocated.sum(), elapsed);
+    }
+
+    // Wraps a worker so the bytes its thread allocates while running are added to the total
+    private static Runnable measuringAllocation(Runnable worker, LongAdder allocated) {
+        return () -> {
+            long threadId = Thread.currentThread().getId();
+            long before = THREADS.getThreadAllocatedBytes(threadId);
+            worker.run();
+            allocated.add(THREADS.getThreadAllocatedBytes(threadId) - before);
+        };
+    }
+
+    // Pre-built items of the requested length so item creation is outside the measurement
+    private static List<String> payloads(int items, int itemSize) {
+        List<String> payloads = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            String id = "Item-" + i;
+            if (id.length() < itemSize) {
+                char[] padding = new char[itemSize - id.length()];
+                Arrays.fill(padding, '.');
+                id = id + new String(padding);
+            }
+            payloads.add(id);
+        }
+        return payloads;
+    }
+}
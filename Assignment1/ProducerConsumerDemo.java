@@ -1,7 +1,13 @@
-
+import java.nio.file.Paths;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -9,96 +15,488 @@ import java.util.List;
 
 /**Demonstrates thread synchronization and communication using blocking queues
 Supports multiple producers and consumers with proper termination
+(close-and-drain via PipelineCompletion, or the legacy poison pill)
 */
 
 public class ProducerConsumerDemo {
     
-    // Poison pill constant for signaling completion
+    // Poison pill constant for signaling completion when the queue is not closed instead
     public static final String POISON_PILL = "END_OF_STREAM";
     
-    //Producer thread that reads items from source and places them in shared queue
+    // Default bounds of the simulated per-item processing time
+    static final long DEFAULT_MIN_DELAY_MS = 50;
+    static final long DEFAULT_MAX_DELAY_MS = 200;
+    
+    //Producer thread that claims items from a shared source and places them in shared queue
      
     static class Producer implements Runnable {
-        private final List<String> sourceContainer;
-        private final BlockingQueue<String> sharedQueue;
+        // Runs linger flushes that fire while a producer is still busy on its next item; a flush
+        // blocked on a full queue holds only its own pooled thread
+        private static final Executor LINGER_FLUSHES = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "producer-linger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        private final WorkSource<String> source;
+        private final ProducerQueue<String> sharedQueue;
         private final String producerName;
         private final AtomicInteger itemsProduced;
+        private WorkloadModel workload = WorkloadModel.uniformSleep(DEFAULT_MIN_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+        private EventLog eventLog = EventLog.CONSOLE;
+        private PipelineMetrics metrics;
         
-        public Producer(List<String> sourceContainer, BlockingQueue<String> sharedQueue, 
+        // Batch mode settings; batchSize of 1 puts each item on its own
+        private int batchSize = 1;
+        private long lingerMillis = 0;
+        
+        // Pending batch, shared with the linger flush; the generation tells a late flush its batch already went
+        private final Object batchLock = new Object();
+        private List<String> batch = new ArrayList<>();
+        private long batchGeneration;
+        
+        public Producer(WorkSource<String> source, ProducerQueue<String> sharedQueue, 
                        String name, AtomicInteger itemsProduced) {
-            this.sourceContainer = sourceContainer;
+            this.source = source;
             this.sharedQueue = sharedQueue;
             this.producerName = name;
             this.itemsProduced = itemsProduced;
         }
         
+        // Produces every item of a list this producer has to itself
+        public Producer(List<String> sourceContainer, ProducerQueue<String> sharedQueue, 
+                       String name, AtomicInteger itemsProduced) {
+            this(WorkSource.of(sourceContainer, 1), sharedQueue, name, itemsProduced);
+        }
+        
+        public Producer(List<String> sourceContainer, BlockingQueue<String> sharedQueue, 
+                       String name, AtomicInteger itemsProduced) {
+            this(sourceContainer, ItemQueue.of(sharedQueue), name, itemsProduced);
+        }
+        
+        // Overrides the simulated processing time per item; (0, 0) removes it
+        public Producer withSimulatedDelay(long minMillis, long maxMillis) {
+            return withWorkload(WorkloadModel.uniformSleep(minMillis, maxMillis));
+        }
+        
+        // Replaces the simulated sleep with the given per-item work
+        public Producer withWorkload(WorkloadModel workload) {
+            this.workload = workload;
+            return this;
+        }
+        
+        // Routes progress messages through the given log instead of printing them directly
+        public Producer withEventLog(EventLog eventLog) {
+            this.eventLog = eventLog;
+            return this;
+        }
+        
+        // Counts produced items in the given metrics
+        public Producer withMetrics(PipelineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+        
+        // Coalesce up to batchSize items per putBatch, flushing early once the oldest has waited lingerMillis
+        public Producer withBatching(int batchSize, long lingerMillis) {
+            if (batchSize < 1 || lingerMillis < 0) {
+                throw new IllegalArgumentException("batchSize must be >= 1 and lingerMillis >= 0");
+            }
+            this.batchSize = batchSize;
+            this.lingerMillis = lingerMillis;
+            return this;
+        }
+        
+        // Flow mode: publishes this producer's items on demand from executor threads instead of putting
+        // them into a queue; the simulated delay is skipped because it would park the publishing thread
+        public Flow.Publisher<String> asPublisher(Executor executor) {
+            return FlowAdapters.fromSource(source, executor, item -> {
+                int produced = itemsProduced.incrementAndGet();
+                if (metrics != null) {
+                    metrics.recordProduced();
+                }
+                eventLog.log(EventLog.Event.PRODUCED, producerName, item, 0, produced);
+            });
+        }
+        
         @Override
         public void run() {
             try {
-                for (String item : sourceContainer) {
-                    // Simulate processing time
-                    Thread.sleep(ThreadLocalRandom.current().nextInt(50, 200));
+                if (batchSize > 1) {
+                    produceInBatches();
+                } else {
+                    produceOneByOne();
+                }
+                eventLog.log(EventLog.Event.PRODUCER_FINISHED, producerName, null, 0, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                eventLog.log(EventLog.Event.INTERRUPTED, producerName, null, 0, 0);
+            }
+        }
+        
+        private void produceOneByOne() throws InterruptedException {
+            List<String> chunk;
+            while ((chunk = source.claim()) != null) {
+                for (String item : chunk) {
+                    // Per-item work from the workload model
+                    workload.process();
                     
                     // Put item in shared queue (blocks if queue is full)
                     sharedQueue.put(item);
                     int produced = itemsProduced.incrementAndGet();
-                    System.out.println(producerName + " produced: " + item + 
-                                     " (Total produced: " + produced + ")");
+                    if (metrics != null) {
+                        metrics.recordProduced();
+                    }
+                    eventLog.log(EventLog.Event.PRODUCED, producerName, item, 0, produced);
                 }
-                System.out.println(producerName + " finished producing.");
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println(producerName + " was interrupted.");
             }
         }
+        
+        // A full batch goes out at once; a partial one goes out lingerMillis after its first item,
+        // from a timer if this producer is still working on the next item
+        private void produceInBatches() throws InterruptedException {
+            List<String> chunk;
+            while ((chunk = source.claim()) != null) {
+                for (String item : chunk) {
+                    // Per-item work from the workload model
+                    workload.process();
+                    
+                    synchronized (batchLock) {
+                        if (batch.isEmpty() && lingerMillis > 0) {
+                            long generation = batchGeneration;
+                            CompletableFuture.delayedExecutor(lingerMillis, TimeUnit.MILLISECONDS, LINGER_FLUSHES)
+                                .execute(() -> flushLingering(generation));
+                        }
+                        batch.add(item);
+                        if (batch.size() >= batchSize || lingerMillis == 0) {
+                            publishBatch();
+                        }
+                    }
+                }
+            }
+            synchronized (batchLock) {
+                publishBatch();
+            }
+        }
+        
+        // Linger timer: publishes the batch it was started for unless that batch has already gone
+        private void flushLingering(long generation) {
+            synchronized (batchLock) {
+                if (generation != batchGeneration) {
+                    return;
+                }
+                try {
+                    publishBatch();
+                } catch (InterruptedException e) {
+                    // The batch stays pending; the producer publishes it with its next one
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        // Publishes the pending batch, if any, and starts a new one; caller holds batchLock
+        private void publishBatch() throws InterruptedException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            publish(batch);
+            batch = new ArrayList<>(batchSize);
+            batchGeneration++;
+        }
+        
+        // One queue entry and one counter update for the whole batch
+        private void publish(List<String> batch) throws InterruptedException {
+            sharedQueue.putBatch(batch);
+            int produced = itemsProduced.addAndGet(batch.size());
+            if (metrics != null) {
+                metrics.recordProduced(batch.size());
+            }
+            eventLog.log(EventLog.Event.BATCH_PRODUCED, producerName, null, batch.size(), produced);
+        }
     }
     
     //Consumer thread that reads items from shared queue and stores in destination
     static class Consumer implements Runnable {
-        private final BlockingQueue<String> sharedQueue;
-        private final List<String> destinationContainer;
+        private final ItemQueue<String> sharedQueue;
+        private final ItemSink<String> destination;
         private final String consumerName;
         private final AtomicInteger itemsConsumed;
         
-        public Consumer(BlockingQueue<String> sharedQueue, List<String> destinationContainer, 
+        // Batch mode settings; batchSize of 1 keeps the original one-item-per-take behaviour
+        private int batchSize = 1;
+        private long lingerMillis = 0;
+        private WorkloadModel workload = WorkloadModel.uniformSleep(DEFAULT_MIN_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+        private EventLog eventLog = EventLog.CONSOLE;
+        private PipelineMetrics metrics;
+        
+        // With a poll interval set, an idle consumer notices requestStop() and a closed, drained queue
+        private long pollIntervalMillis = 0;
+        private volatile boolean stopRequested;
+        private volatile long busyNanos;
+        private boolean drained;
+        
+        // Legacy shutdown: stop at POISON_PILL and put it back for the next consumer
+        private boolean poisonPill;
+        
+        public Consumer(ItemQueue<String> sharedQueue, ItemSink<String> destination, 
                        String name, AtomicInteger itemsConsumed) {
             this.sharedQueue = sharedQueue;
-            this.destinationContainer = destinationContainer;
+            this.destination = destination;
             this.consumerName = name;
             this.itemsConsumed = itemsConsumed;
         }
         
+        public Consumer(ItemQueue<String> sharedQueue, List<String> destinationContainer, 
+                       String name, AtomicInteger itemsConsumed) {
+            this(sharedQueue, ItemSink.of(destinationContainer), name, itemsConsumed);
+        }
+        
+        // A plain BlockingQueue cannot be closed, so these consumers stop at the poison pill
+        public Consumer(BlockingQueue<String> sharedQueue, List<String> destinationContainer, 
+                       String name, AtomicInteger itemsConsumed) {
+            this(ItemQueue.of(sharedQueue), destinationContainer, name, itemsConsumed);
+            this.poisonPill = true;
+        }
+        
+        // Drain up to batchSize items per wakeup, waiting at most lingerMillis to fill a batch
+        public Consumer withBatching(int batchSize, long lingerMillis) {
+            if (batchSize < 1 || lingerMillis < 0) {
+                throw new IllegalArgumentException("batchSize must be >= 1 and lingerMillis >= 0");
+            }
+            this.batchSize = batchSize;
+            this.lingerMillis = lingerMillis;
+            return this;
+        }
+        
+        // Overrides the simulated processing time per item; (0, 0) removes it
+        public Consumer withSimulatedDelay(long minMillis, long maxMillis) {
+            return withWorkload(WorkloadModel.uniformSleep(minMillis, maxMillis));
+        }
+        
+        // Replaces the simulated sleep with the given per-item work
+        public Consumer withWorkload(WorkloadModel workload) {
+            this.workload = workload;
+            return this;
+        }
+        
+        // Routes progress messages through the given log instead of printing them directly
+        public Consumer withEventLog(EventLog eventLog) {
+            this.eventLog = eventLog;
+            return this;
+        }
+        
+        // Records consumed items and per-item processing time in the given metrics
+        public Consumer withMetrics(PipelineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+        
+        // Waits for items in slices of pollMillis so a stop request or queue close is seen even when idle
+        public Consumer withPollInterval(long pollMillis) {
+            if (pollMillis < 1) {
+                throw new IllegalArgumentException("pollMillis must be >= 1");
+            }
+            this.pollIntervalMillis = pollMillis;
+            return this;
+        }
+        
+        // Stops at POISON_PILL and puts it back for the other consumers, for queues nobody closes
+        public Consumer withPoisonPill() {
+            this.poisonPill = true;
+            return this;
+        }
+        
+        // Asks this consumer alone to exit after the item or batch in hand; other consumers keep running
+        public void requestStop() {
+            stopRequested = true;
+        }
+        
+        public boolean isStopRequested() {
+            return stopRequested;
+        }
+        
+        // Total time spent processing and storing items, for utilization sampling
+        public long busyNanos() {
+            return busyNanos;
+        }
+        
+        public String getName() {
+            return consumerName;
+        }
+        
+        // Flow mode: receives items from a publisher into this consumer's destination, requesting
+        // batchSize at a time (at least 2, so demand is topped up before it runs out)
+        public FlowAdapters.SinkSubscriber<String> asSubscriber() {
+            return new FlowAdapters.SinkSubscriber<>(destination, Math.max(2, batchSize), item -> {
+                int consumed = itemsConsumed.incrementAndGet();
+                if (metrics != null) {
+                    metrics.recordConsumed(1);
+                }
+                eventLog.log(EventLog.Event.CONSUMED, consumerName, item, 0, consumed);
+            });
+        }
+        
         @Override
         public void run() {
             try {
-                while (true) {
-                    // Take item from queue (blocks if queue is empty)
-                    String item = sharedQueue.take();
-                    
-                    // Check for poison pill to terminate
-                    if (POISON_PILL.equals(item)) {
-                        System.out.println(consumerName + " received termination signal.");
-                        // Put poison pill back for other consumers
-                        sharedQueue.put(POISON_PILL);
-                        break;
-                    }
-                    
-                    // Simulate processing time
-                    Thread.sleep(ThreadLocalRandom.current().nextInt(50, 200));
-                    
-                    // Store in destination (thread-safe)
-                    synchronized (destinationContainer) {
-                        destinationContainer.add(item);
-                    }
-                    
-                    int consumed = itemsConsumed.incrementAndGet();
-                    System.out.println(consumerName + " consumed: " + item + 
-                                     " (Total consumed: " + consumed + ")");
+                if (batchSize > 1) {
+                    consumeInBatches();
+                } else {
+                    consumeOneByOne();
                 }
-                System.out.println(consumerName + " finished consuming.");
+                eventLog.log(EventLog.Event.CONSUMER_FINISHED, consumerName, null, 0, 0);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                System.err.println(consumerName + " was interrupted.");
+                eventLog.log(EventLog.Event.INTERRUPTED, consumerName, null, 0, 0);
+            } finally {
+                // Publish anything this consumer buffered in the sink, and hand back items it held but never took
+                destination.flush();
+                sharedQueue.returnHeld();
+            }
+        }
+        
+        private void consumeOneByOne() throws InterruptedException {
+            while (true) {
+                // Take item from queue (blocks if queue is empty)
+                String item = nextItem();
+                if (item == null) {
+                    logExit();
+                    break;
+                }
+                long busyStart = System.nanoTime();
+                
+                // Check for poison pill to terminate
+                if (poisonPill && POISON_PILL.equals(item)) {
+                    eventLog.log(EventLog.Event.TERMINATION_RECEIVED, consumerName, null, 0, 0);
+                    // Put poison pill back for other consumers
+                    sharedQueue.put(POISON_PILL);
+                    break;
+                }
+                
+                // Per-item work from the workload model
+                process();
+                
+                // Store in destination (thread-safe)
+                destination.add(item);
+                
+                int consumed = itemsConsumed.incrementAndGet();
+                if (metrics != null) {
+                    metrics.recordConsumed(1);
+                }
+                busyNanos += System.nanoTime() - busyStart;
+                eventLog.log(EventLog.Event.CONSUMED, consumerName, item, 0, consumed);
+            }
+        }
+        
+        private void consumeInBatches() throws InterruptedException {
+            List<String> batch = new ArrayList<>(batchSize);
+            boolean terminated = false;
+            while (!terminated) {
+                batch.clear();
+                if (!fillBatch(batch)) {
+                    logExit();
+                    break;
+                }
+                long busyStart = System.nanoTime();
+                
+                // Pull the poison pill out of the batch; items taken alongside it are still processed
+                terminated = poisonPill && batch.removeIf(POISON_PILL::equals);
+                
+                for (int i = 0; i < batch.size(); i++) {
+                    // Per-item work from the workload model
+                    process();
+                }
+                
+                if (!batch.isEmpty()) {
+                    // One sink call for the whole batch
+                    destination.addAll(batch);
+                    int consumed = itemsConsumed.addAndGet(batch.size());
+                    if (metrics != null) {
+                        metrics.recordConsumed(batch.size());
+                    }
+                    eventLog.log(EventLog.Event.BATCH_CONSUMED, consumerName, null, batch.size(), consumed);
+                }
+                busyNanos += System.nanoTime() - busyStart;
+                
+                if (terminated) {
+                    eventLog.log(EventLog.Event.TERMINATION_RECEIVED, consumerName, null, 0, 0);
+                    // Put poison pill back for other consumers
+                    sharedQueue.put(POISON_PILL);
+                }
+            }
+        }
+        
+        // Processes one item, timing it when metrics are attached
+        private void process() throws InterruptedException {
+            if (metrics == null) {
+                workload.process();
+                return;
+            }
+            long start = System.nanoTime();
+            workload.process();
+            metrics.recordProcessing(System.nanoTime() - start);
+        }
+        
+        // Next item from the queue, or null once a stop has been requested or the queue is closed and drained
+        private String nextItem() throws InterruptedException {
+            if (pollIntervalMillis <= 0) {
+                // take() returns null once the queue is closed and drained
+                String item = sharedQueue.take();
+                drained = item == null;
+                return item;
+            }
+            while (!stopRequested) {
+                String item = sharedQueue.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (item != null) {
+                    return item;
+                }
+                if (sharedQueue.isDrained()) {
+                    drained = true;
+                    return null;
+                }
+            }
+            return null;
+        }
+        
+        // Logs why nextItem() returned no item
+        private void logExit() {
+            eventLog.log(drained ? EventLog.Event.QUEUE_DRAINED : EventLog.Event.RETIRED, consumerName, null, 0, 0);
+        }
+        
+        // Blocks for the first item, then drains and lingers until the batch is full or the linger expires;
+        // returns false without filling anything if the consumer was stopped first
+        private boolean fillBatch(List<String> batch) throws InterruptedException {
+            String first = nextItem();
+            if (first == null) {
+                return false;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+            while (batch.size() < batchSize) {
+                if (sharedQueue.drainTo(batch, batchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                String next = sharedQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+            return true;
+        }
+    }
+    
+    // Waits for every submitted worker to finish
+    static void awaitAll(List<Future<?>> tasks) throws InterruptedException {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Worker failed", e.getCause());
             }
         }
     }
@@ -109,77 +507,137 @@ public class ProducerConsumerDemo {
         final int QUEUE_CAPACITY = 5;
         final int NUM_PRODUCERS = 2;
         final int NUM_CONSUMERS = 2;
+        final int MAX_CONSUMERS = 4;
         final int TOTAL_ITEMS = 20;
+        final ItemQueue.Type QUEUE_TYPE = ItemQueue.Type.RING_MPMC;
+        final WaitStrategy WAIT_STRATEGY = WaitStrategy.SPIN_THEN_PARK;
+        final int PRODUCER_BATCH_SIZE = 1;
+        final long PRODUCER_LINGER_MS = 5;
+        final int CONSUMER_BATCH_SIZE = 4;
+        final long CONSUMER_LINGER_MS = 20;
+        final ExecutionMode EXECUTION_MODE = ExecutionMode.PLATFORM;
+        final EventLog.Level LOG_LEVEL = EventLog.Level.DEBUG;
+        final int LOG_SAMPLE_EVERY = 1;
+        final long DRAIN_DEADLINE_MS = 5000;
+        final boolean ORDERED_DELIVERY = false;
+        final boolean SPILL_TO_DISK = false;
+        
+        // Virtual threads need Java 21+; fall back to platform threads on older JDKs
+        ExecutionMode executionMode = EXECUTION_MODE.isSupported() ? EXECUTION_MODE : ExecutionMode.PLATFORM;
         
         System.out.println("=== Producer-Consumer Demo ===");
-        System.out.println("Queue Capacity: " + QUEUE_CAPACITY);
+        System.out.println("Queue Type: " + QUEUE_TYPE);
+        System.out.println("Wait Strategy: " + WAIT_STRATEGY);
         System.out.println("Producers: " + NUM_PRODUCERS);
-        System.out.println("Consumers: " + NUM_CONSUMERS);
+        System.out.println("Consumers: " + NUM_CONSUMERS + " (elastic up to " + MAX_CONSUMERS + ")");
+        System.out.println("Producer Batch Size: " + PRODUCER_BATCH_SIZE + " (linger " + PRODUCER_LINGER_MS + " ms)");
+        System.out.println("Consumer Batch Size: " + CONSUMER_BATCH_SIZE + " (linger " + CONSUMER_LINGER_MS + " ms)");
         System.out.println("Total Items: " + TOTAL_ITEMS);
-        System.out.println("================================\n");
-        
-        // Source container with data
-        List<String> sourceContainer = new ArrayList<>();
-        for (int i = 1; i <= TOTAL_ITEMS; i++) {
-            sourceContainer.add("Item-" + i);
-        }
+        System.out.println("Execution Mode: " + executionMode);
+        System.out.println("Log Level: " + LOG_LEVEL + " (1 in " + LOG_SAMPLE_EVERY + " item events)");
+        System.out.println("Drain Deadline: " + DRAIN_DEADLINE_MS + " ms");
+        System.out.println("Ordered Delivery: " + ORDERED_DELIVERY);
+        System.out.println("Spill To Disk: " + SPILL_TO_DISK);
         
-        // Shared blocking queue with capacity
-        BlockingQueue<String> sharedQueue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        // Source generated on demand; producers claim chunks of it, so a slow producer just claims fewer
+        WorkSource<String> workSource = WorkSource.generate(TOTAL_ITEMS, i -> "Item-" + (i + 1), NUM_PRODUCERS);
         
         // Destination container (thread-safe)
         List<String> destinationContainer = Collections.synchronizedList(new ArrayList<>());
         
+        // Shared bounded queue (lock-free ring buffer by default), instrumented for metrics
+        PipelineMetrics metrics = new PipelineMetrics();
+        ItemQueue<String> sharedQueue;
+        ItemSink<String> destinationSink;
+        if (ORDERED_DELIVERY) {
+            // Items are numbered by source position and committed in that order through a reorder buffer
+            OrderedDelivery<String> ordered = new OrderedDelivery<>(QUEUE_TYPE, QUEUE_CAPACITY,
+                ItemSink.of(destinationContainer), OrderedDelivery.DEFAULT_WINDOW, WAIT_STRATEGY);
+            workSource = ordered.source(workSource);
+            sharedQueue = ordered.queue();
+            destinationSink = ordered.sink();
+        } else if (SPILL_TO_DISK) {
+            // Producers never block: overflow beyond the ring goes to mapped log segments
+            sharedQueue = new SpillingQueue(QUEUE_CAPACITY,
+                Paths.get(System.getProperty("java.io.tmpdir"), "producer-consumer-spill"))
+                .withWaitStrategy(WAIT_STRATEGY);
+            destinationSink = new ThreadLocalBufferSink<>(destinationContainer);
+        } else if (PRODUCER_BATCH_SIZE > 1) {
+            // Each producer batch is one queue entry; consumers unbatch it transparently. The batches
+            // travel through an InstrumentedQueue so handoff and blocking metrics are kept per batch
+            sharedQueue = new BatchedQueue<>(new InstrumentedQueue<List<String>>(QUEUE_TYPE, QUEUE_CAPACITY,
+                WAIT_STRATEGY, metrics));
+            destinationSink = new ThreadLocalBufferSink<>(destinationContainer);
+        } else {
+            sharedQueue = new InstrumentedQueue<>(QUEUE_TYPE, QUEUE_CAPACITY, WAIT_STRATEGY, metrics);
+            // Consumers buffer per thread and merge into the destination when they finish
+            destinationSink = new ThreadLocalBufferSink<>(destinationContainer);
+        }
+        metrics.startQueueDepthSampling(sharedQueue, 10);
+        metrics.registerMBean("demo");
+        // Ring queues round the requested capacity up to a power of two
+        System.out.println("Queue Capacity: " + sharedQueue.capacity() + " (requested " + QUEUE_CAPACITY + ")");
+        System.out.println("================================\n");
+        
         // Atomic counters for tracking
         AtomicInteger totalProduced = new AtomicInteger(0);
         AtomicInteger totalConsumed = new AtomicInteger(0);
         
-        // Create and start producer threads
-        List<Thread> producerThreads = new ArrayList<>();
-        for (int i = 0; i < NUM_PRODUCERS; i++) {
-            // Divide source data among producers
-            int startIdx = i * sourceContainer.size() / NUM_PRODUCERS;
-            int endIdx = (i + 1) * sourceContainer.size() / NUM_PRODUCERS;
-            List<String> producerData = new ArrayList<>(sourceContainer.subList(startIdx, endIdx));
-            
-            Producer producer = new Producer(producerData, sharedQueue, 
-                                           "Producer-" + (i + 1), totalProduced);
-            Thread producerThread = new Thread(producer);
-            producerThreads.add(producerThread);
-            producerThread.start();
-        }
+        // Workers record events into per-thread rings; a background thread prints them
+        EventLog eventLog = EventLog.async(LOG_LEVEL, LOG_SAMPLE_EVERY, 10);
         
-        // Create and start consumer threads
-        List<Thread> consumerThreads = new ArrayList<>();
-        for (int i = 0; i < NUM_CONSUMERS; i++) {
-            Consumer consumer = new Consumer(sharedQueue, destinationContainer, 
-                                           "Consumer-" + (i + 1), totalConsumed);
-            Thread consumerThread = new Thread(consumer);
-            consumerThreads.add(consumerThread);
-            consumerThread.start();
-        }
+        // Workers run through an executor so the thread kind is a configuration choice
+        ExecutorService workers = executionMode.newExecutor("worker");
         
-        // Wait for all producers to complete
-        for (Thread producerThread : producerThreads) {
-            producerThread.join();
+        // Tracks producers and consumers so the queue can be closed and drained instead of sending a pill
+        PipelineCompletion<String> completion = new PipelineCompletion<>(sharedQueue)
+            .withSource(workSource);
+        
+        // Create and start producers
+        for (int i = 0; i < NUM_PRODUCERS; i++) {
+            Producer producer = new Producer(workSource, sharedQueue, 
+                                           "Producer-" + (i + 1), totalProduced)
+                .withBatching(PRODUCER_BATCH_SIZE, PRODUCER_LINGER_MS)
+                .withEventLog(eventLog)
+                .withMetrics(metrics);
+            workers.submit(completion.trackProducer(producer));
         }
         
-        // Send poison pill to signal consumers to terminate
-        System.out.println("\nAll producers finished. Sending termination signal...");
-        sharedQueue.put(POISON_PILL);
+        // Create and start consumers; the pool adds or retires consumers as queue depth changes
+        ElasticConsumerPool consumerPool = new ElasticConsumerPool(sharedQueue, n -> 
+            new Consumer(sharedQueue, destinationSink, "Consumer-" + n, totalConsumed)
+                .withBatching(CONSUMER_BATCH_SIZE, CONSUMER_LINGER_MS)
+                .withEventLog(eventLog)
+                .withMetrics(metrics))
+            .withBounds(NUM_CONSUMERS, MAX_CONSUMERS)
+            .withSampling(50, 3)
+            .withExecutionMode(executionMode)
+            .withCompletion(completion);
+        consumerPool.start();
         
-        // Wait for all consumers to complete
-        for (Thread consumerThread : consumerThreads) {
-            consumerThread.join();
-        }
+        // Wait for all producers to complete, then close the queue to signal consumers
+        completion.awaitProducersAndClose();
+        System.out.println("\nAll producers finished. Queue closed, draining...");
+        
+        // Every consumer exits on its own once the queue is drained; leftovers past the deadline are reported
+        PipelineCompletion.Report<String> drainReport = completion.awaitDrained(DRAIN_DEADLINE_MS, TimeUnit.MILLISECONDS);
+        consumerPool.awaitTermination();
+        workers.shutdown();
+        eventLog.close();
         
         // Display final results
         System.out.println("\n=== Final Results ===");
         System.out.println("Total Items Produced: " + totalProduced.get());
         System.out.println("Total Items Consumed: " + totalConsumed.get());
-        System.out.println("Source Container Size: " + sourceContainer.size());
+        System.out.println("Source Items Claimed: " + workSource.claimedItems());
         System.out.println("Destination Container Size: " + destinationContainer.size());
         System.out.println("Items Match: " + (totalProduced.get() == totalConsumed.get()));
+        System.out.println("Consumers Spawned / Retired: " + consumerPool.spawnedCount() + " / " + consumerPool.retiredCount());
+        System.out.println("\n=== Shutdown ===");
+        System.out.println(drainReport);
+        System.out.println("\n=== Pipeline Metrics ===");
+        System.out.println(metrics.snapshot());
+        metrics.close();
         System.out.println("\nDestination Contents:");
         destinationContainer.forEach(item -> System.out.println("  " + item));
     }
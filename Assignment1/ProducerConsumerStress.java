@@ -0,0 +1,438 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**Concurrency stress harness for Producer, Consumer and the queues (in the spirit of jcstress)
+Runs a tiny producer/consumer scenario many times over: every round gets a fresh queue
+and sink, all threads are released together from a barrier, and random yields are injected
+around each queue operation and item, so rare interleavings of the handoff, the termination
+signal (poison pill or close-and-drain), the destination add and the counters get exercised.
+CLOSE rounds shut down exactly as the demo does, through PipelineCompletion.
+After each round the invariants are checked (no loss, no duplicates, counters match the
+destination, every thread terminated) and the outcome is tallied, along with how the items
+were split between consumers, so the observed interleavings can be compared across queues.
+Run directly with: java ProducerConsumerStress [name=v1,v2 ...]
+  queue=RING_MPMC,LINKED_BLOCKING threads=2x2 items=4 batch=1,4 termination=CLOSE,PILL
+  sink=LIST,BUFFERED rounds=100000 timeoutMillis=2000
+Exits with status 1 if any round broke an invariant.
+*/
+
+public class ProducerConsumerStress {
+
+    // How consumers learn that production is over
+    enum Termination { PILL, CLOSE }
+
+    // Result of one round; anything but OK is an invariant violation
+    enum Outcome { OK, LOST, DUPLICATED, COUNT_MISMATCH, HUNG }
+
+    // One scenario
+    static class Config {
+        final String queueName;
+        final Supplier<ItemQueue<String>> queues;
+        final int producers;
+        final int consumers;
+        final int itemsPerProducer;
+        final int batchSize;
+        final Termination termination;
+        final boolean bufferedSink;
+
+        Config(String queueName, Supplier<ItemQueue<String>> queues, int producers, int consumers,
+               int itemsPerProducer, int batchSize, Termination termination, boolean bufferedSink) {
+            this.queueName = queueName;
+            this.queues = queues;
+            this.producers = producers;
+            this.consumers = consumers;
+            this.itemsPerProducer = itemsPerProducer;
+            this.batchSize = batchSize;
+            this.termination = termination;
+            this.bufferedSink = bufferedSink;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %dx%d items=%d batch=%d %s sink=%s", queueName, producers, consumers,
+                itemsPerProducer, batchSize, termination, bufferedSink ? "BUFFERED" : "LIST");
+        }
+    }
+
+    // Tally of all rounds of one scenario
+    static class Result {
+        final Config config;
+        final Map<Outcome, Long> outcomes = new EnumMap<>(Outcome.class);
+        final Map<String, Long> splits = new HashMap<>();
+        long rounds;
+        long nanos;
+        String firstFailure;
+
+        Result(Config config) {
+            this.config = config;
+        }
+
+        long failures() {
+            return rounds - outcomes.getOrDefault(Outcome.OK, 0L);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%s: %,d rounds in %.1f s (%,.0f rounds/s)%n",
+                config, rounds, nanos / 1e9, rounds / (nanos / 1e9)));
+            for (Map.Entry<Outcome, Long> entry : outcomes.entrySet()) {
+                text.append(String.format("  %-15s %,12d  %6.2f%%%n", entry.getKey(), entry.getValue(),
+                    100.0 * entry.getValue() / rounds));
+            }
+            // Most frequent ways the items were split between consumers
+            List<Map.Entry<String, Long>> observed = new ArrayList<>(splits.entrySet());
+            observed.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+            text.append("  Items per consumer (most frequent):\n");
+            for (Map.Entry<String, Long> entry : observed.subList(0, Math.min(5, observed.size()))) {
+                text.append(String.format("    %-20s %,12d  %6.2f%%%n", entry.getKey(), entry.getValue(),
+                    100.0 * entry.getValue() / rounds));
+            }
+            if (firstFailure != null) {
+                text.append("  First failure: ").append(firstFailure).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("queue", "RING_MPMC,ARRAY_BLOCKING,LINKED_BLOCKING");
+        options.put("threads", "2x2");
+        options.put("items", "4");
+        options.put("batch", "1,4");
+        options.put("termination", "CLOSE,PILL");
+        options.put("sink", "LIST");
+        options.put("rounds", "100000");
+        options.put("timeoutMillis", "2000");
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2 || !options.containsKey(pair[0])) {
+                throw new IllegalArgumentException("Unknown option: " + arg + " (expected one of " + options.keySet() + ")");
+            }
+            options.put(pair[0], pair[1]);
+        }
+        int rounds = Integer.parseInt(options.get("rounds"));
+        long timeoutMillis = Long.parseLong(options.get("timeoutMillis"));
+
+        System.out.println("=== Producer-Consumer Stress ===");
+        System.out.println("Rounds per scenario: " + rounds);
+        System.out.println("================================\n");
+        long failures = 0;
+        for (Config config : scenarios(options)) {
+            Result result = run(config, rounds, timeoutMillis);
+            System.out.println(result);
+            failures += result.failures();
+        }
+        System.out.println(failures == 0 ? "All invariants held." : failures + " rounds broke an invariant.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Cartesian product of the options, skipping queue/thread combinations the queue does not support
+    static List<Config> scenarios(Map<String, String> options) {
+        List<Config> configs = new ArrayList<>();
+        int items = Integer.parseInt(options.get("items"));
+        for (String queue : options.get("queue").split(",")) {
+            ItemQueue.Type type = ItemQueue.Type.valueOf(queue.trim());
+            for (String threads : options.get("threads").split(",")) {
+                String[] counts = threads.split("x");
+                int producers = Integer.parseInt(counts[0].trim());
+                int consumers = Integer.parseInt(counts[1].trim());
+                if (type == ItemQueue.Type.RING_SPSC && (producers > 1 || consumers > 1)
+                        || type == ItemQueue.Type.RING_MPSC && consumers > 1) {
+                    continue;
+                }
+                for (String batch : options.get("batch").split(",")) {
+                    for (String termination : options.get("termination").split(",")) {
+                        for (String sink : options.get("sink").split(",")) {
+                            // Capacity 2 keeps producers and consumers meeting at both the full and empty edges
+                            configs.add(new Config(type.name(), () -> type.create(2), producers, consumers, items,
+                                Integer.parseInt(batch.trim()), Termination.valueOf(termination.trim()),
+                                sink.trim().equals("BUFFERED")));
+                        }
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    // Runs rounds of config on one reused thread per producer and consumer
+    static Result run(Config config, int rounds, long timeoutMillis) throws InterruptedException {
+        Result result = new Result(config);
+        ExecutorService pool = Executors.newFixedThreadPool(threadsPerRound(config));
+        long start = System.nanoTime();
+        try {
+            for (int round = 0; round < rounds; round++) {
+                Outcome outcome = runRound(config, pool, timeoutMillis, result);
+                result.outcomes.merge(outcome, 1L, Long::sum);
+                result.rounds++;
+                if (outcome == Outcome.HUNG) {
+                    // Threads may still be stuck; a fresh pool keeps later rounds independent
+                    pool.shutdownNow();
+                    pool = Executors.newFixedThreadPool(threadsPerRound(config));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    // One thread per producer and consumer, plus the closer in CLOSE rounds
+    private static int threadsPerRound(Config config) {
+        return config.producers + config.consumers + (config.termination == Termination.CLOSE ? 1 : 0);
+    }
+
+    private static Outcome runRound(Config config, ExecutorService pool, long timeoutMillis, Result result)
+            throws InterruptedException {
+        ItemQueue<String> queue = new ChaosQueue<>(config.queues.get());
+        List<String> destination = Collections.synchronizedList(new ArrayList<>());
+        ItemSink<String> sink = config.bufferedSink ? new ThreadLocalBufferSink<>(destination) : ItemSink.of(destination);
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger producersLeft = new AtomicInteger(config.producers);
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        int[] perConsumer = new int[config.consumers];
+        CyclicBarrier startTogether = new CyclicBarrier(config.producers + config.consumers);
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int p = 0; p < config.producers; p++) {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < config.itemsPerProducer; i++) {
+                items.add("P" + p + "-" + i);
+            }
+            expected.addAll(items);
+            Runnable producer = new ProducerConsumerDemo.Producer(items, queue, "P" + p, produced)
+                .withWorkload(ProducerConsumerStress::perturb)
+                .withEventLog(silent);
+            Runnable tracked = config.termination == Termination.CLOSE ? completion.trackProducer(producer) : producer;
+            tasks.add(() -> {
+                startTogether.await();
+                tracked.run();
+                // With PILL the last producer out sends the pill; with CLOSE the closer below closes the queue
+                if (config.termination == Termination.PILL && producersLeft.decrementAndGet() == 0) {
+                    queue.put(ProducerConsumerDemo.POISON_PILL);
+                }
+                return null;
+            });
+        }
+        if (config.termination == Termination.CLOSE) {
+            tasks.add(() -> {
+                completion.awaitProducersAndClose();
+                return null;
+            });
+        }
+        for (int c = 0; c < config.consumers; c++) {
+            int index = c;
+            ItemSink<String> counting = new ItemSink<String>() {
+                @Override
+                public void add(String item) {
+                    perConsumer[index]++;
+                    sink.add(item);
+                }
+
+                @Override
+                public void flush() {
+                    sink.flush();
+                }
+
+                @Override
+                public void flushAll() {
+                    sink.flushAll();
+                }
+
+                @Override
+                public int size() {
+                    return sink.size();
+                }
+            };
+            ProducerConsumerDemo.Consumer consumer = new ProducerConsumerDemo.Consumer(queue, counting, "C" + c, consumed)
+                .withBatching(config.batchSize, 0)
+                .withWorkload(ProducerConsumerStress::perturb)
+                .withEventLog(silent);
+            Runnable tracked = config.termination == Termination.CLOSE
+                ? completion.trackConsumer(consumer) : consumer.withPoisonPill();
+            tasks.add(() -> {
+                startTogether.await();
+                tracked.run();
+                return null;
+            });
+        }
+
+        List<Future<Void>> futures = pool.invokeAll(tasks, timeoutMillis, TimeUnit.MILLISECONDS);
+        for (Future<Void> future : futures) {
+            if (future.isCancelled()) {
+                recordFailure(result, "hung with " + destination.size() + " of " + expected.size() + " items delivered");
+                return Outcome.HUNG;
+            }
+        }
+
+        StringBuilder split = new StringBuilder();
+        for (int count : perConsumer) {
+            split.append(split.length() == 0 ? "" : "/").append(count);
+        }
+        result.splits.merge(split.toString(), 1L, Long::sum);
+
+        List<String> received = new ArrayList<>(destination);
+        HashSet<String> distinct = new HashSet<>(received);
+        if (!distinct.containsAll(expected)) {
+            HashSet<String> missing = new HashSet<>(expected);
+            missing.removeAll(distinct);
+            recordFailure(result, "lost " + missing);
+            return Outcome.LOST;
+        }
+        if (received.size() != expected.size()) {
+            recordFailure(result, "received " + received.size() + " items for " + expected.size() + ": " + received);
+            return Outcome.DUPLICATED;
+        }
+        if (produced.get() != expected.size() || consumed.get() != received.size()) {
+            recordFailure(result, "counters produced=" + produced.get() + " consumed=" + consumed.get()
+                + " for " + received.size() + " delivered");
+            return Outcome.COUNT_MISMATCH;
+        }
+        return Outcome.OK;
+    }
+
+    private static void recordFailure(Result result, String description) {
+        if (result.firstFailure == null) {
+            result.firstFailure = "round " + result.rounds + ": " + description;
+        }
+    }
+
+    // Randomly gives up the core or spins once, to shake out different interleavings
+    static void perturb() {
+        switch (ThreadLocalRandom.current().nextInt(4)) {
+            case 0:
+                Thread.yield();
+                break;
+            case 1:
+                Thread.onSpinWait();
+                break;
+            default:
+                break;
+        }
+    }
+
+    //ItemQueue wrapper that perturbs the schedule before and after every queue operation and forwards
+    //every ItemQueue method, so the wrapped queue's own drainTo, putBatch and isDrained are the ones exercised
+    static final class ChaosQueue<T> implements ItemQueue<T> {
+        private final ItemQueue<T> delegate;
+
+        ChaosQueue(ItemQueue<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void put(T item) throws InterruptedException {
+            perturb();
+            delegate.put(item);
+            perturb();
+        }
+
+        @Override
+        public boolean offer(T item) {
+            perturb();
+            boolean offered = delegate.offer(item);
+            perturb();
+            return offered;
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            perturb();
+            T item = delegate.take();
+            perturb();
+            return item;
+        }
+
+        @Override
+        public T poll() {
+            perturb();
+            T item = delegate.poll();
+            perturb();
+            return item;
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            perturb();
+            T item = delegate.poll(timeout, unit);
+            perturb();
+            return item;
+        }
+
+        @Override
+        public void putBatch(List<T> items) throws InterruptedException {
+            perturb();
+            delegate.putBatch(items);
+            perturb();
+        }
+
+        @Override
+        public void returnHeld() {
+            perturb();
+            delegate.returnHeld();
+            perturb();
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> target, int maxItems) {
+            perturb();
+            int drained = delegate.drainTo(target, maxItems);
+            perturb();
+            return drained;
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int capacity() {
+            return delegate.capacity();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return delegate.isEmpty();
+        }
+
+        @Override
+        public void close() {
+            perturb();
+            delegate.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return delegate.isClosed();
+        }
+
+        @Override
+        public boolean isDrained() {
+            perturb();
+            return delegate.isDrained();
+        }
+    }
+}
@@ -1,11 +1,34 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 /**
  Tests: Thread synchronization, concurrent programming, blocking queues,
@@ -67,6 +90,37 @@ public class ProducerConsumerTest {
         runTest("Shared destination container is thread-safe", () -> testThreadSafetyOfDestination());
         runTest("Threads handle interruption gracefully", () -> testThreadInterruption());
         runTest("Atomic counters maintain accuracy under concurrent access", () -> testAtomicCounterAccuracy());
+        runTest("Ring buffer queue is bounded and FIFO", () -> testRingBufferCapacityAndOrder());
+        runTest("Ring buffer queue delivers every item across producers and consumers", () -> testRingBufferMultipleProducersAndConsumers());
+        runTest("Batching consumer drains items and honours the termination signal", () -> testBatchingConsumer());
+        runTest("Producers and consumers run through an execution mode executor", () -> testExecutionModeExecutor());
+        runTest("Thread-local buffer sink merges every consumer's items", () -> testThreadLocalBufferSink());
+        runTest("Chunked append list keeps every concurrent append", () -> testChunkedAppendList());
+        runTest("Async event log honours level and sampling", () -> testAsyncEventLog());
+        runTest("Latency histogram reports accurate percentiles", () -> testLatencyHistogram());
+        runTest("Instrumented queue records handoff latency and blocking", () -> testInstrumentedQueueMetrics());
+        runTest("Targeted stop retires one consumer without a poison pill", () -> testTargetedConsumerStop());
+        runTest("Elastic consumer pool grows under backlog and shrinks when idle", () -> testElasticConsumerPool());
+        runTest("Closed queue lets every consumer exit in parallel once drained", () -> testCloseAndDrainCompletion());
+        runTest("Drain deadline reports undelivered items", () -> testDrainDeadlineReport());
+        runTest("Work-stealing queue rebalances skewed consumers", () -> testWorkStealingQueue());
+        runTest("Multi-stage pipeline fuses stateless stages and finds the bottleneck", () -> testMultiStagePipeline());
+        runTest("Ordered delivery commits parallel consumers' output in source order", () -> testOrderedDelivery());
+        runTest("Spilling queue overflows to disk in FIFO order and recovers unread items", () -> testSpillingQueue());
+        runTest("Shared-memory queue hands items between mappings and JVMs", () -> testSharedMemoryQueue());
+        runTest("Partitioned routing keeps each key on one consumer", () -> testKeyPartitionedRouting());
+        runTest("Every wait strategy delivers all items and honours interrupts", () -> testWaitStrategies());
+        runTest("Producers claim chunks from a shared source and finish together", () -> testWorkSourceChunkClaiming());
+        runTest("Priority lanes serve urgent items ahead of bulk backlog", () -> testPriorityLanes());
+        runTest("Flow adapters honour request(n) demand end to end", () -> testFlowAdapters());
+        runTest("Micro-batching producers publish one queue entry per batch", () -> testProducerMicroBatching());
+        runTest("Workload models and open-loop load with corrected latency", () -> testWorkloadModelsAndOpenLoopLoad());
+        runTest("File sink group-commits consumed items", () -> testFileSinkGroupCommit());
+        runTest("Stress harness checks invariants over many interleavings", () -> testStressHarness());
+        runTest("Ring buffer requested at capacity 1 never overwrites an item", () -> testSingleSlotRingBuffer());
+        runTest("Completion tracks more workers than a phaser allows and wakes take() consumers", () -> testCompletionAtScale());
+        runTest("Pipeline survives and reports a throwing stage", () -> testPipelineStageFailure());
+        runTest("Partitioned router reports undelivered items on a drain timeout", () -> testPartitionedDrainTimeout());
         
         // Print summary
         System.out.println("\n========================================");
@@ -352,4 +406,2056 @@ public class ProducerConsumerTest {
                     50, produced.get());
         assertEquals("Consumer should consume all 50 items", 50, consumed.get());
     }
+    
+    /**
+     * Test 9: Verify ring buffer capacity and ordering
+     * Tests: Lock-free bounded queue, FIFO semantics
+     */
+    public static void testRingBufferCapacityAndOrder() throws InterruptedException {
+        ItemQueue<String> ring = RingBufferQueue.mpmc(3);
+        
+        assertEquals("Capacity should round up to a power of two", 4, ring.capacity());
+        assertEquals("A single-slot ring should be widened to two slots", 2, RingBufferQueue.mpmc(1).capacity());
+        for (int i = 1; i <= 4; i++) {
+            assertTrue("Should accept item " + i, ring.offer("Item-" + i));
+        }
+        assertFalse("Should reject item when full", ring.offer("Item-5"));
+        assertEquals("Queue size should be 4", 4, ring.size());
+        
+        assertEquals("Should return items in FIFO order", "Item-1", ring.take());
+        assertTrue("Should accept item after space available", ring.offer("Item-5"));
+        for (int i = 2; i <= 5; i++) {
+            assertEquals("Should return items in FIFO order", "Item-" + i, ring.poll());
+        }
+        assertTrue("Empty queue should time out", ring.poll(50, TimeUnit.MILLISECONDS) == null);
+    }
+    
+    /**
+     * Test 10: Verify ring buffer under multiple producers and consumers
+     * Tests: CAS-based sequence claiming, no loss or duplication
+     */
+    public static void testRingBufferMultipleProducersAndConsumers() throws InterruptedException {
+        List<String> source1 = new ArrayList<>();
+        List<String> source2 = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            source1.add("P1-Item-" + i);
+            source2.add("P2-Item-" + i);
+        }
+        
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(4);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        
+        Thread p1 = new Thread(new ProducerConsumerDemo.Producer(source1, queue, "P1", produced));
+        Thread p2 = new Thread(new ProducerConsumerDemo.Producer(source2, queue, "P2", produced));
+        Thread c1 = new Thread(new ProducerConsumerDemo.Consumer(queue, dest, "C1", consumed));
+        Thread c2 = new Thread(new ProducerConsumerDemo.Consumer(queue, dest, "C2", consumed));
+        
+        c1.start();
+        c2.start();
+        p1.start();
+        p2.start();
+        
+        p1.join(15000);
+        p2.join(15000);
+        queue.close();
+        c1.join(15000);
+        c2.join(15000);
+        
+        List<String> expected = new ArrayList<>(source1);
+        expected.addAll(source2);
+        Collections.sort(expected);
+        List<String> actual = new ArrayList<>(dest);
+        Collections.sort(actual);
+        
+        assertEquals("Should consume 20 items", 20, consumed.get());
+        assertEquals("Destination should match source exactly", expected, actual);
+    }
+    
+    /**
+     * Test 11: Verify batch-drain consumer mode
+     * Tests: drainTo batching, poison pill handling inside a batch
+     */
+    public static void testBatchingConsumer() throws InterruptedException {
+        BlockingQueue<String> sharedQueue = new LinkedBlockingQueue<>(20);
+        List<String> destinationContainer = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger itemsConsumed = new AtomicInteger(0);
+        
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            expected.add("Item-" + i);
+            sharedQueue.put("Item-" + i);
+        }
+        sharedQueue.put(ProducerConsumerDemo.POISON_PILL);
+        
+        ProducerConsumerDemo.Consumer consumer = 
+            new ProducerConsumerDemo.Consumer(sharedQueue, destinationContainer, 
+                                             "BatchConsumer", itemsConsumed)
+                .withBatching(4, 10);
+        
+        Thread consumerThread = new Thread(consumer);
+        consumerThread.start();
+        consumerThread.join(10000);
+        
+        assertFalse("Consumer should terminate on poison pill", consumerThread.isAlive());
+        assertEquals("Should consume all 10 items", 10, itemsConsumed.get());
+        assertEquals("Single consumer should preserve queue order", expected, destinationContainer);
+        assertEquals("Poison pill should be put back for other consumers", 
+                    ProducerConsumerDemo.POISON_PILL, sharedQueue.poll());
+    }
+    
+    /**
+     * Test 12: Verify workers run on an ExecutionMode executor
+     * Tests: Executor-based scheduling, virtual thread availability detection
+     */
+    public static void testExecutionModeExecutor() throws InterruptedException {
+        int javaVersion = Runtime.version().feature();
+        assertEquals("Virtual threads should be reported as supported only on Java 21+", 
+                    javaVersion >= 21, ExecutionMode.VIRTUAL.isSupported());
+        
+        ExecutionMode mode = ExecutionMode.VIRTUAL.isSupported() ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM;
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(8);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        
+        ExecutorService workers = mode.newExecutor("test-worker");
+        List<Future<?>> producers = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            producers.add(workers.submit(new ProducerConsumerDemo.Producer(
+                Arrays.asList("P" + i + "-Item-1", "P" + i + "-Item-2"), queue, "P" + i, produced)
+                .withSimulatedDelay(0, 5)));
+        }
+        Future<?> consumer = workers.submit(new ProducerConsumerDemo.Consumer(queue, dest, "C1", consumed)
+            .withSimulatedDelay(0, 0));
+        
+        ProducerConsumerDemo.awaitAll(producers);
+        queue.close();
+        ProducerConsumerDemo.awaitAll(Collections.singletonList(consumer));
+        workers.shutdown();
+        
+        assertEquals("Should produce 40 items", 40, produced.get());
+        assertEquals("Should consume 40 items", 40, consumed.get());
+        assertEquals("Destination should have 40 items", 40, dest.size());
+    }
+    
+    /**
+     * Test 13: Verify per-consumer buffered sink
+     * Tests: Thread-local buffering, merge on completion
+     */
+    public static void testThreadLocalBufferSink() throws InterruptedException {
+        List<String> source1 = new ArrayList<>();
+        List<String> source2 = new ArrayList<>();
+        for (int i = 1; i <= 15; i++) {
+            source1.add("P1-Item-" + i);
+            source2.add("P2-Item-" + i);
+        }
+        
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(8);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocalBufferSink<String> sink = new ThreadLocalBufferSink<>(dest);
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(new ProducerConsumerDemo.Producer(source1, queue, "P1", produced)
+            .withSimulatedDelay(0, 5)));
+        threads.add(new Thread(new ProducerConsumerDemo.Producer(source2, queue, "P2", produced)
+            .withSimulatedDelay(0, 5)));
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            consumers.add(new Thread(new ProducerConsumerDemo.Consumer(queue, sink, "C" + i, consumed)
+                .withSimulatedDelay(0, 5)));
+        }
+        consumers.forEach(Thread::start);
+        threads.forEach(Thread::start);
+        for (Thread producer : threads) {
+            producer.join(15000);
+        }
+        queue.close();
+        for (Thread consumer : consumers) {
+            consumer.join(15000);
+        }
+        
+        List<String> expected = new ArrayList<>(source1);
+        expected.addAll(source2);
+        Collections.sort(expected);
+        List<String> actual = new ArrayList<>(dest);
+        Collections.sort(actual);
+        
+        assertEquals("Sink size should count all items", 30, sink.size());
+        assertEquals("Destination should hold every item after consumers flush", expected, actual);
+        assertEquals("Flushed consumers should leave no buffers registered", 0, sink.bufferCount());
+        
+        // Pooled threads add and flush repeatedly; buffers must not pile up across tasks
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final int task = i;
+            tasks.add(pool.submit(() -> {
+                sink.add("Task-" + task);
+                sink.flush();
+            }));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new AssertionError("Pooled sink task failed", e);
+            }
+        }
+        pool.shutdown();
+        assertEquals("Pooled tasks should leave no buffers registered", 0, sink.bufferCount());
+        assertEquals("Every pooled add should be counted", 230, sink.size());
+        assertEquals("Every pooled add should reach the destination", 230, dest.size());
+    }
+    
+    /**
+     * Test 14: Verify concurrent append-only chunked list
+     * Tests: Lock-free appends across chunk boundaries, live reads racing the writers
+     */
+    public static void testChunkedAppendList() throws InterruptedException {
+        ChunkedAppendList<String> list = new ChunkedAppendList<>();
+        int writers = 4;
+        int perWriter = 5000;
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    list.add("W" + writer + "-Item-" + i);
+                }
+            }));
+        }
+        
+        // A reader walks the list while the writers append: it must only see fully written items,
+        // never the same item twice, and each writer's items in the order that writer added them
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger snapshots = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (list.size() < writers * perWriter || snapshots.get() == 0) {
+                int[] lastSeen = new int[writers];
+                Arrays.fill(lastSeen, -1);
+                HashSet<String> seen = new HashSet<>();
+                for (String item : list.snapshot()) {
+                    int dash = item.indexOf("-Item-");
+                    int writer = Integer.parseInt(item.substring(1, dash));
+                    int index = Integer.parseInt(item.substring(dash + 6));
+                    if (!seen.add(item) || index <= lastSeen[writer]) {
+                        violations.add(item);
+                    }
+                    lastSeen[writer] = index;
+                }
+                snapshots.incrementAndGet();
+            }
+        });
+        reader.start();
+        threads.forEach(Thread::start);
+        
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        reader.join(10000);
+        assertTrue("Reader should have taken snapshots", snapshots.get() > 0);
+        assertEquals("Live reads should only see complete, unique, per-writer ordered items", 
+                    Collections.emptyList(), violations);
+        
+        List<String> items = list.snapshot();
+        assertEquals("Size should count every append", writers * perWriter, list.size());
+        assertEquals("No appends should be lost or duplicated", writers * perWriter, 
+                    new HashSet<>(items).size());
+    }
+    
+    /**
+     * Test 15: Verify asynchronous event logging
+     * Tests: Per-thread event rings, background flushing, level filtering, 1-in-N sampling,
+     * lazily grown rings, unregistering rings of finished threads
+     */
+    public static void testAsyncEventLog() throws InterruptedException {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(captured, true);
+        
+        EventLog sampled = EventLog.async(EventLog.Level.DEBUG, 10, 5, 1024, out, out);
+        Thread worker = new Thread(() -> {
+            for (int i = 1; i <= 100; i++) {
+                sampled.log(EventLog.Event.PRODUCED, "P1", "Item-" + i, 0, i);
+            }
+            sampled.log(EventLog.Event.PRODUCER_FINISHED, "P1", null, 0, 0);
+        });
+        worker.start();
+        worker.join(5000);
+        sampled.close();
+        
+        String[] lines = captured.toString().trim().split("\\R");
+        assertEquals("Should keep 1 in 10 item events plus the lifecycle event", 11, lines.length);
+        assertTrue("First sampled event should be formatted", 
+                  lines[0].endsWith("P1 produced: Item-1 (Total produced: 1)"));
+        assertTrue("Lifecycle events should never be sampled", 
+                  lines[10].endsWith("P1 finished producing."));
+        
+        captured.reset();
+        EventLog infoOnly = EventLog.async(EventLog.Level.INFO, 1, 5, 1024, out, out);
+        infoOnly.log(EventLog.Event.CONSUMED, "C1", "Item-1", 0, 1);
+        infoOnly.log(EventLog.Event.CONSUMER_FINISHED, "C1", null, 0, 0);
+        infoOnly.close();
+        
+        assertFalse("INFO level should drop per-item events", captured.toString().contains("consumed: Item-1"));
+        assertTrue("INFO level should keep lifecycle events", captured.toString().contains("C1 finished consuming."));
+        
+        // Rings start small: many threads logging a single event each must not reserve the full capacity
+        captured.reset();
+        EventLog lazy = EventLog.async(EventLog.Level.DEBUG, 1, 60_000, 4096, out, out);
+        List<Thread> loggers = new ArrayList<>();
+        for (int t = 0; t < 50; t++) {
+            Thread logger = new Thread(() -> lazy.log(EventLog.Event.CONSUMED, "C", "Item", 0, 1));
+            logger.start();
+            loggers.add(logger);
+        }
+        for (Thread logger : loggers) {
+            logger.join(5000);
+        }
+        long slots = lazy.allocatedSlots();
+        lazy.close();
+        assertTrue("Each ring should start at the initial size, not 4096 events: " + slots,
+                  slots <= 50L * EventLog.INITIAL_RING_CAPACITY);
+        assertEquals("Every thread's event should be flushed", 50, captured.toString().trim().split("\\R").length);
+        assertEquals("Rings of dead threads should be unregistered", 0L, lazy.allocatedSlots());
+        
+        // A burst grows the ring up to its capacity in order, and only the overflow beyond it is dropped
+        captured.reset();
+        EventLog burst = EventLog.async(EventLog.Level.DEBUG, 1, 60_000, 64, out, out);
+        Thread burster = new Thread(() -> {
+            for (int i = 1; i <= 500; i++) {
+                burst.log(EventLog.Event.PRODUCED, "P1", "Item-" + i, 0, i);
+            }
+        });
+        burster.start();
+        burster.join(5000);
+        burst.close();
+        
+        List<String> burstLines = new ArrayList<>();
+        for (String line : captured.toString().trim().split("\\R")) {
+            if (line.contains("produced:")) {
+                burstLines.add(line);
+            }
+        }
+        assertTrue("Overflow beyond the grown capacity should be dropped", burst.droppedEvents() > 0);
+        assertEquals("Every event is either flushed or counted as dropped", 500L, burstLines.size() + burst.droppedEvents());
+        // The ring cannot be full before 64 writes, so the first 64 events are never dropped
+        for (int i = 1; i <= 64; i++) {
+            assertTrue("Events written before and after growth should stay in order: " + burstLines.get(i - 1),
+                      burstLines.get(i - 1).endsWith("Item-" + i + " (Total produced: " + i + ")"));
+        }
+    }
+    
+    /**
+     * Test 16: Verify latency histogram percentiles
+     * Tests: Log-linear bucketing precision, percentile lookup
+     */
+    public static void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1000);
+        }
+        
+        assertEquals("Should count every value", 10_000L, histogram.count());
+        assertEquals("Max should be exact", 10_000_000L, histogram.max());
+        assertWithin("p50 should be within 3.2% of 5ms", 5_000_000, histogram.percentile(50), 0.032);
+        assertWithin("p99 should be within 3.2% of 9.9ms", 9_900_000, histogram.percentile(99), 0.032);
+        assertWithin("p999 should be within 3.2% of 9.99ms", 9_990_000, histogram.percentile(99.9), 0.032);
+        
+        histogram.reset();
+        assertEquals("Reset should clear the count", 0L, histogram.count());
+        assertEquals("Empty histogram percentile should be 0", 0L, histogram.percentile(99));
+    }
+    
+    /**
+     * Test 17: Verify pipeline metrics from an instrumented queue
+     * Tests: Handoff latency, producer blocked-on-full time, consumer blocked-on-empty time
+     */
+    public static void testInstrumentedQueueMetrics() throws InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ItemQueue<String> queue = new InstrumentedQueue<>(ItemQueue.Type.RING_MPMC, 2, metrics);
+        
+        queue.put("Item-0");
+        queue.put("Item-1");
+        Thread blockedProducer = new Thread(() -> {
+            try {
+                queue.put("Item-2");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blockedProducer.start();
+        Thread.sleep(100);
+        
+        assertEquals("Should hand over the first item", "Item-0", queue.take());
+        assertEquals("Should hand over the next item", "Item-1", queue.take());
+        blockedProducer.join(5000);
+        assertEquals("Should hand over the second item", "Item-2", queue.take());
+        
+        Thread lateProducer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                queue.put("Item-3");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        lateProducer.start();
+        assertEquals("Should wait for the third item", "Item-3", queue.take());
+        lateProducer.join(5000);
+        
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals("Should record one handoff per item", 4L, metrics.handoffLatency().count());
+        assertTrue("First item waited at least 100ms in the queue", 
+                  metrics.handoffLatency().max() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue("Producer should have been blocked on a full queue", 
+                  snapshot.producerBlockedNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue("Consumer should have been blocked on an empty queue", 
+                  snapshot.consumerBlockedNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.close();
+    }
+    
+    private static void assertWithin(String message, long expected, long actual, double tolerance) {
+        if (Math.abs(actual - expected) > expected * tolerance) {
+            throw new AssertionError(message + " - Expected: " + expected + ", but got: " + actual);
+        }
+    }
+    
+    /**
+     * Test 18: Verify per-consumer stop signal
+     * Tests: Targeted shutdown, other consumers unaffected
+     */
+    public static void testTargetedConsumerStop() throws InterruptedException {
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(8);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger consumed = new AtomicInteger(0);
+        
+        ProducerConsumerDemo.Consumer retiring = new ProducerConsumerDemo.Consumer(queue, dest, "C1", consumed)
+            .withSimulatedDelay(0, 0)
+            .withPollInterval(10);
+        ProducerConsumerDemo.Consumer remaining = new ProducerConsumerDemo.Consumer(queue, dest, "C2", consumed)
+            .withSimulatedDelay(0, 0)
+            .withPollInterval(10);
+        Thread c1 = new Thread(retiring);
+        Thread c2 = new Thread(remaining);
+        c1.start();
+        c2.start();
+        
+        retiring.requestStop();
+        c1.join(5000);
+        assertFalse("Stopped consumer should exit while the queue is empty", c1.isAlive());
+        assertTrue("Other consumer should keep running", c2.isAlive());
+        
+        queue.put("Item-1");
+        queue.close();
+        c2.join(5000);
+        assertFalse("Remaining consumer should exit once the queue is closed and drained", c2.isAlive());
+        assertEquals("Remaining consumer should take the item", Arrays.asList("Item-1"), dest);
+    }
+    
+    /**
+     * Test 19: Verify elastic scaling of the consumer pool
+     * Tests: Spawning on sustained backlog, retiring idle consumers, no item loss
+     */
+    public static void testElasticConsumerPool() throws InterruptedException {
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(16);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        EventLog quiet = EventLog.direct(EventLog.Level.INFO);
+        
+        ElasticConsumerPool pool = new ElasticConsumerPool(queue, n -> 
+            new ProducerConsumerDemo.Consumer(queue, dest, "Elastic-" + n, consumed)
+                .withSimulatedDelay(20, 30)
+                .withEventLog(quiet))
+            .withBounds(1, 3)
+            .withSampling(10, 2);
+        pool.start();
+        
+        List<String> source = new ArrayList<>();
+        for (int i = 1; i <= 60; i++) {
+            source.add("Item-" + i);
+        }
+        Thread producer = new Thread(new ProducerConsumerDemo.Producer(source, queue, "P1", produced)
+            .withSimulatedDelay(0, 0)
+            .withEventLog(quiet));
+        producer.start();
+        producer.join(10000);
+        
+        long deadline = System.currentTimeMillis() + 10000;
+        while (consumed.get() < 60 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Give the supervisor a few idle samples to scale back down
+        Thread.sleep(300);
+        int spawned = pool.spawnedCount();
+        int retired = pool.retiredCount();
+        int active = pool.activeConsumers();
+        
+        queue.close();
+        pool.awaitTermination();
+        
+        assertTrue("Pool should have spawned extra consumers under backlog", spawned > 1);
+        assertTrue("Pool should have retired idle consumers", retired >= 1);
+        assertEquals("Pool should shrink back to its minimum", 1, active);
+        assertEquals("No items should be lost while scaling", 60, consumed.get());
+        assertEquals("Destination should have 60 items", 60, dest.size());        
+        // Once the pipeline is closed the pool refuses to grow, however deep the backlog
+        ItemQueue<String> backlog = ItemQueue.Type.RING_MPMC.create(4);
+        PipelineCompletion<String> closing = new PipelineCompletion<>(backlog);
+        for (int i = 1; i <= 4; i++) {
+            backlog.put("Late-" + i);
+        }
+        closing.awaitProducersAndClose();
+        ElasticConsumerPool late = new ElasticConsumerPool(backlog, n -> 
+            new ProducerConsumerDemo.Consumer(backlog, dest, "Late-" + n, new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withEventLog(quiet))
+            .withBounds(1, 3)
+            .withSampling(60000, 1)
+            .withCompletion(closing);
+        late.start();
+        for (int i = 0; i < 5; i++) {
+            late.sample();
+        }
+        assertEquals("No consumer should start after close", 0, late.spawnedCount());
+        assertTrue("Completion should refuse a late consumer", closing.tryTrackConsumer(() -> { }) == null);
+        late.awaitTermination();
+    }
+    
+    /**
+     * Test 20: Verify the close-and-drain completion protocol
+     * Tests: Consumers exit without a poison pill, all items delivered, closed queues reject puts
+     */
+    public static void testCloseAndDrainCompletion() throws InterruptedException {
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(32);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        ExecutorService executor = ExecutionMode.PLATFORM.newExecutor("completion-test");
+        
+        for (int i = 0; i < 2; i++) {
+            List<String> source = new ArrayList<>();
+            for (int j = 1; j <= 200; j++) {
+                source.add("P" + i + "-Item-" + j);
+            }
+            executor.submit(completion.trackProducer(
+                new ProducerConsumerDemo.Producer(source, queue, "P" + i, produced)
+                    .withSimulatedDelay(0, 0)
+                    .withEventLog(silent)));
+        }
+        for (int i = 0; i < 16; i++) {
+            executor.submit(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(queue, dest, "C" + i, consumed)
+                    .withBatching(i % 2 == 0 ? 1 : 8, 0)
+                    .withSimulatedDelay(0, 0)
+                    .withPollInterval(10)
+                    .withEventLog(silent)));
+        }
+        
+        completion.awaitProducersAndClose();
+        PipelineCompletion.Report<String> report = completion.awaitDrained(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        
+        assertTrue("Queue should be closed", queue.isClosed());
+        assertTrue("Consumers should drain before the deadline", report.drainedInTime);
+        assertEquals("Nothing should be left undelivered", 0, report.undelivered.size());
+        assertEquals("All items should be consumed", 400, consumed.get());
+        assertEquals("Destination should have 400 items", 400, dest.size());
+        assertFalse("No poison pill should reach the destination", dest.contains(ProducerConsumerDemo.POISON_PILL));
+        assertTrue("All consumers should exit", executor.awaitTermination(1, TimeUnit.SECONDS));
+        
+        boolean rejected = false;
+        try {
+            queue.put("late");
+        } catch (IllegalStateException e) {
+            rejected = true;
+        }
+        assertTrue("Closed ring buffer should reject puts", rejected);
+        
+        ItemQueue<String> blocking = ItemQueue.of(new LinkedBlockingQueue<>(4));
+        blocking.put("Item-1");
+        blocking.close();
+        assertFalse("Closed queue with items should not be drained", blocking.isDrained());
+        assertEquals("Queued items survive close", "Item-1", blocking.poll());
+        assertTrue("Closed, empty queue should be drained", blocking.isDrained());
+        
+        // A taker parked on an empty queue wakes on close and gets null instead of waiting forever
+        List<ItemQueue<String>> waitedOn = new ArrayList<>();
+        waitedOn.add(ItemQueue.Type.LINKED_BLOCKING.create(4));
+        waitedOn.add(ItemQueue.Type.RING_MPMC.create(4, WaitStrategy.TIMED_PARK));
+        waitedOn.add(new PriorityLaneQueue<String>(2, 4, item -> 0).withWaitStrategy(WaitStrategy.TIMED_PARK));
+        for (ItemQueue<String> empty : waitedOn) {
+            AtomicReference<String> taken = new AtomicReference<>("none");
+            Thread taker = new Thread(() -> {
+                try {
+                    taken.set(empty.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            taker.start();
+            Thread.sleep(50);
+            empty.close();
+            taker.join(5000);
+            assertFalse(empty.getClass().getSimpleName() + " taker should wake on close", taker.isAlive());
+            assertTrue(empty.getClass().getSimpleName() + " take should return null once drained", taken.get() == null);
+        }
+    }
+    
+    /**
+     * Test 21: Verify the bounded drain deadline
+     * Tests: Timeout is reported, leftover items are returned rather than lost
+     */
+    public static void testDrainDeadlineReport() throws InterruptedException {
+        ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(16);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger consumed = new AtomicInteger(0);
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        for (int i = 1; i <= 10; i++) {
+            queue.put("Item-" + i);
+        }
+        
+        Thread consumer = new Thread(completion.trackConsumer(
+            new ProducerConsumerDemo.Consumer(queue, dest, "Slow", consumed)
+                .withSimulatedDelay(100, 100)
+                .withPollInterval(10)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+        consumer.start();
+        
+        // No producers are tracked, so the queue closes immediately
+        completion.awaitProducersAndClose();
+        PipelineCompletion.Report<String> report = completion.awaitDrained(150, TimeUnit.MILLISECONDS);
+        consumer.join(5000);
+        
+        assertFalse("Slow consumer should miss the deadline", report.drainedInTime);
+        assertEquals("Slow consumer should still be running at the deadline", 1, report.lingeringConsumers);
+        assertTrue("Leftover items should be reported", report.undelivered.size() > 0);
+        assertEquals("Every item is either delivered or reported", 10, consumed.get() + report.undelivered.size());
+        assertFalse("Consumer should exit once the queue is emptied", consumer.isAlive());
+    }
+    
+    /**
+     * Test 22: Verify the work-stealing multi-queue topology
+     * Tests: Idle consumer steals from a slow consumer's lane, no item loss, least-loaded placement
+     */
+    public static void testWorkStealingQueue() throws InterruptedException {
+        WorkStealingQueue<String> queue = new WorkStealingQueue<>(64, 2, WorkStealingQueue.Distribution.ROUND_ROBIN);
+        assertEquals("Capacity is split evenly across lanes", 64, queue.capacity());
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger slowConsumed = new AtomicInteger(0);
+        AtomicInteger fastConsumed = new AtomicInteger(0);
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+        for (int i = 1; i <= 40; i++) {
+            queue.put("Item-" + i);
+        }
+        assertEquals("Round-robin should fill both lanes", 40, queue.size());
+        
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        Thread slow = new Thread(completion.trackConsumer(
+            new ProducerConsumerDemo.Consumer(queue, dest, "Slow", slowConsumed)
+                .withSimulatedDelay(50, 50)
+                .withPollInterval(10)
+                .withEventLog(silent)));
+        Thread fast = new Thread(completion.trackConsumer(
+            new ProducerConsumerDemo.Consumer(queue, dest, "Fast", fastConsumed)
+                .withSimulatedDelay(0, 0)
+                .withPollInterval(10)
+                .withEventLog(silent)));
+        slow.start();
+        fast.start();
+        completion.awaitProducersAndClose();
+        PipelineCompletion.Report<String> report = completion.awaitDrained(5, TimeUnit.SECONDS);
+        
+        assertTrue("Both consumers should finish", report.drainedInTime);
+        assertEquals("No items should be lost", 40, slowConsumed.get() + fastConsumed.get());
+        assertEquals("Destination should have 40 items", 40, dest.size());
+        assertTrue("Fast consumer should have stolen work", queue.steals() > 0);
+        assertTrue("Fast consumer should take most of the skewed load", fastConsumed.get() > slowConsumed.get());
+        
+        WorkStealingQueue<String> leastLoaded = new WorkStealingQueue<>(8, 4, WorkStealingQueue.Distribution.LEAST_LOADED);
+        for (int i = 0; i < 4; i++) {
+            leastLoaded.put("Item-" + i);
+        }
+        // A single thread owns one lane and has to steal the item placed on each other lane
+        int taken = 0;
+        while (leastLoaded.poll() != null) {
+            taken++;
+        }
+        assertEquals("Every item should be taken", 4, taken);
+        assertEquals("Least-loaded placement spreads items over every lane", 3, (int) leastLoaded.steals());
+    }
+    
+    /**
+     * Test 23: Verify the multi-stage pipeline builder
+     * Tests: Stage fusion, per-stage counts, ordered close of every stage, bottleneck readout
+     */
+    public static void testMultiStagePipeline() throws InterruptedException {
+        List<String> source = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            source.add(String.valueOf(i));
+        }
+        List<Object> dest = Collections.synchronizedList(new ArrayList<>());
+        
+        Pipeline<String> pipeline = Pipeline.<String>builder()
+            .map("parse", Integer::parseInt).workers(2)
+            .map("enrich", n -> n * 10).workers(2)
+            .filter("even", n -> n % 20 == 0).workers(2)
+            .map("slow", n -> {
+                LockSupport.parkNanos(200_000);
+                return "Item-" + n;
+            }).stateful()
+            .build(ItemSink.of(dest));
+        assertEquals("parse, enrich and even should fuse; slow gets its own queue", 2, pipeline.segmentCount());
+        
+        pipeline.start(source).awaitCompletion();
+        
+        assertEquals("Half the items pass the filter", 100, dest.size());
+        assertTrue("Sink should receive mapped items", dest.contains("Item-20") && !dest.contains("Item-10"));
+        List<Pipeline.StageStats> stats = pipeline.stats();
+        assertEquals("Four stages reported", 4, stats.size());
+        assertEquals("parse sees every item", 200L, stats.get(0).itemsIn);
+        assertEquals("even drops half", 100L, stats.get(2).itemsOut);
+        assertEquals("slow runs in the second segment", 1, stats.get(3).segment);
+        assertEquals("Slow stage should be the bottleneck", "slow", pipeline.bottleneck().name);
+        assertTrue("Report names the bottleneck", pipeline.report().contains("Bottleneck: slow"));
+        
+        Pipeline<String> unfused = Pipeline.<String>builder()
+            .map("parse", Integer::parseInt)
+            .map("enrich", n -> n * 10)
+            .withFusion(false)
+            .build(ItemSink.of(new ArrayList<>()));
+        assertEquals("Without fusion each stage has its own queue", 2, unfused.segmentCount());
+    }
+    
+    /**
+     * Test 24: Verify order-preserving delivery
+     * Tests: Exact source order with parallel consumers and racing producers, batching, poison pill gaps, bounded window
+     */
+    public static void testOrderedDelivery() throws InterruptedException {
+        List<String> source = new ArrayList<>();
+        for (int i = 1; i <= 300; i++) {
+            source.add("Item-" + i);
+        }
+        EventLog silent = EventLog.direct(EventLog.Level.OFF);
+        
+        // Close-and-drain shutdown, mixed one-by-one and batching consumers
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        OrderedDelivery<String> ordered = new OrderedDelivery<>(ItemQueue.Type.RING_MPMC, 16, ItemSink.of(dest), 32);
+        ItemQueue<String> queue = ordered.queue();
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        AtomicInteger produced = new AtomicInteger(0);
+        AtomicInteger consumed = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(completion.trackProducer(
+            new ProducerConsumerDemo.Producer(source, queue, "P1", produced)
+                .withSimulatedDelay(0, 0)
+                .withEventLog(silent))));
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(queue, ordered.sink(), "C" + i, consumed)
+                    .withBatching(i % 2 == 0 ? 1 : 5, 1)
+                    .withSimulatedDelay(0, 3)
+                    .withPollInterval(10)
+                    .withEventLog(silent))));
+        }
+        threads.forEach(Thread::start);
+        completion.awaitProducersAndClose();
+        assertTrue("Consumers should drain", completion.awaitDrained(10, TimeUnit.SECONDS).drainedInTime);
+        assertEquals("Destination should match the source order exactly", source, dest);
+        assertTrue("Reorder buffer should stay within its window", ordered.peakReorderDepth() <= 32);
+        
+        // Poison pill shutdown: the pill's positions are skipped, not waited for
+        List<String> pillDest = Collections.synchronizedList(new ArrayList<>());
+        OrderedDelivery<String> pillOrdered = new OrderedDelivery<>(ItemQueue.Type.LINKED_BLOCKING, 8, ItemSink.of(pillDest));
+        ItemQueue<String> pillQueue = pillOrdered.queue();
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Thread consumer = new Thread(new ProducerConsumerDemo.Consumer(pillQueue, pillOrdered.sink(), "C" + i, new AtomicInteger())
+                .withSimulatedDelay(0, 2)
+                .withPoisonPill()
+                .withEventLog(silent));
+            consumer.start();
+            consumers.add(consumer);
+        }
+        new ProducerConsumerDemo.Producer(source, pillQueue, "P1", new AtomicInteger())
+            .withSimulatedDelay(0, 0)
+            .withEventLog(silent)
+            .run();
+        pillQueue.put(ProducerConsumerDemo.POISON_PILL);
+        for (Thread consumer : consumers) {
+            consumer.join(10000);
+        }
+        assertEquals("Pill-terminated run should also keep source order", source, pillDest);
+        
+        // Several producers racing with random delays: numbering by source position keeps source order
+        List<String> racedDest = Collections.synchronizedList(new ArrayList<>());
+        OrderedDelivery<String> raced = new OrderedDelivery<>(ItemQueue.Type.RING_MPMC, 8, ItemSink.of(racedDest), 16);
+        ItemQueue<String> racedQueue = raced.queue();
+        WorkSource<String> racedSource = raced.source(WorkSource.of(source, 3));
+        PipelineCompletion<String> racedCompletion = new PipelineCompletion<>(racedQueue);
+        List<Thread> racers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            racers.add(new Thread(racedCompletion.trackProducer(
+                new ProducerConsumerDemo.Producer(racedSource, racedQueue, "P" + i, new AtomicInteger())
+                    .withSimulatedDelay(0, 2)
+                    .withEventLog(silent))));
+        }
+        for (int i = 0; i < 3; i++) {
+            racers.add(new Thread(racedCompletion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(racedQueue, raced.sink(), "C" + i, new AtomicInteger())
+                    .withBatching(i == 0 ? 4 : 1, 1)
+                    .withSimulatedDelay(0, 1)
+                    .withPollInterval(10)
+                    .withEventLog(silent))));
+        }
+        racers.forEach(Thread::start);
+        racedCompletion.awaitProducersAndClose();
+        assertTrue("Raced run should drain", racedCompletion.awaitDrained(30, TimeUnit.SECONDS).drainedInTime);
+        assertEquals("Several producers should still deliver the exact source order", source, racedDest);
+        assertTrue("Reorder buffer should stay within its window", raced.peakReorderDepth() <= 16);
+        
+        boolean rejected = false;
+        try {
+            new OrderedDelivery<String>(ItemQueue.Type.WORK_STEALING, 8, ItemSink.of(new ArrayList<>()));
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue("Non-FIFO queue types should be rejected", rejected);
+    }
+    
+    /**
+     * Test 25: Verify the memory-mapped spill-to-disk overflow
+     * Tests: Producer never blocks, FIFO across memory and log, segment rolling and cleanup, crash recovery
+     */
+    public static void testSpillingQueue() throws Exception {
+        Path directory = Files.createTempDirectory("spill-test");
+        try {
+            SpillingQueue queue = new SpillingQueue(4, directory, 256, 0, false);
+            List<String> source = new ArrayList<>();
+            for (int i = 1; i <= 200; i++) {
+                source.add("Item-" + i);
+            }
+            // No consumer is running, so a plain bounded queue would block after 4 items
+            new ProducerConsumerDemo.Producer(source, queue, "P1", new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF))
+                .run();
+            assertEquals("Overflow should go to the log", 196L, queue.spilledItems());
+            assertEquals("Size counts memory and log", 200, queue.size());
+            assertTrue("Small segments should roll over", queue.segmentCount() > 1);
+            
+            List<String> drained = new ArrayList<>();
+            String item;
+            while ((item = queue.poll()) != null) {
+                drained.add(item);
+            }
+            assertEquals("Items should come back in FIFO order", source, drained);
+            assertTrue("Fully read segments should be deleted", queue.segmentCount() <= 1);
+            queue.put("Item-201");
+            assertEquals("Memory is used again once the log is empty", 0L, queue.spilledItems());
+            assertEquals("Item-201", "Item-201", queue.poll());
+            queue.release();
+            
+            SpillingQueue crashed = new SpillingQueue(4, directory, 256, 0, false);
+            for (int i = 1; i <= 50; i++) {
+                crashed.put("Item-" + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                crashed.poll();
+            }
+            crashed.release();
+            
+            SpillingQueue recovered = new SpillingQueue(4, directory, 256, 0, true);
+            assertEquals("Unread spilled items should be recovered", 40L, recovered.spilledItems());
+            assertEquals("Recovery resumes at the first unread item", "Item-11", recovered.poll());
+            recovered.put("Item-51");
+            int remaining = 0;
+            String last = null;
+            while ((item = recovered.poll()) != null) {
+                last = item;
+                remaining++;
+            }
+            assertEquals("New items follow recovered ones", "Item-51", last);
+            assertEquals("All recovered items drain", 40, remaining);
+            recovered.release();
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+    
+    /**
+     * Test 26: Verify the shared-memory inter-process queue
+     * Tests: Two mappings of one file act as one queue, shared close flag, slot size limit, recreate moves
+     * attached mappings to the new file, separate consumer JVM
+     */
+    public static void testSharedMemoryQueue() throws Exception {
+        Path path = SharedMemoryQueue.defaultPath("pc-test-" + ProcessHandle.current().pid());
+        SharedMemoryQueue producerSide = SharedMemoryQueue.create(path, 10, 32);
+        try {
+            SharedMemoryQueue consumerSide = SharedMemoryQueue.open(path, 1000);
+            assertEquals("Capacity rounds up to a power of two and is read from the file", 16, consumerSide.capacity());
+            
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            Thread consumer = new Thread(new ProducerConsumerDemo.Consumer(consumerSide, received, "C1", new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withPollInterval(10)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF)));
+            consumer.start();
+            List<String> source = new ArrayList<>();
+            for (int i = 1; i <= 2000; i++) {
+                source.add("Item-" + i);
+            }
+            new ProducerConsumerDemo.Producer(source, producerSide, "P1", new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF))
+                .run();
+            producerSide.close();
+            consumer.join(10000);
+            
+            assertTrue("Close should be visible through the other mapping", consumerSide.isClosed());
+            assertFalse("Consumer should exit once the shared queue is drained", consumer.isAlive());
+            assertEquals("Items should arrive in order through shared memory", source, received);
+            
+            boolean rejected = false;
+            try {
+                SharedMemoryQueue.create(path, 4, 8).offer("longer than eight bytes");
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue("Items larger than a slot should be rejected", rejected);
+            
+            // A consumer that attached to a stale file follows create() to the new one
+            SharedMemoryQueue stale = SharedMemoryQueue.create(path, 4, 16);
+            stale.put("stale");
+            SharedMemoryQueue attached = SharedMemoryQueue.open(path, 1000);
+            SharedMemoryQueue recreated = SharedMemoryQueue.create(path, 8, 16);
+            recreated.put("fresh");
+            assertEquals("Attached side should move to the recreated file", "fresh", attached.poll(5, TimeUnit.SECONDS));
+            assertEquals("Geometry should come from the new header", 8, attached.capacity());
+            attached.put("back");
+            assertEquals("Both sides should share the new file", "back", recreated.poll());
+            
+            // A real second JVM consuming from the same file
+            SharedMemoryQueue crossProcess = SharedMemoryQueue.create(path, 64, 32);
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                               "InterProcessDemo", "consumer", path.toString())
+                .redirectErrorStream(true)
+                .start();
+            InterProcessDemo.produce(crossProcess, 1000);
+            assertTrue("Consumer JVM should finish", child.waitFor(30, TimeUnit.SECONDS));
+            String output = new String(child.getInputStream().readAllBytes());
+            assertTrue("Consumer JVM should receive every item: " + output.trim(),
+                       output.contains("received 1000 items"));
+        } finally {
+            producerSide.unlink();
+        }
+    }
+    
+    /**
+     * Test 27: Verify key-affinity partitioned routing
+     * Tests: One consumer per key, per-key order, consistent hashing moves few keys on resize
+     */
+    public static void testKeyPartitionedRouting() throws InterruptedException {
+        PartitionedQueues<String> partitioned = new PartitionedQueues<>(ItemQueue.Type.RING_SPSC, 16, 4,
+            item -> item.substring(0, item.indexOf(':')), PartitionedQueues.Routing.CONSISTENT);
+        List<String> source = new ArrayList<>();
+        for (int seq = 0; seq < 50; seq++) {
+            for (int user = 0; user < 20; user++) {
+                source.add("user-" + user + ":" + seq);
+            }
+        }
+        
+        PipelineCompletion<String> completion = new PipelineCompletion<String>(partitioned.router(), partitioned::drainTo);
+        List<List<String>> received = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < partitioned.partitionCount(); i++) {
+            List<String> own = new ArrayList<>();
+            received.add(own);
+            Thread consumer = new Thread(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(partitioned.partition(i), own, "C" + i, new AtomicInteger())
+                    .withSimulatedDelay(0, 0)
+                    .withPollInterval(10)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+            consumer.start();
+            consumers.add(consumer);
+        }
+        Thread producer = new Thread(completion.trackProducer(
+            new ProducerConsumerDemo.Producer(source, partitioned.router(), "P1", new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+        producer.start();
+        completion.awaitProducersAndClose();
+        assertTrue("Partitions should drain", completion.awaitDrained(10, TimeUnit.SECONDS).drainedInTime);
+        
+        Map<String, Integer> owner = new HashMap<>();
+        int total = 0;
+        for (int i = 0; i < received.size(); i++) {
+            // Plain HashMap: per-key state is only ever touched by this partition's consumer
+            Map<String, Integer> lastSeq = new HashMap<>();
+            for (String item : received.get(i)) {
+                String key = item.substring(0, item.indexOf(':'));
+                int seq = Integer.parseInt(item.substring(item.indexOf(':') + 1));
+                Integer previousOwner = owner.putIfAbsent(key, i);
+                assertEquals("Key " + key + " should stay on one consumer", i, previousOwner == null ? i : previousOwner);
+                assertTrue("Per-key order should be kept", seq > lastSeq.getOrDefault(key, -1));
+                lastSeq.put(key, seq);
+                total++;
+            }
+        }
+        assertEquals("Every item should be delivered once", 1000, total);
+        assertEquals("All 20 keys should be seen", 20, owner.size());
+        
+        // Growing from 4 to 5 partitions: consistent hashing moves about a fifth of the keys, modulo most of them
+        PartitionedQueues<String> consistent = new PartitionedQueues<>(ItemQueue.Type.LINKED_BLOCKING, 1, 4,
+            Function.identity(), PartitionedQueues.Routing.CONSISTENT);
+        PartitionedQueues<String> modulo = new PartitionedQueues<>(ItemQueue.Type.LINKED_BLOCKING, 1, 4,
+            Function.identity(), PartitionedQueues.Routing.MODULO);
+        int[] before = new int[10000];
+        int[] beforeModulo = new int[10000];
+        for (int k = 0; k < before.length; k++) {
+            before[k] = consistent.partitionOf("key-" + k);
+            beforeModulo[k] = modulo.partitionOf("key-" + k);
+        }
+        consistent.resize(5);
+        modulo.resize(5);
+        int moved = 0;
+        int movedModulo = 0;
+        for (int k = 0; k < before.length; k++) {
+            moved += consistent.partitionOf("key-" + k) != before[k] ? 1 : 0;
+            movedModulo += modulo.partitionOf("key-" + k) != beforeModulo[k] ? 1 : 0;
+        }
+        assertTrue("Consistent hashing should move few keys (moved " + moved + ")", moved < 3000);
+        assertTrue("Modulo routing should move most keys (moved " + movedModulo + ")", movedModulo > 6000);
+        assertEquals("New partition should get a queue", 5, consistent.partitionCount());
+    }
+    
+    /**
+     * Test 28: Verify pluggable wait strategies
+     * Tests: Each strategy on a ring and a JDK queue, interrupt of a waiting take, bounded park backoff,
+     * signalled wakeup of a parked waiter, default is kept, WORK_STEALING applies the strategy
+     */
+    public static void testWaitStrategies() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            for (ItemQueue.Type type : new ItemQueue.Type[] {ItemQueue.Type.RING_SPSC, ItemQueue.Type.ARRAY_BLOCKING}) {
+                // Capacity 2 keeps both sides waiting most of the time
+                ItemQueue<String> queue = type.create(2, strategy);
+                List<String> destination = Collections.synchronizedList(new ArrayList<>());
+                Thread consumer = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            destination.add(queue.take());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                consumer.start();
+                for (int i = 0; i < 2000; i++) {
+                    queue.put("Item-" + i);
+                }
+                consumer.join(10000);
+                assertEquals(strategy + " on " + type + " should deliver every item", 2000, destination.size());
+                assertEquals(strategy + " on " + type + " should keep FIFO order", "Item-1999", destination.get(1999));
+                
+                // A take waiting on an empty queue must give up when interrupted
+                boolean[] interrupted = {false};
+                Thread waiter = new Thread(() -> {
+                    try {
+                        queue.take();
+                    } catch (InterruptedException e) {
+                        interrupted[0] = true;
+                    }
+                });
+                waiter.start();
+                Thread.sleep(20);
+                waiter.interrupt();
+                waiter.join(5000);
+                assertFalse(strategy + " on " + type + " waiter should exit", waiter.isAlive());
+                assertTrue(strategy + " on " + type + " should throw InterruptedException", interrupted[0]);
+            }
+        }
+        
+        // Park timeouts are only a backstop; they start short and stay bounded however long a thread waits
+        assertEquals("First park is the base interval", WaitStrategy.PARK_NANOS, WaitStrategy.parkNanos(0));
+        assertEquals("Park time doubles", 2 * WaitStrategy.PARK_NANOS, WaitStrategy.parkNanos(1));
+        assertEquals("Park time is capped", WaitStrategy.MAX_PARK_NANOS, WaitStrategy.parkNanos(Integer.MAX_VALUE));
+        assertTrue("Parking strategies must be signalled", WaitStrategy.TIMED_PARK.parks() && WaitStrategy.SPIN_THEN_PARK.parks());
+        assertFalse("Spinning strategies never park", WaitStrategy.BUSY_SPIN.parks() || WaitStrategy.SPIN_THEN_YIELD.parks());
+        
+        // A parked waiter is woken by the signal, long before its timeout
+        WaitStrategy.Signal signal = new WaitStrategy.Signal();
+        boolean[] ready = {false};
+        Thread parked = new Thread(() -> {
+            try {
+                signal.await(() -> ready[0], TimeUnit.SECONDS.toNanos(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        parked.start();
+        Thread.sleep(50);
+        long signalledAt = System.nanoTime();
+        ready[0] = true;
+        signal.signalAll();
+        parked.join(5000);
+        assertFalse("Signalled waiter should wake", parked.isAlive());
+        assertTrue("Signalled waiter should wake well before its 30 s timeout", System.nanoTime() - signalledAt < TimeUnit.SECONDS.toNanos(5));
+        
+        // Without a strategy the JDK queues park until signalled
+        ItemQueue<String> plain = ItemQueue.Type.LINKED_BLOCKING.create(1);
+        plain.put("only");
+        assertFalse("Full queue should reject offer", plain.offer("more"));
+        assertEquals("Plain queue should hand the item back", "only", plain.take());
+        
+        // Work-stealing lanes wait by the strategy too; a taker idle on every lane wakes when any lane gets work
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            ItemQueue<String> stealing = new WorkStealingQueue<>(4, 2, WorkStealingQueue.Distribution.ROUND_ROBIN, strategy);
+            Set<String> delivered = Collections.synchronizedSet(new HashSet<>());
+            Thread taker = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        delivered.add(stealing.take());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            taker.start();
+            for (int i = 0; i < 500; i++) {
+                stealing.put("Item-" + i);
+            }
+            taker.join(10000);
+            assertEquals(strategy + " on WORK_STEALING should deliver every item", 500, delivered.size());
+        }
+    }
+    
+    /**
+     * Test 29: Verify dynamic chunk claiming from a shared work source
+     * Tests: Slow producer claims less than a static split, every item once, file lines streamed, no read after exhaustion
+     */
+    public static void testWorkSourceChunkClaiming() throws Exception {
+        final int totalItems = 4000;
+        WorkSource<String> source = WorkSource.generate(totalItems, i -> "Item-" + i, 4);
+        ItemQueue<String> queue = ItemQueue.Type.LINKED_BLOCKING.create(totalItems);
+        AtomicInteger[] produced = new AtomicInteger[4];
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            produced[i] = new AtomicInteger();
+            // Producer 0 takes 1 ms per item, the others none
+            Thread producer = new Thread(new ProducerConsumerDemo.Producer(source, queue, "P" + i, produced[i])
+                .withSimulatedDelay(i == 0 ? 1 : 0, i == 0 ? 1 : 0)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF)));
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join(10000);
+        }
+        assertEquals("Every item should be claimed", totalItems, (int) source.claimedItems());
+        assertEquals("Every item should be queued", totalItems, queue.size());
+        assertTrue("Slow producer should claim far less than a static quarter (got " + produced[0].get() + ")",
+            produced[0].get() < totalItems / 8);
+        HashSet<String> unique = new HashSet<>();
+        String item;
+        while ((item = queue.poll()) != null) {
+            unique.add(item);
+        }
+        assertEquals("No item should be produced twice", totalItems, unique.size());
+        
+        // Chunks shrink as the source runs out and never exceed MAX_CHUNK
+        WorkSource<Integer> guided = WorkSource.generate(1000, i -> (int) i, 2);
+        int first = guided.claim().size();
+        int last = 0;
+        List<Integer> chunk;
+        while ((chunk = guided.claim()) != null) {
+            last = chunk.size();
+        }
+        assertEquals("First chunk should be capped", WorkSource.MAX_CHUNK, first);
+        assertEquals("Last chunk should be a single item", 1, last);
+        
+        // A file source streams its lines in fixed chunks across producers
+        Path file = Files.createTempFile("work-source", ".txt");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                lines.add("Line-" + i);
+            }
+            Files.write(file, lines);
+            WorkSource<String> fileSource = WorkSource.lines(file, 16);
+            List<String> destination = Collections.synchronizedList(new ArrayList<>());
+            ItemQueue<String> fileQueue = ItemQueue.Type.RING_MPMC.create(64);
+            PipelineCompletion<String> completion = new PipelineCompletion<>(fileQueue);
+            Thread consumer = new Thread(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(fileQueue, destination, "C1", new AtomicInteger())
+                    .withSimulatedDelay(0, 0)
+                    .withPollInterval(10)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+            consumer.start();
+            for (int i = 0; i < 3; i++) {
+                new Thread(completion.trackProducer(
+                    new ProducerConsumerDemo.Producer(fileSource, fileQueue, "F" + i, new AtomicInteger())
+                        .withSimulatedDelay(0, 0)
+                        .withEventLog(EventLog.direct(EventLog.Level.OFF)))).start();
+            }
+            completion.awaitProducersAndClose();
+            assertTrue("File items should drain", completion.awaitDrained(10, TimeUnit.SECONDS).drainedInTime);
+            assertEquals("Every line should be delivered once", 1000, new HashSet<>(destination).size());
+            assertEquals("No line should be duplicated", 1000, destination.size());
+            
+            // Once exhausted the reader is closed; further claims must not read from it again
+            assertTrue("Exhausted file source should stay exhausted", fileSource.claim() == null);
+            assertEquals("Claimed count should not change after exhaustion", 1000L, fileSource.claimedItems());
+            
+            // Producers that stop early leave lines unread; the completion closes the source once they have all stopped
+            WorkSource<String> abandoned = WorkSource.lines(file, 16);
+            PipelineCompletion<String> early = new PipelineCompletion<>(ItemQueue.Type.RING_MPMC.<String>create(64))
+                .withSource(abandoned);
+            Thread quitter = new Thread(early.trackProducer(() -> abandoned.claim()));
+            quitter.start();
+            early.awaitProducersAndClose();
+            assertTrue("Closed file source should hand out nothing more", abandoned.claim() == null);
+            assertEquals("Only the chunk claimed before stopping is counted", 16L, abandoned.claimedItems());
+            abandoned.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        
+        // An iterator that fails if it is asked again after reporting its end, closed exactly once
+        AtomicInteger ended = new AtomicInteger();
+        AtomicInteger closes = new AtomicInteger();
+        Iterator<String> strict = new Iterator<String>() {
+            private int next;
+            
+            @Override
+            public boolean hasNext() {
+                if (ended.get() > 0) {
+                    throw new IllegalStateException("Iterator read after its end");
+                }
+                if (next < 10) {
+                    return true;
+                }
+                ended.incrementAndGet();
+                return false;
+            }
+            
+            @Override
+            public String next() {
+                return "Item-" + next++;
+            }
+        };
+        WorkSource<String> streaming = new WorkSource.Streaming<>(strict, 4, closes::incrementAndGet);
+        int streamed = 0;
+        List<String> claimed;
+        while ((claimed = streaming.claim()) != null) {
+            streamed += claimed.size();
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue("Closed, exhausted source should keep returning null", streaming.claim() == null);
+        }
+        assertEquals("Every streamed item should be claimed", 10, streamed);
+        assertEquals("Iterator end should be observed once", 1, ended.get());
+        assertEquals("Resource should be closed exactly once", 1, closes.get());
+    }
+    
+    /**
+     * Test 30: Verify priority lanes with weighted and strict scheduling
+     * Tests: Weighted share, starvation protection across several lanes, per-lane depth, urgent latency under bulk backlog
+     */
+    public static void testPriorityLanes() throws InterruptedException {
+        ToIntFunction<String> laneOf = item -> item.startsWith("urgent") ? 0 : 1;
+        
+        // Weights 3:1 with both lanes backlogged give three urgent items per bulk item
+        PriorityLaneQueue<String> weighted = new PriorityLaneQueue<>(2, 512, laneOf).withWeights(3, 1);
+        for (int i = 0; i < 300; i++) {
+            weighted.put("urgent-" + i);
+            weighted.put("bulk-" + i);
+        }
+        assertEquals("Lane depth should be tracked", 300, weighted.laneDepth(1));
+        int urgent = 0;
+        for (int i = 0; i < 40; i++) {
+            urgent += weighted.poll().startsWith("urgent") ? 1 : 0;
+        }
+        assertEquals("Urgent lane should get 3 of every 4 turns", 30, urgent);
+        
+        // Strict priority still serves bulk once per starvationLimit urgent items
+        PriorityLaneQueue<String> strict = new PriorityLaneQueue<>(2, 512, laneOf).withStrictPriority(4);
+        for (int i = 0; i < 100; i++) {
+            strict.put("urgent-" + i);
+            strict.put("bulk-" + i);
+        }
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            order.append(strict.poll().charAt(0));
+        }
+        assertEquals("Bulk should be served after 4 urgent items", "uuuubuuuub", order.toString());
+        for (int i = 0; i < 190; i++) {
+            strict.poll();
+        }
+        assertTrue("Both lanes should drain", strict.isEmpty());
+        
+        // With two backlogged lower lanes, each one gets its turn instead of only the lowest
+        PriorityLaneQueue<String> three = new PriorityLaneQueue<>(3, 512,
+            (String item) -> item.charAt(0) - '0').withStrictPriority(4);
+        for (int i = 0; i < 100; i++) {
+            three.put("0-" + i);
+            three.put("1-" + i);
+            three.put("2-" + i);
+        }
+        StringBuilder threeOrder = new StringBuilder();
+        int[] served = new int[3];
+        for (int i = 0; i < 60; i++) {
+            String item = three.poll();
+            served[item.charAt(0) - '0']++;
+            if (i < 17) {
+                threeOrder.append(item.charAt(0));
+            }
+        }
+        assertEquals("Most starved lane should be served, ties to the more urgent", "00001200012000120",
+            threeOrder.toString());
+        assertTrue("Lane 1 should not starve behind lane 2: " + Arrays.toString(served), served[1] >= 10);
+        assertTrue("Lane 2 should not starve behind lane 1: " + Arrays.toString(served), served[2] >= 10);
+        assertTrue("Urgent lane should still get most turns: " + Arrays.toString(served), served[0] > served[1] + served[2]);
+        
+        PriorityLaneQueue<String> narrow = new PriorityLaneQueue<>(1, 4, item -> 1);
+        boolean rejected = false;
+        try {
+            narrow.put("x");
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue("Out-of-range lane should be rejected", rejected);
+        
+        // A bulk backfill is queued first; urgent items arriving during it should still wait little
+        PriorityLaneQueue<String> lanes = new PriorityLaneQueue<>(2, 1024, laneOf).withWeights(8, 1);
+        for (int i = 0; i < 1000; i++) {
+            lanes.put("bulk-" + i);
+        }
+        Thread urgentProducer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    lanes.put("urgent-" + i);
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        urgentProducer.start();
+        for (int i = 0; i < 1100; i++) {
+            lanes.take();
+            // About 50 us of work per item, so the backfill takes longer than the urgent arrivals
+            long until = System.nanoTime() + 50_000;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+        urgentProducer.join();
+        long urgentP99 = lanes.laneLatency(0).percentile(99);
+        long bulkP99 = lanes.laneLatency(1).percentile(99);
+        assertEquals("Every urgent item should be measured", 100L, lanes.laneLatency(0).count());
+        assertTrue("Urgent p99 " + urgentP99 + " ns should stay below bulk p99 " + bulkP99 + " ns",
+            urgentP99 < bulkP99);
+        assertTrue("Report should list both lanes", lanes.laneReport().contains("Lane 1"));
+    }
+    
+    /**
+     * Test 31: Verify Flow publisher/subscriber adapters
+     * Tests: Exact request(n) demand, Producer to Consumer via Flow, queue as Flow upstream and downstream
+     */
+    public static void testFlowAdapters() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // A subscriber that asks for 5 gets exactly 5 until it asks again
+            ProducerConsumerDemo.Producer producer = new ProducerConsumerDemo.Producer(
+                WorkSource.generate(20, i -> "Item-" + i, 1), (ItemQueue<String>) null, "P1", new AtomicInteger())
+                .withEventLog(EventLog.direct(EventLog.Level.OFF));
+            List<String> received = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch completed = new CountDownLatch(1);
+            Flow.Subscription[] subscription = new Flow.Subscription[1];
+            producer.asPublisher(executor).subscribe(new Flow.Subscriber<String>() {
+                public void onSubscribe(Flow.Subscription s) {
+                    subscription[0] = s;
+                    s.request(5);
+                }
+                public void onNext(String item) {
+                    received.add(item);
+                }
+                public void onError(Throwable throwable) {
+                }
+                public void onComplete() {
+                    completed.countDown();
+                }
+            });
+            Thread.sleep(50);
+            assertEquals("Publisher should send only what was requested", 5, received.size());
+            subscription[0].request(15);
+            assertTrue("Publisher should complete after the last requested item", completed.await(5, TimeUnit.SECONDS));
+            assertEquals("All items should arrive in order", "Item-19", received.get(19));
+            
+            // Producer publishes straight to Consumer with batched demand; two producers split one source
+            WorkSource<String> source = WorkSource.generate(10000, i -> "Item-" + i, 2);
+            AtomicInteger produced = new AtomicInteger();
+            AtomicInteger consumed = new AtomicInteger();
+            List<String> destination = Collections.synchronizedList(new ArrayList<>());
+            List<FlowAdapters.SinkSubscriber<String>> subscribers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                FlowAdapters.SinkSubscriber<String> subscriber = new ProducerConsumerDemo.Consumer(
+                    (ItemQueue<String>) null, destination, "C" + i, consumed)
+                    .withBatching(16, 0)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF))
+                    .asSubscriber();
+                new ProducerConsumerDemo.Producer(source, (ItemQueue<String>) null, "P" + i, produced)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF))
+                    .asPublisher(executor)
+                    .subscribe(subscriber);
+                subscribers.add(subscriber);
+            }
+            for (FlowAdapters.SinkSubscriber<String> subscriber : subscribers) {
+                assertTrue("Subscriber should complete", subscriber.await(10, TimeUnit.SECONDS));
+                assertTrue("No error expected", subscriber.error() == null);
+            }
+            assertEquals("Every item should be produced once", 10000, produced.get());
+            assertEquals("Every item should be consumed once", 10000, consumed.get());
+            assertEquals("No duplicates", 10000, new HashSet<>(destination).size());
+            
+            // Non-blocking upstream into a small queue, and the queue out to a Flow subscriber
+            ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(4);
+            FlowAdapters.QueueSubscriber<String> intoQueue = FlowAdapters.toQueue(queue, 8, executor);
+            List<String> out = Collections.synchronizedList(new ArrayList<>());
+            FlowAdapters.SinkSubscriber<String> fromQueue = new FlowAdapters.SinkSubscriber<>(ItemSink.of(out), 8, item -> { });
+            FlowAdapters.fromQueue(queue, executor).subscribe(fromQueue);
+            try (SubmissionPublisher<String> upstream = new SubmissionPublisher<>(executor, 8)) {
+                upstream.subscribe(intoQueue);
+                for (int i = 0; i < 500; i++) {
+                    upstream.submit("Event-" + i);
+                }
+            }
+            assertTrue("Upstream items should all reach the queue", intoQueue.await(10, TimeUnit.SECONDS));
+            queue.close();
+            assertTrue("Queue publisher should complete once drained", fromQueue.await(10, TimeUnit.SECONDS));
+            assertEquals("Every event should pass through the queue", 500, out.size());
+            assertEquals("Single upstream keeps FIFO order", "Event-499", out.get(499));
+            
+            // Items that arrive late are emitted from whichever executor thread retries; completion publishes every thread's buffer
+            ItemQueue<String> late = ItemQueue.Type.RING_MPMC.create(64);
+            List<String> merged = Collections.synchronizedList(new ArrayList<>());
+            FlowAdapters.SinkSubscriber<String> buffered = new FlowAdapters.SinkSubscriber<>(
+                new ThreadLocalBufferSink<>(merged), 8, item -> { });
+            FlowAdapters.fromQueue(late, executor).subscribe(buffered);
+            for (int i = 0; i < 200; i++) {
+                late.put("Late-" + i);
+                if (i % 20 == 19) {
+                    Thread.sleep(5);
+                }
+            }
+            late.close();
+            assertTrue("Late queue publisher should complete", buffered.await(10, TimeUnit.SECONDS));
+            assertEquals("No item should be left in another thread's buffer", 200, merged.size());
+            
+            // A non-positive request is signalled as onError after the onNext in progress returns
+            AtomicBoolean inOnNext = new AtomicBoolean();
+            AtomicBoolean overlapped = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch failed = new CountDownLatch(1);
+            FlowAdapters.fromSource(WorkSource.generate(100, i -> "Item-" + i, 1), executor, item -> { })
+                .subscribe(new Flow.Subscriber<String>() {
+                    private Flow.Subscription subscription;
+                    public void onSubscribe(Flow.Subscription s) {
+                        subscription = s;
+                        s.request(10);
+                    }
+                    public void onNext(String item) {
+                        inOnNext.set(true);
+                        subscription.request(0);
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        inOnNext.set(false);
+                    }
+                    public void onError(Throwable throwable) {
+                        overlapped.set(inOnNext.get());
+                        failure.set(throwable);
+                        failed.countDown();
+                    }
+                    public void onComplete() {
+                    }
+                });
+            assertTrue("Invalid request should be signalled", failed.await(5, TimeUnit.SECONDS));
+            assertTrue("onError should be an IllegalArgumentException", failure.get() instanceof IllegalArgumentException);
+            assertTrue("onError should not overlap onNext", !overlapped.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Test 32: Verify producer-side micro-batching
+     * Tests: Size-bound batches, linger flush with and without a new item, transparent unbatching, held items handed back, metrics
+     */
+    public static void testProducerMicroBatching() throws InterruptedException {
+        List<String> source = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            source.add("Item-" + i);
+        }
+        
+        // Full batches: 1000 items become 10 queue entries
+        BatchedQueue<String> queue = new BatchedQueue<>(ItemQueue.Type.RING_MPMC, 64);
+        AtomicInteger produced = new AtomicInteger();
+        new ProducerConsumerDemo.Producer(source, queue, "P1", produced)
+            .withSimulatedDelay(0, 0)
+            .withBatching(100, 1000)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF))
+            .run();
+        assertEquals("Counter should cover every item", 1000, produced.get());
+        assertEquals("Each batch should be one queue entry", 10, queue.size());
+        
+        // Consumers take single items without knowing about batches
+        queue.close();
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        List<String> destination = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            new Thread(completion.trackConsumer(
+                new ProducerConsumerDemo.Consumer(queue, destination, "C" + i, new AtomicInteger())
+                    .withSimulatedDelay(0, 0)
+                    .withBatching(8, 0)
+                    .withPollInterval(10)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF)))).start();
+        }
+        completion.awaitProducersAndClose();
+        assertTrue("Batched queue should drain", completion.awaitDrained(10, TimeUnit.SECONDS).drainedInTime);
+        assertEquals("Every item should be delivered", 1000, destination.size());
+        assertEquals("No item should be delivered twice", 1000, new HashSet<>(destination).size());
+        
+        // With 2 ms per item and a 5 ms linger, partial batches go out long before 100 items gather
+        BatchedQueue<String> lingering = new BatchedQueue<>(ItemQueue.Type.LINKED_BLOCKING, 64);
+        new ProducerConsumerDemo.Producer(source.subList(0, 20), lingering, "P2", new AtomicInteger())
+            .withSimulatedDelay(2, 2)
+            .withBatching(100, 5)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF))
+            .run();
+        assertTrue("Linger should flush partial batches (" + lingering.size() + " entries)", lingering.size() > 1);
+        
+        // The linger deadline also fires while the producer is still busy on its next item
+        BatchedQueue<String> idle = new BatchedQueue<>(ItemQueue.Type.LINKED_BLOCKING, 64);
+        AtomicInteger calls = new AtomicInteger();
+        Thread slowProducer = new Thread(new ProducerConsumerDemo.Producer(source.subList(0, 2), idle, "P3", new AtomicInteger())
+            .withWorkload(() -> {
+                if (calls.getAndIncrement() > 0) {
+                    Thread.sleep(500);
+                }
+            })
+            .withBatching(100, 10)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF)));
+        slowProducer.start();
+        Thread.sleep(200);
+        assertEquals("First item should go out when its linger expires, not with the next item", 1, idle.size());
+        slowProducer.join(5000);
+        List<String> idleItems = new ArrayList<>();
+        idle.drainTo(idleItems, 10);
+        assertEquals("Both items should arrive in order", source.subList(0, 2), idleItems);
+        
+        // Batches carried through an InstrumentedQueue keep the pipeline metrics
+        PipelineMetrics metrics = new PipelineMetrics();
+        BatchedQueue<String> instrumented = new BatchedQueue<>(
+            new InstrumentedQueue<List<String>>(ItemQueue.Type.RING_MPMC, 64, metrics));
+        new ProducerConsumerDemo.Producer(source, instrumented, "P4", new AtomicInteger())
+            .withSimulatedDelay(0, 0)
+            .withBatching(100, 1000)
+            .withMetrics(metrics)
+            .withEventLog(EventLog.direct(EventLog.Level.OFF))
+            .run();
+        List<String> instrumentedItems = new ArrayList<>();
+        String taken;
+        while ((taken = instrumented.poll()) != null) {
+            instrumentedItems.add(taken);
+        }
+        assertEquals("Every item should come through", source, instrumentedItems);
+        assertEquals("Produced items should be counted", 1000L, metrics.snapshot().itemsProduced);
+        assertEquals("Each batch handoff should be timed", 10L, metrics.handoffLatency().count());
+        
+        // A consumer that stops mid-batch hands the rest back
+        BatchedQueue<String> handBack = new BatchedQueue<>(ItemQueue.Type.LINKED_BLOCKING, 4);
+        handBack.putBatch(new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e")));
+        Thread partial = new Thread(() -> {
+            handBack.poll();
+            handBack.returnHeld();
+        });
+        partial.start();
+        partial.join();
+        List<String> rest = new ArrayList<>();
+        handBack.drainTo(rest, 10);
+        assertEquals("Held items should be handed back in order", Arrays.asList("b", "c", "d", "e"), rest);
+    }
+    
+    /**
+     * Test 33: Verify workload models and the open-loop load generator
+     * Tests: Burn/park timing, interrupt, distribution sampling, coordinated-omission correction
+     */
+    public static void testWorkloadModelsAndOpenLoopLoad() throws InterruptedException {
+        long start = System.nanoTime();
+        WorkloadModel.cpuBurn(TimeUnit.MILLISECONDS.toNanos(3)).process();
+        assertTrue("CPU burn should last its service time", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(3));
+        start = System.nanoTime();
+        WorkloadModel.fixedLatency(TimeUnit.MILLISECONDS.toNanos(3)).process();
+        assertTrue("Fixed latency should last its service time", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(3));
+        
+        AtomicInteger draws = new AtomicInteger();
+        WorkloadModel sampled = WorkloadModel.distribution(() -> draws.incrementAndGet() * 1000L, true);
+        for (int i = 0; i < 10; i++) {
+            sampled.process();
+        }
+        assertEquals("Each item should draw one service time", 10, draws.get());
+        
+        Thread.currentThread().interrupt();
+        boolean interrupted = false;
+        try {
+            WorkloadModel.cpuBurn(1000).process();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        assertTrue("Burning should honour interruption", interrupted);
+        
+        // Under capacity: every item delivered, schedule kept
+        OpenLoopLoadGenerator.Report light = OpenLoopLoadGenerator.runOnce(2000, 1, WorkloadModel.none(), 0.1);
+        assertEquals("Every item should be delivered", 200L, light.delivered);
+        assertFalse("Light load should keep to schedule", light.isSaturated());
+        
+        // Over capacity (2 ms per item against one every 0.5 ms) with a small queue: the generator is held
+        // back, and only the corrected latency shows how long items waited to be sent
+        ItemQueue<String> queue = ItemQueue.Type.ARRAY_BLOCKING.create(4);
+        OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(queue, 2000);
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        new Thread(completion.trackConsumer(
+            new ProducerConsumerDemo.Consumer(queue, generator.recordingSink(ItemSink.of(new ArrayList<>())), "C1",
+                                             new AtomicInteger())
+                .withWorkload(WorkloadModel.fixedLatency(TimeUnit.MILLISECONDS.toNanos(2)))
+                .withPollInterval(10)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF)))).start();
+        generator.run(100);
+        completion.awaitProducersAndClose();
+        assertTrue("Overloaded run should drain", completion.awaitDrained(10, TimeUnit.SECONDS).drainedInTime);
+        OpenLoopLoadGenerator.Report heavy = generator.report();
+        assertTrue("Overload should be reported as saturated", heavy.isSaturated());
+        assertTrue("Corrected p99 " + heavy.correctedP99Nanos + " should far exceed naive p99 " + heavy.uncorrectedP99Nanos,
+            heavy.correctedP99Nanos > 3 * heavy.uncorrectedP99Nanos);
+    }
+    
+    /**
+     * Test 34: Verify the durable file sink
+     * Tests: Group commit from parallel consumers, fewer fsyncs than items, durability levels, byte accounting, bounded pending bytes, writer interrupt
+     */
+    public static void testFileSinkGroupCommit() throws Exception {
+        Path file = Files.createTempFile("file-sink", ".log");
+        try {
+            // GROUP: four batching consumers; each batch waits for one fsync shared with the others
+            FileSink sink = new FileSink(file, FileSink.Durability.GROUP);
+            List<String> source = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                source.add("Item-" + i);
+            }
+            ItemQueue<String> queue = ItemQueue.Type.RING_MPMC.create(256);
+            PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+            for (int i = 0; i < 4; i++) {
+                new Thread(completion.trackConsumer(
+                    new ProducerConsumerDemo.Consumer(queue, sink, "C" + i, new AtomicInteger())
+                        .withSimulatedDelay(0, 0)
+                        .withBatching(16, 1)
+                        .withPollInterval(10)
+                        .withEventLog(EventLog.direct(EventLog.Level.OFF)))).start();
+            }
+            new Thread(completion.trackProducer(
+                new ProducerConsumerDemo.Producer(source, queue, "P1", new AtomicInteger())
+                    .withSimulatedDelay(0, 0)
+                    .withEventLog(EventLog.direct(EventLog.Level.OFF)))).start();
+            completion.awaitProducersAndClose();
+            assertTrue("Consumers should drain into the file", completion.awaitDrained(30, TimeUnit.SECONDS).drainedInTime);
+            long fsyncs = sink.fsyncCount();
+            sink.close();
+            List<String> lines = Files.readAllLines(file);
+            assertEquals("Every item should be persisted", 2000, lines.size());
+            assertEquals("No item should be persisted twice", new HashSet<>(source), new HashSet<>(lines));
+            assertTrue("Group commit should need far fewer fsyncs than items (" + fsyncs + ")", fsyncs <= 2000 / 4);
+            assertEquals("Byte count should match the file", Files.size(file), sink.bytesWritten());
+            assertTrue("Report should show fsync latency", sink.report().contains("fsyncs"));
+            
+            // NONE never forces on its own; flush still makes everything durable
+            Files.delete(file);
+            FileSink unforced = new FileSink(file, FileSink.Durability.NONE);
+            for (int i = 0; i < 100; i++) {
+                unforced.add("Fast-" + i);
+            }
+            Thread.sleep(20);
+            assertEquals("NONE should not fsync by itself", 0L, unforced.fsyncCount());
+            unforced.flush();
+            assertEquals("flush() should force once", 1L, unforced.fsyncCount());
+            unforced.close();
+            assertEquals("Unforced items should still be written", 100, Files.readAllLines(file).size());
+            
+            // PERIODIC forces about once per window while add() never waits
+            FileSink periodic = new FileSink(file, FileSink.Durability.PERIODIC, 20, 256);
+            for (int i = 0; i < 50; i++) {
+                periodic.add("Periodic-" + i + "-" + "x".repeat(300)); // Longer than the 256-byte buffer
+                Thread.sleep(2);
+            }
+            Thread.sleep(40);
+            long periodicFsyncs = periodic.fsyncCount();
+            assertTrue("PERIODIC should force within its window (" + periodicFsyncs + ")", periodicFsyncs >= 1);
+            assertTrue("PERIODIC should force less than once per item (" + periodicFsyncs + ")", periodicFsyncs < 50);
+            periodic.close();
+            assertEquals("Appends should follow the earlier items", 150, Files.readAllLines(file).size());
+            
+            boolean rejected = false;
+            try {
+                periodic.add("late");
+            } catch (IllegalStateException e) {
+                rejected = true;
+            }
+            assertTrue("Closed sink should reject items", rejected);
+            
+            // Unwritten bytes stay under the bound however fast consumers add
+            Files.delete(file);
+            FileSink bounded = new FileSink(file, FileSink.Durability.NONE, 20, 256, 1024);
+            List<Thread> adders = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int adder = t;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        bounded.add("Bounded-" + adder + "-" + i + "-" + "y".repeat(40));
+                    }
+                });
+                thread.start();
+                adders.add(thread);
+            }
+            for (Thread adder : adders) {
+                adder.join(10000);
+            }
+            bounded.close();
+            assertEquals("Every bounded item should be written", 2000, Files.readAllLines(file).size());
+            assertTrue("Pending bytes should stay within the bound (" + bounded.peakPendingBytes() + ")",
+                bounded.peakPendingBytes() <= 1024);
+            
+            // An interrupted writer fails the sink instead of leaving flush() waiting forever
+            Files.delete(file);
+            FileSink interrupted = new FileSink(file, FileSink.Durability.PERIODIC, 60000, 256);
+            interrupted.add("Before-interrupt");
+            Thread.sleep(20);
+            interrupted.writer().interrupt();
+            interrupted.writer().join(5000);
+            boolean[] failed = {false};
+            Thread flusher = new Thread(() -> {
+                try {
+                    interrupted.flush();
+                } catch (UncheckedIOException e) {
+                    failed[0] = true;
+                }
+            });
+            flusher.start();
+            flusher.join(5000);
+            assertFalse("flush() should not hang after the writer is interrupted", flusher.isAlive());
+            assertTrue("flush() should report the writer failure", failed[0]);
+            rejected = false;
+            try {
+                interrupted.add("After-interrupt");
+            } catch (UncheckedIOException e) {
+                rejected = true;
+            }
+            assertTrue("A failed sink should reject items", rejected);
+            try {
+                interrupted.close();
+            } catch (UncheckedIOException e) {
+                // Already failed; close still releases the file
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    /**
+     * Test 35: Verify the concurrency stress harness
+     * Tests: Invariants hold over many randomized rounds for both termination styles, a lossy queue is caught
+     */
+    public static void testStressHarness() throws Exception {
+        ProducerConsumerStress.Config closing = new ProducerConsumerStress.Config("RING_MPMC",
+            () -> ItemQueue.Type.RING_MPMC.create(2), 2, 2, 4, 1, ProducerConsumerStress.Termination.CLOSE, false);
+        ProducerConsumerStress.Result closed = ProducerConsumerStress.run(closing, 500, 5000);
+        assertEquals("Every round should run", 500L, closed.rounds);
+        assertEquals("No invariant should break with close-and-drain: " + closed.firstFailure, 0L, closed.failures());
+        assertTrue("Consumer splits should be recorded", !closed.splits.isEmpty());
+        
+        ProducerConsumerStress.Config pill = new ProducerConsumerStress.Config("LINKED_BLOCKING",
+            () -> ItemQueue.Type.LINKED_BLOCKING.create(2), 2, 2, 4, 4, ProducerConsumerStress.Termination.PILL, true);
+        ProducerConsumerStress.Result pilled = ProducerConsumerStress.run(pill, 500, 5000);
+        assertEquals("No invariant should break with the poison pill: " + pilled.firstFailure, 0L, pilled.failures());
+        assertTrue("Report should list outcome frequencies", pilled.toString().contains("OK"));
+        
+        // A queue that silently drops every third item must be reported as LOST
+        ProducerConsumerStress.Config lossy = new ProducerConsumerStress.Config("LOSSY", () -> {
+            ItemQueue<String> delegate = ItemQueue.Type.LINKED_BLOCKING.create(16);
+            AtomicInteger puts = new AtomicInteger();
+            return new ItemQueue<String>() {
+                @Override
+                public void put(String item) throws InterruptedException {
+                    if (ProducerConsumerDemo.POISON_PILL.equals(item) || puts.incrementAndGet() % 3 != 0) {
+                        delegate.put(item);
+                    }
+                }
+                
+                @Override
+                public String take() throws InterruptedException {
+                    return delegate.take();
+                }
+                
+                @Override
+                public boolean offer(String item) {
+                    return delegate.offer(item);
+                }
+                
+                @Override
+                public String poll() {
+                    return delegate.poll();
+                }
+                
+                @Override
+                public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+                    return delegate.poll(timeout, unit);
+                }
+                
+                @Override
+                public int size() {
+                    return delegate.size();
+                }
+                
+                @Override
+                public int capacity() {
+                    return delegate.capacity();
+                }
+                
+                @Override
+                public void close() {
+                    delegate.close();
+                }
+                
+                @Override
+                public boolean isClosed() {
+                    return delegate.isClosed();
+                }
+            };
+        }, 1, 1, 4, 1, ProducerConsumerStress.Termination.PILL, false);
+        ProducerConsumerStress.Result lost = ProducerConsumerStress.run(lossy, 20, 5000);
+        assertEquals("Every lossy round should be flagged", 20L, lost.outcomes.get(ProducerConsumerStress.Outcome.LOST));
+        assertTrue("The first failure should be described", lost.firstFailure != null && lost.firstFailure.contains("lost"));
+    }
+    
+    /**
+     * Test 36: Verify a ring requested with one slot
+     * Tests: Regression for a single slot overwriting a published item, no loss under a racing producer
+     */
+    public static void testSingleSlotRingBuffer() throws InterruptedException {
+        for (ItemQueue.Type type : new ItemQueue.Type[] {
+                ItemQueue.Type.RING_SPSC, ItemQueue.Type.RING_MPSC, ItemQueue.Type.RING_MPMC}) {
+            ItemQueue<String> ring = type.create(1);
+            assertTrue(type + " should accept the first item", ring.offer("A"));
+            assertTrue(type + " should accept the second item", ring.offer("B"));
+            assertFalse(type + " should reject an item when full", ring.offer("C"));
+            assertEquals(type + " should keep the first item", "A", ring.poll());
+            assertEquals(type + " should keep the second item", "B", ring.poll());
+            
+            // A producer racing the consumer must not overwrite an item that was not taken yet
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20000; i++) {
+                        ring.put("Item-" + i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+            for (int i = 0; i < 20000; i++) {
+                String item = ring.poll(5, TimeUnit.SECONDS);
+                if (!("Item-" + i).equals(item)) {
+                    assertEquals(type + " should deliver every item in order", "Item-" + i, item);
+                    break;
+                }
+            }
+            producer.join(5000);
+            assertTrue(type + " should be empty afterwards", ring.poll() == null);
+        }
+    }
+    
+    /**
+     * Test 37: Verify completion tracking at large worker counts
+     * Tests: More than 65535 tracked producers, take()-mode consumers are woken by the close
+     */
+    public static void testCompletionAtScale() throws Exception {
+        ItemQueue<String> queue = ItemQueue.Type.LINKED_BLOCKING.create(1024);
+        PipelineCompletion<String> completion = new PipelineCompletion<>(queue);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        
+        // No poll interval: the consumers block in take() and rely on close() to wake them
+        List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ProducerConsumerDemo.Consumer consumer = new ProducerConsumerDemo.Consumer(queue, dest, "C" + i, new AtomicInteger())
+                .withSimulatedDelay(0, 0)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF));
+            consumers.add(new Thread(completion.trackConsumer(consumer)));
+        }
+        consumers.forEach(Thread::start);
+        
+        // Far beyond the 65535 parties a single Phaser can register
+        int producers = 70000;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < producers; i++) {
+            String item = "Item-" + i;
+            pool.submit(completion.trackProducer(() -> {
+                try {
+                    queue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        completion.awaitProducersAndClose();
+        pool.shutdown();
+        PipelineCompletion.Report<String> report = completion.awaitDrained(10, TimeUnit.SECONDS);
+        assertTrue("Consumers should notice the close and exit: " + report, report.drainedInTime);
+        assertEquals("Every item should be delivered", producers, dest.size());
+        for (Thread consumer : consumers) {
+            consumer.join(1000);
+            assertFalse("Consumer thread should have exited", consumer.isAlive());
+        }
+    }
+    
+    /**
+     * Test 38: Verify pipeline behaviour when a stage throws
+     * Tests: Failing items dropped and counted per stage, no hang when every item fails, error surfaced
+     */
+    public static void testPipelineStageFailure() throws InterruptedException {
+        List<String> source = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            source.add(i % 10 == 0 ? "bad-" + i : String.valueOf(i));
+        }
+        List<Object> dest = Collections.synchronizedList(new ArrayList<>());
+        Pipeline<String> pipeline = Pipeline.<String>builder()
+            .map("parse", Integer::parseInt).workers(2).capacity(4)
+            .map("format", n -> "Item-" + n).stateful()
+            .build(ItemSink.of(dest));
+        boolean surfaced = false;
+        try {
+            pipeline.start(source).awaitCompletion();
+        } catch (IllegalStateException e) {
+            surfaced = e.getCause() != null && e.getMessage().contains("parse");
+        }
+        assertTrue("awaitCompletion should report the failing stage", surfaced);
+        assertEquals("Every bad item should be counted", 10L, pipeline.failedItems());
+        assertEquals("Good items should still reach the sink", 90, dest.size());
+        assertEquals("Failures are charged to the parse stage", 10L, pipeline.stats().get(0).itemsFailed);
+        assertEquals("Later stages see no failures", 0L, pipeline.stats().get(1).itemsFailed);
+        
+        // A stage that throws on every item used to kill all its workers and block the feeder forever
+        Pipeline<String> broken = Pipeline.<String>builder()
+            .map("boom", item -> {
+                throw new IllegalArgumentException("cannot process " + item);
+            }).capacity(2)
+            .build(ItemSink.of(dest));
+        List<String> many = new ArrayList<>();
+        for (int i = 0; i < Pipeline.MAX_RECORDED_FAILURES + 50; i++) {
+            many.add("Item-" + i);
+        }
+        AtomicInteger outcome = new AtomicInteger();
+        Thread waiter = new Thread(() -> {
+            try {
+                broken.start(many).awaitCompletion();
+                outcome.set(1);
+            } catch (IllegalStateException e) {
+                outcome.set(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(10000);
+        assertFalse("A stage failing on every item must not hang the pipeline", waiter.isAlive());
+        assertEquals("The failure should be thrown from awaitCompletion", 2, outcome.get());
+        assertEquals("All failures counted", (long) many.size(), broken.failedItems());
+        assertEquals("Only the first failures are kept", Pipeline.MAX_RECORDED_FAILURES, broken.failures().size());
+        
+        // A feeder interrupted part way through the source must report the truncation, not finish quietly
+        List<Object> truncatedDest = Collections.synchronizedList(new ArrayList<>());
+        Pipeline<String> slow = Pipeline.<String>builder()
+            .map("slow", item -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                return item;
+            }).capacity(2)
+            .build(ItemSink.of(truncatedDest));
+        Iterable<String> interrupting = () -> many.stream()
+            .peek(item -> {
+                if (item.equals("Item-5")) {
+                    Thread.currentThread().interrupt();
+                }
+            })
+            .iterator();
+        boolean reported = false;
+        try {
+            slow.start(interrupting).awaitCompletion();
+        } catch (IllegalStateException e) {
+            reported = e.getMessage().contains("source");
+        }
+        assertTrue("An interrupted source should be reported as a failure", reported);
+        assertTrue("Only part of the source should have been fed", truncatedDest.size() < many.size());
+    }
+    
+    /**
+     * Test 39: Verify a drain deadline on a partitioned router
+     * Tests: awaitDrained on the router collects leftovers from every partition, nothing lost or duplicated
+     */
+    public static void testPartitionedDrainTimeout() throws InterruptedException {
+        PartitionedQueues<String> partitioned = new PartitionedQueues<>(ItemQueue.Type.LINKED_BLOCKING, 16, 3,
+            Function.identity(), PartitionedQueues.Routing.MODULO);
+        ProducerQueue<String> router = partitioned.router();
+        for (int i = 1; i <= 30; i++) {
+            router.put("Item-" + i);
+        }
+        assertEquals("Size spans the partitions", 30, partitioned.size());
+        
+        PipelineCompletion<String> completion = new PipelineCompletion<String>(router, partitioned::drainTo);
+        List<String> dest = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger consumed = new AtomicInteger(0);
+        // Only partition 0 has a consumer, and it is slow; the other partitions are left full
+        Thread consumer = new Thread(completion.trackConsumer(
+            new ProducerConsumerDemo.Consumer(partitioned.partition(0), dest, "Slow", consumed)
+                .withSimulatedDelay(100, 100)
+                .withPollInterval(10)
+                .withEventLog(EventLog.direct(EventLog.Level.OFF))));
+        consumer.start();
+        
+        completion.awaitProducersAndClose();
+        PipelineCompletion.Report<String> report = completion.awaitDrained(150, TimeUnit.MILLISECONDS);
+        consumer.join(5000);
+        
+        assertFalse("Slow consumer should miss the deadline", report.drainedInTime);
+        assertTrue("Unconsumed partitions should be reported", report.undelivered.size() > 20);
+        assertEquals("Every item is either delivered or reported", 30, consumed.get() + report.undelivered.size());
+        Set<String> seen = new HashSet<>(dest);
+        seen.addAll(report.undelivered);
+        assertEquals("No item delivered and reported twice", 30, seen.size());
+        assertTrue("Router is closed once every partition is", router.isClosed());
+        assertTrue("Partitions are drained once every one is", partitioned.isDrained());
+        assertEquals("Nothing left to sweep", 0, partitioned.drainTo(new ArrayList<>(), Integer.MAX_VALUE));
+    }
 }
@@ -0,0 +1,28 @@
+import java.util.List;
+
+/**Producer-side view of a queue: put items in and close it when done
+Producer needs nothing more, so it accepts any ProducerQueue. Every ItemQueue is one;
+PartitionedQueues.router() hands out only this side, since items are taken from the
+individual partitions rather than from the router.
+*/
+
+public interface ProducerQueue<T> {
+
+    // Inserts item, waiting for space if the queue is full
+    void put(T item) throws InterruptedException;
+
+    // Inserts item if space is available, returns false otherwise
+    boolean offer(T item);
+
+    // Inserts every item in order; BatchedQueue carries the whole list as one entry
+    default void putBatch(List<T> items) throws InterruptedException {
+        for (T item : items) {
+            put(item);
+        }
+    }
+
+    // Rejects further puts and wakes every waiting take; items already queued can still be taken until the queue is drained
+    void close();
+
+    boolean isClosed();
+}
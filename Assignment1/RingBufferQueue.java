@@ -0,0 +1,226 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**Pre-allocated, array-backed bounded ring buffer
+Each slot carries a sequence number; producers and consumers claim positions
+with a CAS on their cursor and publish through the slot sequence, so no locks
+are taken and no nodes are allocated per item.
+Single-producer / single-consumer sides skip the CAS and advance with a plain ordered write.
+A blocked put/take retries according to its WaitStrategy; with a parking strategy every
+offer raises notEmpty and every poll raises notFull, so parked waiters wake on the handoff.
+*/
+
+public class RingBufferQueue<T> implements ItemQueue<T> {
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final boolean singleProducer;
+    private final boolean singleConsumer;
+    private final WaitStrategy waitStrategy;
+    private final boolean signalling;
+    private final WaitStrategy.Signal notEmpty = new WaitStrategy.Signal();
+    private final WaitStrategy.Signal notFull = new WaitStrategy.Signal();
+
+    // Cursors live on separate cache lines so producers and consumers do not false-share
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private volatile boolean closed;
+
+    private RingBufferQueue(int requestedCapacity, boolean singleProducer, boolean singleConsumer,
+                            WaitStrategy waitStrategy) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + requestedCapacity);
+        }
+        // Round up to a power of two so slot index is a mask instead of a modulo; a single
+        // slot cannot tell "published" from "free for the next lap", so at least two are used
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity));
+        if (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+        this.buffer = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = capacity - 1;
+        this.singleProducer = singleProducer;
+        this.singleConsumer = singleConsumer;
+        this.waitStrategy = waitStrategy;
+        this.signalling = waitStrategy.parks();
+    }
+
+    // One producer thread, one consumer thread
+    public static <T> RingBufferQueue<T> spsc(int capacity) {
+        return spsc(capacity, WaitStrategy.SPIN_THEN_PARK);
+    }
+
+    public static <T> RingBufferQueue<T> spsc(int capacity, WaitStrategy waitStrategy) {
+        return new RingBufferQueue<>(capacity, true, true, waitStrategy);
+    }
+
+    // Many producer threads, one consumer thread
+    public static <T> RingBufferQueue<T> mpsc(int capacity) {
+        return mpsc(capacity, WaitStrategy.SPIN_THEN_PARK);
+    }
+
+    public static <T> RingBufferQueue<T> mpsc(int capacity, WaitStrategy waitStrategy) {
+        return new RingBufferQueue<>(capacity, false, true, waitStrategy);
+    }
+
+    // Many producer threads, many consumer threads
+    public static <T> RingBufferQueue<T> mpmc(int capacity) {
+        return mpmc(capacity, WaitStrategy.SPIN_THEN_PARK);
+    }
+
+    public static <T> RingBufferQueue<T> mpmc(int capacity, WaitStrategy waitStrategy) {
+        return new RingBufferQueue<>(capacity, false, false, waitStrategy);
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException("RingBufferQueue does not accept null items");
+        }
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (singleProducer) {
+                    tail.lazySet(position + 1);
+                    break;
+                }
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // Slot still holds an unconsumed item: queue is full
+            } else {
+                position = tail.get();
+            }
+        }
+        int index = (int) position & mask;
+        buffer[index] = item;
+        sequences.lazySet(index, position + 1); // Publish to consumers
+        if (signalling) {
+            notEmpty.signalAll();
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (singleConsumer) {
+                    head.lazySet(position + 1);
+                    break;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; // Slot not yet published: queue is empty
+            } else {
+                position = head.get();
+            }
+        }
+        int index = (int) position & mask;
+        T item = (T) buffer[index];
+        buffer[index] = null;
+        sequences.lazySet(index, position + mask + 1); // Hand the slot back to producers
+        if (signalling) {
+            notFull.signalAll();
+        }
+        return item;
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(item)) {
+            waitStrategy.idle(attempt++, notFull, this::hasRoom);
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        int attempt = 0;
+        T item;
+        while ((item = poll()) == null) {
+            if (closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        T item;
+        while ((item = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0 || closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        // Read head first so a concurrent take cannot make the difference negative
+        long consumed = head.get();
+        long produced = tail.get();
+        long size = produced - consumed;
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    @Override
+    public int capacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Waiters of every strategy recheck closed; only parked ones need waking
+        notEmpty.signalAll();
+        notFull.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Wake conditions rechecked by a parked waiter after it registers with the signal
+    private boolean hasItem() {
+        return !isEmpty() || closed;
+    }
+
+    private boolean hasRoom() {
+        return size() < buffer.length || closed;
+    }
+
+    // AtomicLong followed by enough padding to keep the next cursor off its cache line
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**Inter-process ring buffer in a memory-mapped file (on /dev/shm when available)
+Same slot-sequence algorithm as RingBufferQueue, but the cursors, slot sequences and item
+bytes live in a shared mapping, so Producer and Consumer can run in separate JVMs on one
+host and hand items over through memory, without sockets or a serialization framework.
+Cursors and sequences are read and written with acquire/release and CAS through a
+VarHandle view of the mapped buffer; each cursor sits on its own cache line.
+File layout: header (magic, capacity, slot size), tail, head and closed flag on separate
+64-byte lines, then capacity slots of [long sequence][int length][UTF-8 bytes].
+Blocked put/take poll with WaitStrategy.idle(attempt): the other side may be in another
+process, where nothing in this JVM can unpark it, so BUSY_SPIN suits latency-critical use.
+create() replaces any earlier file at the path: it first marks the old header RETIRED, then
+unlinks it. A process still attached to the old file (an open() that found a stale file
+left by an earlier run) sees the mark on its next operation and moves to the new file
+instead of waiting forever on an unlinked one; items left in the old file are dropped.
+*/
+
+public class SharedMemoryQueue implements ItemQueue<String> {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int MAGIC = 0x50435131; // "PCQ1"
+    private static final int RETIRED = 0x50435158; // "PCQX": replaced by a later create()
+    private static final int CACHE_LINE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int SLOT_BYTES_OFFSET = 8;
+    private static final int TAIL_OFFSET = CACHE_LINE;
+    private static final int HEAD_OFFSET = CACHE_LINE * 2;
+    private static final int CLOSED_OFFSET = CACHE_LINE * 3;
+    private static final int SLOTS_OFFSET = CACHE_LINE * 4;
+    private static final int SLOT_HEADER = Long.BYTES + Integer.BYTES;
+
+    private final Path path;
+    // Swapped for the new file's mapping once create() retires the one in use
+    private volatile Mapping mapping;
+    private WaitStrategy waitStrategy = WaitStrategy.SPIN_THEN_PARK;
+
+    private SharedMemoryQueue(Path path, Mapping mapping) {
+        this.path = path;
+        this.mapping = mapping;
+    }
+
+    // Creates the queue file, retiring any earlier one; capacity rounds up to a power of two, maxItemBytes bounds each UTF-8 item
+    public static SharedMemoryQueue create(Path path, int requestedCapacity, int maxItemBytes) {
+        if (requestedCapacity < 1 || maxItemBytes < 1) {
+            throw new IllegalArgumentException("capacity and maxItemBytes must be positive");
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity));
+        if (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+        int slotBytes = (SLOT_HEADER + maxItemBytes + Long.BYTES - 1) & -Long.BYTES;
+        long fileBytes = SLOTS_OFFSET + (long) capacity * slotBytes;
+        if (fileBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Queue of " + fileBytes + " bytes is too large to map");
+        }
+        try {
+            Mapping old = attach(path);
+            if (old != null) {
+                INTS.setRelease(old.buffer, MAGIC_OFFSET, RETIRED);
+            }
+            Files.deleteIfExists(path);
+            MappedByteBuffer buffer = map(path, fileBytes);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(SLOT_BYTES_OFFSET, slotBytes);
+            for (int i = 0; i < capacity; i++) {
+                LONGS.setRelease(buffer, SLOTS_OFFSET + i * slotBytes, (long) i);
+            }
+            // Magic last: openers wait for it before trusting the header
+            INTS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+            return new SharedMemoryQueue(path, new Mapping(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create shared queue " + path, e);
+        }
+    }
+
+    // Attaches to a queue another process created, waiting up to timeoutMillis for it to appear
+    public static SharedMemoryQueue open(Path path, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int attempt = 0;
+        while (true) {
+            Mapping mapping = attach(path);
+            if (mapping != null) {
+                return new SharedMemoryQueue(path, mapping);
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                throw new IllegalStateException("Shared queue not ready: " + path);
+            }
+            WaitStrategy.SPIN_THEN_PARK.idle(attempt++);
+        }
+    }
+
+    // /dev/shm/<name> on Linux (RAM-backed), the temp directory elsewhere
+    public static Path defaultPath(String name) {
+        Path shm = Paths.get("/dev/shm");
+        return (Files.isDirectory(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"))).resolve(name);
+    }
+
+    // BUSY_SPIN gives the lowest cross-process handoff latency when both sides have a core to themselves
+    public SharedMemoryQueue withWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    @Override
+    public boolean offer(String item) {
+        Mapping m = current();
+        if (m.isClosed()) {
+            throw new IllegalStateException("Queue is closed");
+        }
+        byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > m.slotBytes - SLOT_HEADER) {
+            throw new IllegalArgumentException("Item of " + bytes.length + " bytes exceeds the slot size");
+        }
+        if (m.isRetired()) {
+            return false; // The replacement file is not ready yet: wait as if full
+        }
+        MappedByteBuffer buffer = m.buffer;
+        long position = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+        while (true) {
+            long difference = m.sequence(position) - position;
+            if (difference == 0) {
+                if (LONGS.compareAndSet(buffer, TAIL_OFFSET, position, position + 1)) {
+                    break;
+                }
+                position = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+            } else if (difference < 0) {
+                return false; // Slot still holds an unconsumed item: queue is full
+            } else {
+                position = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+            }
+        }
+        int slot = m.slotOffset(position);
+        ByteBuffer view = buffer.duplicate();
+        view.position(slot + SLOT_HEADER);
+        view.put(bytes);
+        buffer.putInt(slot + Long.BYTES, bytes.length);
+        LONGS.setRelease(buffer, slot, position + 1); // Publish to consumers
+        return true;
+    }
+
+    @Override
+    public String poll() {
+        Mapping m = current();
+        if (m.isRetired()) {
+            return null;
+        }
+        MappedByteBuffer buffer = m.buffer;
+        long position = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+        while (true) {
+            long difference = m.sequence(position) - (position + 1);
+            if (difference == 0) {
+                if (LONGS.compareAndSet(buffer, HEAD_OFFSET, position, position + 1)) {
+                    break;
+                }
+                position = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+            } else if (difference < 0) {
+                return null; // Slot not yet published: queue is empty
+            } else {
+                position = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+            }
+        }
+        int slot = m.slotOffset(position);
+        byte[] bytes = new byte[buffer.getInt(slot + Long.BYTES)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(slot + SLOT_HEADER);
+        view.get(bytes);
+        LONGS.setRelease(buffer, slot, position + m.mask + 1); // Hand the slot back to producers
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void put(String item) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(item)) {
+            waitStrategy.idle(attempt++);
+        }
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        int attempt = 0;
+        String item;
+        while ((item = poll()) == null) {
+            if (isClosed() && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return item;
+    }
+
+    @Override
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        String item;
+        while ((item = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0 || isClosed() && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++);
+        }
+        return item;
+    }
+
+    @Override
+    public int size() {
+        Mapping m = current();
+        if (m.isRetired()) {
+            return 0;
+        }
+        long consumed = (long) LONGS.getVolatile(m.buffer, HEAD_OFFSET);
+        long produced = (long) LONGS.getVolatile(m.buffer, TAIL_OFFSET);
+        return (int) Math.max(0, Math.min(produced - consumed, m.capacity));
+    }
+
+    @Override
+    public int capacity() {
+        return current().capacity;
+    }
+
+    // Visible to every process attached to the file
+    @Override
+    public void close() {
+        LONGS.setRelease(current().buffer, CLOSED_OFFSET, 1L);
+    }
+
+    @Override
+    public boolean isClosed() {
+        Mapping m = current();
+        return !m.isRetired() && m.isClosed();
+    }
+
+    // Largest item, in UTF-8 bytes, a slot can hold
+    public int maxItemBytes() {
+        return current().slotBytes - SLOT_HEADER;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    // Removes the file; processes still attached keep their mapping until they exit
+    public void unlink() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete shared queue " + path, e);
+        }
+    }
+
+    // The mapping in use, moving to the file now at the path once create() has retired it;
+    // stays on the retired mapping until the replacement is ready
+    private Mapping current() {
+        Mapping current = mapping;
+        if (current.isRetired()) {
+            Mapping replacement = attach(path);
+            if (replacement != null) {
+                mapping = replacement;
+                return replacement;
+            }
+        }
+        return current;
+    }
+
+    // Maps the queue file at path if one is fully created there, or returns null
+    private static Mapping attach(Path path) {
+        try {
+            long size = Files.size(path);
+            if (size >= SLOTS_OFFSET) {
+                MappedByteBuffer buffer = map(path, size);
+                if ((int) INTS.getAcquire(buffer, MAGIC_OFFSET) == MAGIC) {
+                    return new Mapping(buffer);
+                }
+            }
+        } catch (IOException e) {
+            // Not created yet
+        }
+        return null;
+    }
+
+    private static MappedByteBuffer map(Path path, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    //One mapped queue file, with the geometry its header was created with
+    private static final class Mapping {
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int mask;
+        final int slotBytes;
+
+        Mapping(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = buffer.getInt(CAPACITY_OFFSET);
+            this.mask = capacity - 1;
+            this.slotBytes = buffer.getInt(SLOT_BYTES_OFFSET);
+        }
+
+        boolean isRetired() {
+            return (int) INTS.getAcquire(buffer, MAGIC_OFFSET) == RETIRED;
+        }
+
+        boolean isClosed() {
+            return (long) LONGS.getAcquire(buffer, CLOSED_OFFSET) != 0;
+        }
+
+        long sequence(long position) {
+            return (long) LONGS.getAcquire(buffer, slotOffset(position));
+        }
+
+        int slotOffset(long position) {
+            return SLOTS_OFFSET + ((int) position & mask) * slotBytes;
+        }
+    }
+}
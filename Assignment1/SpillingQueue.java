@@ -0,0 +1,362 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**Bounded in-memory queue that overflows to a memory-mapped, segment-rolled log
+Items go to an in-memory ring while it has room; once it is full they are appended to
+fixed-size mapped segment files instead, so producers keep going while consumers lag and
+heap use stays bounded by the ring. Consumers drain the ring first and then the log, and
+nothing new enters the ring until the log is empty, so items come out in FIFO order.
+Each segment records how far it has been read, so reopening a directory with recover=true
+picks up spilled items a crashed process never consumed (items still in the ring are lost).
+Segment layout: [long read offset][int length, UTF-8 bytes]... ending at a zero length
+(not yet written) or -1 (writer rolled to the next segment).
+With a parking wait strategy, consumers park on a notEmpty signal raised by every offer;
+producers only wait when maxSegments of disk are full, on a notFull signal raised by every poll.
+*/
+
+public class SpillingQueue implements ItemQueue<String> {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 1 << 20;
+
+    private static final int HEADER_BYTES = Long.BYTES;
+    private static final int SEGMENT_END = -1;
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".log";
+
+    private final ItemQueue<String> memory;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private WaitStrategy waitStrategy = WaitStrategy.SPIN_THEN_PARK;
+    private final WaitStrategy.Signal notEmpty = new WaitStrategy.Signal();
+    private final WaitStrategy.Signal notFull = new WaitStrategy.Signal();
+
+    // Spill state, guarded by this
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment writeSegment;
+    private int writePosition;
+    private int readPosition;
+    private long nextSegmentNumber;
+    private long spilledTotal;
+
+    // Items in the log; read without the lock on the put fast path
+    private volatile long spilled;
+    private volatile boolean closed;
+
+    // Opens a spilling queue over directory; maxSegments bounds disk use (0 for unbounded)
+    public SpillingQueue(int memoryCapacity, Path directory, int segmentBytes, int maxSegments, boolean recover) {
+        if (segmentBytes < HEADER_BYTES + Integer.BYTES * 2) {
+            throw new IllegalArgumentException("segmentBytes too small: " + segmentBytes);
+        }
+        this.memory = RingBufferQueue.mpmc(memoryCapacity);
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+            if (recover) {
+                recoverSegments();
+            } else {
+                deleteSegments();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open spill directory " + directory, e);
+        }
+    }
+
+    public SpillingQueue(int memoryCapacity, Path directory) {
+        this(memoryCapacity, directory, DEFAULT_SEGMENT_BYTES, 0, false);
+    }
+
+    // How take() waits on an empty queue and put() on a full disk budget
+    public SpillingQueue withWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    @Override
+    public void put(String item) throws InterruptedException {
+        int attempt = 0;
+        while (true) {
+            // Only a read from the log can make room in a full disk budget
+            long seen = spilled;
+            if (offer(item)) {
+                return;
+            }
+            waitStrategy.idle(attempt++, notFull, () -> closed || spilled != seen);
+        }
+    }
+
+    // Never waits: the item goes to the ring, or to the log when the ring is full or the log is not empty
+    @Override
+    public boolean offer(String item) {
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+        if (!store(item)) {
+            return false;
+        }
+        if (waitStrategy.parks()) {
+            notEmpty.signalAll();
+        }
+        return true;
+    }
+
+    private boolean store(String item) {
+        if (spilled == 0 && memory.offer(item)) {
+            return true;
+        }
+        synchronized (this) {
+            // Recheck under the lock: the log may have drained since the fast path
+            if (spilled == 0 && memory.offer(item)) {
+                return true;
+            }
+            return append(item.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String take() throws InterruptedException {
+        int attempt = 0;
+        String item;
+        while ((item = poll()) == null) {
+            if (closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public String poll() {
+        String item = next();
+        if (item != null && maxSegments > 0 && waitStrategy.parks()) {
+            // Only a bounded log can make producers wait
+            notFull.signalAll();
+        }
+        return item;
+    }
+
+    private String next() {
+        String item = memory.poll();
+        if (item != null || spilled == 0) {
+            return item;
+        }
+        synchronized (this) {
+            // The ring only holds items older than the log, so it always goes first
+            item = memory.poll();
+            return item != null ? item : readNext();
+        }
+    }
+
+    @Override
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        String item;
+        while ((item = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0 || closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    // Items in memory plus items in the log
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, memory.size() + spilled);
+    }
+
+    // In-memory bound; the log holds everything beyond it
+    @Override
+    public int capacity() {
+        return memory.capacity();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        notEmpty.signalAll();
+        notFull.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Items currently in the log
+    public long spilledItems() {
+        return spilled;
+    }
+
+    // Items that have ever overflowed to the log
+    public synchronized long spilledTotal() {
+        return spilledTotal;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    // Drops the mappings; unread items stay on disk for a later recover=true open
+    public synchronized void release() {
+        segments.clear();
+        writeSegment = null;
+    }
+
+    // Wake conditions rechecked by a parked waiter after it registers with the signal
+    private boolean hasItem() {
+        return !isEmpty() || closed;
+    }
+
+    // Writes one record, rolling to a new segment when the current one is full; caller holds the lock
+    private boolean append(byte[] bytes) {
+        int recordBytes = Integer.BYTES + bytes.length;
+        if (recordBytes > segmentBytes - HEADER_BYTES - Integer.BYTES) {
+            throw new IllegalArgumentException("Item of " + bytes.length + " bytes does not fit in a segment");
+        }
+        if (writeSegment == null || writePosition + recordBytes + Integer.BYTES > segmentBytes) {
+            if (maxSegments > 0 && segments.size() >= maxSegments) {
+                return false;
+            }
+            if (writeSegment != null) {
+                writeSegment.buffer.putInt(writePosition, SEGMENT_END);
+            }
+            writeSegment = newSegment();
+            writePosition = HEADER_BYTES;
+            if (segments.size() == 1) {
+                readPosition = HEADER_BYTES;
+            }
+        }
+        ByteBuffer view = writeSegment.buffer.duplicate();
+        view.position(writePosition + Integer.BYTES);
+        view.put(bytes);
+        // Length last, so a crash mid-record leaves a zero length that recovery treats as the end
+        writeSegment.buffer.putInt(writePosition, bytes.length);
+        writePosition += recordBytes;
+        spilledTotal++;
+        spilled++;
+        return true;
+    }
+
+    // Reads the oldest record, deleting segments once they are fully read; caller holds the lock
+    private String readNext() {
+        while (!segments.isEmpty()) {
+            Segment segment = segments.get(0);
+            int length = readPosition + Integer.BYTES <= segmentBytes ? segment.buffer.getInt(readPosition) : SEGMENT_END;
+            if (length > 0) {
+                byte[] bytes = new byte[length];
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(readPosition + Integer.BYTES);
+                view.get(bytes);
+                readPosition += Integer.BYTES + length;
+                segment.buffer.putLong(0, readPosition);
+                spilled--;
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (segment == writeSegment) {
+                return null; // Caught up with the writer
+            }
+            // End marker, or a record a crash cut short: move on to the next segment
+            segments.remove(0);
+            deleteQuietly(segment.path);
+            readPosition = segments.isEmpty() ? HEADER_BYTES : (int) segments.get(0).buffer.getLong(0);
+        }
+        return null;
+    }
+
+    private Segment newSegment() {
+        Path path = directory.resolve(String.format("%s%012d%s", PREFIX, nextSegmentNumber++, SUFFIX));
+        try {
+            Segment segment = new Segment(path, map(path));
+            segment.buffer.putLong(0, HEADER_BYTES);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create spill segment " + path, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    // Re-maps existing segments, counting unread records and finding where the writer stopped
+    private void recoverSegments() throws IOException {
+        for (Path path : segmentFiles()) {
+            Segment segment = new Segment(path, map(path));
+            segments.add(segment);
+            long number = Long.parseLong(path.getFileName().toString()
+                .substring(PREFIX.length(), path.getFileName().toString().length() - SUFFIX.length()));
+            nextSegmentNumber = Math.max(nextSegmentNumber, number + 1);
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        readPosition = (int) segments.get(0).buffer.getLong(0);
+        for (Segment segment : segments) {
+            int position = (int) segment.buffer.getLong(0);
+            int length;
+            while (position + Integer.BYTES <= segmentBytes && (length = segment.buffer.getInt(position)) > 0) {
+                position += Integer.BYTES + length;
+                spilled++;
+            }
+            writeSegment = segment;
+            writePosition = position;
+        }
+        spilledTotal = spilled;
+    }
+
+    private void deleteSegments() throws IOException {
+        for (Path path : segmentFiles()) {
+            Files.delete(path);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // A leftover fully-read segment is skipped on recovery because its read offset is at the end
+        }
+    }
+
+    // One mapped segment file
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
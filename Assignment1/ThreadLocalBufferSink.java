@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**Sink that gives every consumer thread its own buffer
+Adds only touch the calling thread's buffer, so consumers never contend with each other.
+Buffers are merged into the target list when a consumer flushes on completion,
+or for all threads at once through mergeAll(). A flush also unregisters the thread's
+buffer, so pooled or short-lived threads do not leave buffers behind; a thread that
+adds again after flushing simply gets a new one.
+*/
+
+public class ThreadLocalBufferSink<T> implements ItemSink<T> {
+
+    private final List<T> target;
+    private final ConcurrentLinkedQueue<Buffer<T>> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer<T>> localBuffer = ThreadLocal.withInitial(this::registerBuffer);
+    // Striped, so counting does not bring back the contention the per-thread buffers avoid
+    private final LongAdder added = new LongAdder();
+
+    public ThreadLocalBufferSink(List<T> target) {
+        this.target = target;
+    }
+
+    @Override
+    public void add(T item) {
+        localBuffer.get().add(item);
+        added.increment();
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> items) {
+        localBuffer.get().addAll(items);
+        added.add(items.size());
+    }
+
+    // Merges the calling thread's buffer into the target and unregisters it
+    @Override
+    public void flush() {
+        Buffer<T> buffer = localBuffer.get();
+        buffer.drainInto(target);
+        buffers.remove(buffer);
+        localBuffer.remove();
+    }
+
+    // Merges every thread's buffer into the target; safe to call while consumers are still running
+    public void mergeAll() {
+        for (Buffer<T> buffer : buffers) {
+            buffer.drainInto(target);
+        }
+    }
+
+    @Override
+    public void flushAll() {
+        mergeAll();
+    }
+
+    // Items added through this sink (the target's own earlier contents are not counted); each add
+    // is counted once it returns, whether its item is still buffered or already merged
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, added.sum());
+    }
+
+    // Buffers currently registered, one per thread that added since its last flush
+    int bufferCount() {
+        return buffers.size();
+    }
+
+    private Buffer<T> registerBuffer() {
+        Buffer<T> buffer = new Buffer<>();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    // Per-thread buffer; its monitor is only contended while a merge is in progress
+    private static final class Buffer<T> {
+        private final List<T> items = new ArrayList<>();
+
+        synchronized void add(T item) {
+            items.add(item);
+        }
+
+        synchronized void addAll(Collection<? extends T> batch) {
+            items.addAll(batch);
+        }
+
+        synchronized int size() {
+            return items.size();
+        }
+
+        synchronized void drainInto(List<T> target) {
+            if (items.isEmpty()) {
+                return;
+            }
+            synchronized (target) {
+                target.addAll(items);
+            }
+            items.clear();
+        }
+    }
+}
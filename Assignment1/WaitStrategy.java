@@ -0,0 +1,133 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**How a blocked put/take waits before retrying
+Trades CPU for handoff latency: BUSY_SPIN keeps a core hot and reacts in nanoseconds,
+TIMED_PARK gives the core back immediately at the cost of a scheduler wakeup per handoff.
+The queues call idle(attempt, signal, ready) after each failed attempt, with attempt counting
+from 0, so the staged strategies escalate the longer a thread has been waiting.
+Parking is signalled: a parked thread waits on the queue's Signal for the side it needs
+(an item for a taker, a free slot for a putter), and the queue raises that signal when it
+makes progress, so a parked waiter wakes as soon as the handoff is possible. The park still
+times out after parkNanos, doubling from PARK_NANOS to MAX_PARK_NANOS, as a backstop for
+items that reach the underlying storage without passing the signalling queue.
+idle(attempt) without a signal only polls; SharedMemoryQueue uses it because a waiter in
+another process cannot be woken from this one.
+*/
+
+public enum WaitStrategy {
+    // Never yields the core; for latency-critical lanes pinned to dedicated cores
+    BUSY_SPIN,
+    // Spins briefly, then yields to other runnable threads
+    SPIN_THEN_YIELD,
+    // Spins, yields, then parks until signalled (the default)
+    SPIN_THEN_PARK,
+    // Parks straight away until signalled; for bulk lanes where CPU matters more than latency
+    TIMED_PARK;
+
+    static final int SPIN_TRIES = 100;
+    static final int YIELD_TRIES = 100;
+    static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // True if this strategy ever parks, so queues using it must raise their signals
+    public boolean parks() {
+        return this == SPIN_THEN_PARK || this == TIMED_PARK;
+    }
+
+    // Waits once; park stages wait on signal and return early once ready holds or the signal is raised
+    public void idle(int attempt, Signal signal, BooleanSupplier ready) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        int parks = parksSoFar(attempt);
+        if (parks < 0) {
+            spinOrYield(attempt);
+        } else {
+            signal.await(ready, parkNanos(parks));
+        }
+    }
+
+    // Waits once without a signal to wake it; parks simply time out
+    public void idle(int attempt) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        int parks = parksSoFar(attempt);
+        if (parks < 0) {
+            spinOrYield(attempt);
+        } else {
+            LockSupport.parkNanos(parkNanos(parks));
+        }
+    }
+
+    // Park time for the given number of earlier parks: doubles from PARK_NANOS up to MAX_PARK_NANOS
+    static long parkNanos(int parks) {
+        return Math.min(MAX_PARK_NANOS, PARK_NANOS << Math.min(parks, 16));
+    }
+
+    // Number of parks before this attempt, or -1 while the strategy is still spinning or yielding
+    private int parksSoFar(int attempt) {
+        switch (this) {
+            case BUSY_SPIN:
+            case SPIN_THEN_YIELD:
+                return -1;
+            case SPIN_THEN_PARK:
+                return attempt < SPIN_TRIES + YIELD_TRIES ? -1 : attempt - SPIN_TRIES - YIELD_TRIES;
+            case TIMED_PARK:
+                return attempt;
+            default:
+                throw new IllegalStateException("Unknown wait strategy: " + this);
+        }
+    }
+
+    private void spinOrYield(int attempt) {
+        if (this == BUSY_SPIN || attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    //Wakes the threads parked for one kind of progress, such as "not empty" or "not full"
+    // Raising it costs a fence and a volatile read while nobody is parked, and a lock only when someone is
+    public static final class Signal {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private volatile int waiters;
+
+        // Wakes every parked waiter; call after the change that makes them ready is visible
+        public void signalAll() {
+            // Orders that change before the waiter count read, pairing with the waiter's count write before its recheck
+            VarHandle.fullFence();
+            if (waiters == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Parks up to nanos unless ready already holds once registered, so a signal raised
+        // between the caller's failed attempt and this park is not lost
+        void await(BooleanSupplier ready, long nanos) throws InterruptedException {
+            lock.lock();
+            try {
+                waiters++;
+                if (!ready.getAsBoolean()) {
+                    condition.awaitNanos(nanos);
+                }
+            } finally {
+                waiters--;
+                lock.unlock();
+            }
+        }
+    }
+}
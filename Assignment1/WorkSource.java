@@ -0,0 +1,191 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**Shared source that producers claim work from in chunks
+Instead of each producer getting a fixed slice up front, every producer repeatedly claims
+the next chunk, so a slow producer simply claims fewer chunks and all finish at about the
+same time. Only the claimed chunks are ever in memory, so a generator or a file larger
+than the heap streams through.
+Sources with a known size hand out shrinking (guided) chunks: large while plenty of work
+is left, down to single items at the end. Iterator and file sources use a fixed chunk size.
+A source is AutoCloseable: a file source holds its reader open until the last chunk is
+claimed, so when producers stop early the owner closes it, usually by handing it to
+PipelineCompletion.withSource so it closes once every producer has stopped.
+*/
+
+public interface WorkSource<T> extends AutoCloseable {
+
+    // Largest chunk a sized source hands out, bounding what one slow producer can hold back
+    int MAX_CHUNK = 64;
+    // A sized source aims for this many chunks per producer over what is left
+    int GUIDED_FACTOR = 2;
+
+    // Next chunk for the calling producer, or null once the source is exhausted
+    default List<T> claim() {
+        Chunk<T> chunk = claimChunk();
+        return chunk == null ? null : chunk.items;
+    }
+
+    // As claim(), together with the source index of the chunk's first item
+    Chunk<T> claimChunk();
+
+    // Items handed out so far
+    long claimedItems();
+
+    // Releases anything held open, such as a file source's reader; later claims return null
+    @Override
+    default void close() {
+    }
+
+    // Claims over an existing list without copying it; parallelism is the number of producers sharing it
+    static <T> WorkSource<T> of(List<T> items, int parallelism) {
+        return new Sized<>(items.size(), index -> items.get((int) index), parallelism);
+    }
+
+    // Items generated on demand from their index, so the source never exists as a whole
+    static <T> WorkSource<T> generate(long count, LongFunction<T> generator, int parallelism) {
+        return new Sized<>(count, generator, parallelism);
+    }
+
+    // Claims chunkSize items at a time from an iterator (for example a Spliterator or stream's iterator)
+    static <T> WorkSource<T> of(Iterator<T> items, int chunkSize) {
+        return new Streaming<>(items, chunkSize, null);
+    }
+
+    // Streams the lines of a UTF-8 file; the file is closed once the last chunk is claimed, or on close()
+    static WorkSource<String> lines(Path file, int chunkSize) {
+        try {
+            BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            return new Streaming<>(reader.lines().iterator(), chunkSize, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open work source " + file, e);
+        }
+    }
+
+    //A claimed chunk; item i of it is item start + i of the source
+    final class Chunk<T> {
+        public final long start;
+        public final List<T> items;
+
+        Chunk(long start, List<T> items) {
+            this.start = start;
+            this.items = items;
+        }
+    }
+
+    //Index-addressed source; chunks are claimed with a CAS on the cursor
+    final class Sized<T> implements WorkSource<T> {
+        private final long size;
+        private final LongFunction<T> generator;
+        private final int parallelism;
+        private final AtomicLong cursor = new AtomicLong();
+
+        Sized(long size, LongFunction<T> generator, int parallelism) {
+            if (size < 0 || parallelism < 1) {
+                throw new IllegalArgumentException("size must be >= 0 and parallelism >= 1");
+            }
+            this.size = size;
+            this.generator = generator;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public Chunk<T> claimChunk() {
+            long start;
+            long end;
+            do {
+                start = cursor.get();
+                if (start >= size) {
+                    return null;
+                }
+                long chunk = (size - start) / ((long) GUIDED_FACTOR * parallelism);
+                end = start + Math.max(1, Math.min(MAX_CHUNK, chunk));
+            } while (!cursor.compareAndSet(start, end));
+            List<T> items = new ArrayList<>((int) (end - start));
+            for (long index = start; index < end; index++) {
+                items.add(generator.apply(index));
+            }
+            return new Chunk<>(start, items);
+        }
+
+        @Override
+        public long claimedItems() {
+            return Math.min(cursor.get(), size);
+        }
+    }
+
+    //Iterator-backed source of unknown length; the iterator is only touched under this monitor
+    final class Streaming<T> implements WorkSource<T> {
+        private final Iterator<T> items;
+        private final int chunkSize;
+        private final AutoCloseable resource;
+        private long claimed;
+        private boolean exhausted;
+
+        Streaming(Iterator<T> items, int chunkSize, AutoCloseable resource) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be >= 1: " + chunkSize);
+            }
+            this.items = items;
+            this.chunkSize = chunkSize;
+            this.resource = resource;
+        }
+
+        @Override
+        public synchronized Chunk<T> claimChunk() {
+            if (exhausted) {
+                return null;
+            }
+            List<T> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize) {
+                if (!items.hasNext()) {
+                    // Later claims must not touch the iterator: a file source's reader is closed here
+                    exhausted = true;
+                    release();
+                    break;
+                }
+                chunk.add(items.next());
+            }
+            if (chunk.isEmpty()) {
+                return null;
+            }
+            long start = claimed;
+            claimed += chunk.size();
+            return new Chunk<>(start, chunk);
+        }
+
+        @Override
+        public synchronized long claimedItems() {
+            return claimed;
+        }
+
+        // Unclaimed items are abandoned; the resource is released unless exhaustion already did
+        @Override
+        public synchronized void close() {
+            if (!exhausted) {
+                exhausted = true;
+                release();
+            }
+        }
+
+        private void release() {
+            if (resource == null) {
+                return;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot close work source", e);
+            }
+        }
+    }
+}
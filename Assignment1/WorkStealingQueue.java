@@ -0,0 +1,291 @@
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**Work-stealing multi-queue topology behind the ItemQueue interface
+Instead of one shared queue, each consumer thread owns a local deque (a lane). Producers
+spread items over the lanes round-robin or to the least-loaded lane. Lanes are lock-free
+deques: items are pushed at the head and the owning consumer pops from the head, newest
+first, while an idle consumer steals the oldest item from the tail of another lane, as
+ForkJoinPool workers do, so owner and thief work at opposite ends. Contention is split
+across lanes and a consumer stuck on slow items does not strand the rest of its backlog.
+Consumers are bound to lanes on their first take, so more consumers than lanes share lanes
+and unowned lanes are simply stolen from.
+A consumer with nothing to pop or steal waits by its WaitStrategy; with a parking strategy
+every push raises one queue-wide notEmpty signal, so it wakes as soon as work lands on any lane.
+*/
+
+public class WorkStealingQueue<T> implements ItemQueue<T> {
+
+    // How producers pick a lane for each item
+    public enum Distribution { ROUND_ROBIN, LEAST_LOADED }
+
+    private final Lane<T>[] lanes;
+    private final int capacity;
+    private final Distribution distribution;
+    private final WaitStrategy waitStrategy;
+    private final boolean signalling;
+    private final WaitStrategy.Signal notEmpty = new WaitStrategy.Signal();
+    private final WaitStrategy.Signal notFull = new WaitStrategy.Signal();
+    private final AtomicInteger nextConsumerLane = new AtomicInteger();
+    private final ThreadLocal<int[]> consumerLane;
+    // Per-producer cursor so round-robin does not add a shared counter back in
+    private final ThreadLocal<int[]> producerCursor;
+    private final LongAdder steals = new LongAdder();
+    private volatile boolean closed;
+
+    public WorkStealingQueue(int capacity, int laneCount, Distribution distribution) {
+        this(capacity, laneCount, distribution, WaitStrategy.SPIN_THEN_PARK);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WorkStealingQueue(int capacity, int laneCount, Distribution distribution, WaitStrategy waitStrategy) {
+        if (capacity < 1 || laneCount < 1) {
+            throw new IllegalArgumentException("capacity and laneCount must be positive");
+        }
+        int perLane = Math.max(1, (capacity + laneCount - 1) / laneCount);
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane<>(perLane);
+        }
+        this.capacity = perLane * laneCount;
+        this.distribution = distribution;
+        this.waitStrategy = waitStrategy;
+        this.signalling = waitStrategy.parks();
+        this.consumerLane = ThreadLocal.withInitial(
+            () -> new int[] { Math.floorMod(nextConsumerLane.getAndIncrement(), laneCount) });
+        this.producerCursor = ThreadLocal.withInitial(
+            () -> new int[] { Math.floorMod(Thread.currentThread().hashCode(), laneCount) });
+    }
+
+    @Override
+    public void put(T item) throws InterruptedException {
+        int attempt = 0;
+        // Every lane is full: wait until an owner or a thief makes room on any of them
+        while (!offer(item)) {
+            waitStrategy.idle(attempt++, notFull, this::hasRoom);
+        }
+    }
+
+    @Override
+    public boolean offer(T item) {
+        checkOpen();
+        if (!offerFrom(targetLane(), item)) {
+            return false;
+        }
+        if (signalling) {
+            notEmpty.signalAll();
+        }
+        return true;
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        int attempt = 0;
+        T item;
+        // Each retry rescans every lane, since work may land on any of them
+        while ((item = poll()) == null) {
+            if (closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public T poll() {
+        T item = lanes[ownLane()].pop();
+        if (item == null) {
+            item = steal();
+        }
+        if (item != null && signalling) {
+            notFull.signalAll();
+        }
+        return item;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        T item;
+        while ((item = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0 || closed && isEmpty()) {
+                return null;
+            }
+            waitStrategy.idle(attempt++, notEmpty, this::hasItem);
+        }
+        return item;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int maxItems) {
+        Lane<T> own = lanes[ownLane()];
+        int drained = 0;
+        T item;
+        while (drained < maxItems && (item = own.pop()) != null) {
+            target.add(item);
+            drained++;
+        }
+        while (drained < maxItems && (item = steal()) != null) {
+            target.add(item);
+            drained++;
+        }
+        if (drained > 0 && signalling) {
+            notFull.signalAll();
+        }
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane<T> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        notEmpty.signalAll();
+        notFull.signalAll();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    // Items a consumer took from another consumer's lane
+    public long steals() {
+        return steals.sum();
+    }
+
+    private int ownLane() {
+        return consumerLane.get()[0];
+    }
+
+    private boolean hasItem() {
+        return !isEmpty() || closed;
+    }
+
+    private boolean hasRoom() {
+        return size() < capacity || closed;
+    }
+
+    // Takes the oldest item from the tail of the fullest other lane, away from where its owner pops
+    private T steal() {
+        int own = ownLane();
+        Lane<T> victim = null;
+        int victimSize = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            int size = lanes[i].size();
+            if (i != own && size > victimSize) {
+                victim = lanes[i];
+                victimSize = size;
+            }
+        }
+        T item = victim == null ? null : victim.steal();
+        if (item != null) {
+            steals.increment();
+        }
+        return item;
+    }
+
+    private int targetLane() {
+        if (distribution == Distribution.LEAST_LOADED) {
+            int best = 0;
+            int bestSize = Integer.MAX_VALUE;
+            for (int i = 0; i < lanes.length; i++) {
+                int size = lanes[i].size();
+                if (size < bestSize) {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+            return best;
+        }
+        int[] cursor = producerCursor.get();
+        int lane = cursor[0];
+        cursor[0] = lane + 1 == lanes.length ? 0 : lane + 1;
+        return lane;
+    }
+
+    // Tries the target lane, then the others in order, without waiting
+    private boolean offerFrom(int target, T item) {
+        for (int i = 0; i < lanes.length; i++) {
+            int lane = target + i < lanes.length ? target + i : target + i - lanes.length;
+            if (lanes[lane].push(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+    }
+
+    //One consumer's lane: a lock-free deque bounded by a count of reserved slots
+    // The count is raised before the push and lowered after the pop, so size() may briefly
+    // include an item still being pushed but never misses one that can be popped
+    private static final class Lane<T> {
+        private final ConcurrentLinkedDeque<T> items = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger count = new AtomicInteger();
+        private final int capacity;
+
+        Lane(int capacity) {
+            this.capacity = capacity;
+        }
+
+        // Pushes at the head unless the lane is full
+        boolean push(T item) {
+            int reserved;
+            do {
+                reserved = count.get();
+                if (reserved >= capacity) {
+                    return false;
+                }
+            } while (!count.compareAndSet(reserved, reserved + 1));
+            items.offerFirst(item);
+            return true;
+        }
+
+        // Owner side: the newest item, from the head
+        T pop() {
+            return removed(items.pollFirst());
+        }
+
+        // Thief side: the oldest item, from the tail
+        T steal() {
+            return removed(items.pollLast());
+        }
+
+        int size() {
+            return count.get();
+        }
+
+        private T removed(T item) {
+            if (item != null) {
+                count.decrementAndGet();
+            }
+            return item;
+        }
+    }
+}
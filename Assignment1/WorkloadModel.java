@@ -0,0 +1,85 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**Per-item work a Producer or Consumer performs
+Replaces the hard-coded random sleep so a run can model what the pipeline would really do:
+nothing (to measure the queue itself), CPU-bound work that occupies a core, a fixed
+latency such as a remote call, or service times drawn from a distribution.
+Sleeping models free the core while they wait; burning models keep it busy, which is what
+exposes the real saturation point of the workers.
+*/
+
+@FunctionalInterface
+public interface WorkloadModel {
+
+    // Performs, or waits out, the work for one item
+    void process() throws InterruptedException;
+
+    // No work at all
+    static WorkloadModel none() {
+        return () -> { };
+    }
+
+    // Keeps the calling core busy for nanos per item
+    static WorkloadModel cpuBurn(long nanos) {
+        return () -> Burn.spin(nanos);
+    }
+
+    // Waits nanos per item without using the core
+    static WorkloadModel fixedLatency(long nanos) {
+        return () -> Burn.park(nanos);
+    }
+
+    // The original simulation: sleeps a random time in [minMillis, maxMillis); (0, 0) is none()
+    static WorkloadModel uniformSleep(long minMillis, long maxMillis) {
+        if (maxMillis <= 0) {
+            return none();
+        }
+        return () -> Thread.sleep(minMillis >= maxMillis ? minMillis
+                                  : ThreadLocalRandom.current().nextLong(minMillis, maxMillis));
+    }
+
+    // Service time per item drawn from serviceNanos; burnCpu chooses between busy work and waiting
+    static WorkloadModel distribution(LongSupplier serviceNanos, boolean burnCpu) {
+        return burnCpu ? () -> Burn.spin(serviceNanos.getAsLong()) : () -> Burn.park(serviceNanos.getAsLong());
+    }
+
+    // Exponentially distributed service times with the given mean, the usual model for independent requests
+    static WorkloadModel exponential(long meanNanos, boolean burnCpu) {
+        return distribution(() -> (long) (-meanNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble())), burnCpu);
+    }
+
+    //Timing helpers shared by the models
+    final class Burn {
+        // Written so the JIT cannot drop the spin loop as dead code
+        static volatile long sink;
+
+        private Burn() {
+        }
+
+        static void spin(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            long value = 1;
+            while (System.nanoTime() - deadline < 0) {
+                value = value * 6364136223846793005L + 1442695040888963407L;
+            }
+            sink = value;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        static void park(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+}
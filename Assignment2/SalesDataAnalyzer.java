@@ -1,10 +1,22 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -85,36 +97,197 @@ public class SalesDataAnalyzer {
     // Package-private for testing
     List<SalesRecord> salesData;
     
+    // Parallel loader chunk sizes: large enough that a small file is one task, small enough
+    // that each chunk is one mapping and its decoded text stays modest
+    static final long MIN_CHUNK_BYTES = 1L << 20;
+    static final long MAX_CHUNK_BYTES = 16L << 20;
+    
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    
     /**
-     * Constructor - loads data from CSV file
+     * Constructor - loads data from CSV file in parallel on the common ForkJoinPool
      * @param csvFilePath Path to CSV file
      * @throws IOException if file cannot be read
      */
     public SalesDataAnalyzer(String csvFilePath) throws IOException {
-        this.salesData = loadSalesData(csvFilePath);
+        this(csvFilePath, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Constructor - loads data from CSV file, parsing chunks on the given pool
+     * @param csvFilePath Path to CSV file
+     * @param pool Pool whose parallelism sets how many chunks are parsed at once
+     * @throws IOException if file cannot be read
+     */
+    public SalesDataAnalyzer(String csvFilePath, ForkJoinPool pool) throws IOException {
+        Path csvFile = Paths.get(csvFilePath);
+        long chunkBytes = Files.size(csvFile) / (pool.getParallelism() * 4L);
+        this.salesData = loadSalesData(csvFile, pool, Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, chunkBytes)));
+    }
+    
+    /**
+     * Load sales data by memory-mapping the CSV and parsing it in parallel
+     * The file (after the header row) is split into chunks that end on a newline, each
+     * chunk is parsed into its own buffer on the pool, and the buffers are merged in
+     * file order, so the result matches loadSalesDataSequential
+     * Like Files.lines, malformed UTF-8 throws an UncheckedIOException
+     * Demonstrates: FileChannel.map, ForkJoinPool, RecursiveAction divide and conquer
+     */
+    static List<SalesRecord> loadSalesData(Path csvFile, ForkJoinPool pool, long chunkBytes) throws IOException {
+        MappedByteBuffer[] chunks;
+        try (FileChannel channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+            long[] bounds = chunkBoundaries(channel, chunkBytes);
+            chunks = new MappedByteBuffer[bounds.length - 1];
+            for (int i = 0; i < chunks.length; i++) {
+                // A mapping stays valid after its channel is closed
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+            }
+        }
+        if (chunks.length == 0) {
+            return new ArrayList<>();
+        }
+        List<List<SalesRecord>> buffers = new ArrayList<>(Collections.nCopies(chunks.length, null));
+        pool.invoke(new ChunkParser(chunks, buffers, 0, chunks.length));
+        
+        List<SalesRecord> records = new ArrayList<>(buffers.stream().mapToInt(List::size).sum());
+        buffers.forEach(records::addAll);
+        return records;
     }
     
     /**
-     * Load sales data from CSV file using Streams
+     * Load sales data from CSV file using Streams, on a single core
      * Demonstrates: Stream operations, lambda expressions, method references
      */
-    private List<SalesRecord> loadSalesData(String csvFilePath) throws IOException {
+    static List<SalesRecord> loadSalesDataSequential(String csvFilePath) throws IOException {
         try (Stream<String> lines = Files.lines(Paths.get(csvFilePath))) {
             return lines.skip(1) // Skip header row
-                .map(this::parseCsvLine)
+                .map(SalesDataAnalyzer::parseCsvLine)
                 .filter(Objects::nonNull) // Filter out parsing errors
                 .collect(Collectors.toList());
         }
     }
     
+    /**
+     * Chunk start offsets followed by the end of the file; the first chunk starts after
+     * the header row and every other boundary falls just after a line terminator
+     */
+    private static long[] chunkBoundaries(FileChannel channel, long chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        long start = lineEnd(channel, 0, size);
+        bounds.add(start);
+        while (start < size) {
+            long end = size - start <= chunkBytes ? size : lineEnd(channel, start + chunkBytes - 1, size);
+            bounds.add(end);
+            start = end;
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+    
+    /**
+     * Offset just past the first \n, \r or \r\n at or after position, or size if there is none
+     * A \r\n pair is never split, so a chunk can't start with the \n of the previous line
+     */
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                if (b == '\r') {
+                    long next = position + i + 1;
+                    return next < size && byteAt(channel, next) == '\n' ? next + 1 : next;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+    
+    private static byte byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, position) == 1 ? one.get(0) : -1;
+    }
+    
+    /**
+     * Parses one line-aligned chunk, splitting lines the way Files.lines does:
+     * \n, \r and \r\n all end a line, and malformed UTF-8 throws instead of being replaced
+     */
+    private static List<SalesRecord> parseChunk(ByteBuffer chunk) {
+        String text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(chunk)
+                .toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<SalesRecord> records = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd < text.length() && text.charAt(lineEnd) == '\r'
+                    && next < text.length() && text.charAt(next) == '\n') {
+                next++;
+            }
+            SalesRecord record = parseCsvLine(text.substring(lineStart, lineEnd));
+            if (record != null) {
+                records.add(record);
+            }
+            lineStart = next;
+        }
+        return records;
+    }
+    
+    /**
+     * Splits the chunk range in halves until one chunk is left, then parses it into its buffer slot
+     */
+    private static class ChunkParser extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient MappedByteBuffer[] chunks;
+        private final transient List<List<SalesRecord>> buffers;
+        private final int from;
+        private final int to;
+        
+        ChunkParser(MappedByteBuffer[] chunks, List<List<SalesRecord>> buffers, int from, int to) {
+            this.chunks = chunks;
+            this.buffers = buffers;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                // Each task writes only its own slot; invoke() makes the writes visible to the caller
+                buffers.set(from, parseChunk(chunks[from]));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkParser(chunks, buffers, from, mid), new ChunkParser(chunks, buffers, mid, to));
+        }
+    }
+    
     /**
      * Parse a single CSV line into SalesRecord
      * Handles parsing errors gracefully
      */
-    private SalesRecord parseCsvLine(String line) {
+    private static SalesRecord parseCsvLine(String line) {
         try {
             String[] fields = line.split(",");
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
             
             return new SalesRecord(
                 fields[0].trim(),
@@ -123,7 +296,7 @@ public class SalesDataAnalyzer {
                 fields[3].trim(),
                 Double.parseDouble(fields[4].trim()),
                 Integer.parseInt(fields[5].trim()),
-                LocalDate.parse(fields[6].trim(), formatter)
+                LocalDate.parse(fields[6].trim(), DATE_FORMAT)
             );
         } catch (DateTimeParseException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
             System.err.println("Warning: Could not parse line: " + line);
@@ -135,23 +308,18 @@ public class SalesDataAnalyzer {
     
     /**
      * 1. Calculate total revenue across all sales
-     * Demonstrates: mapToDouble, sum
+     * Demonstrates: summingDouble
      */
     public double calculateTotalRevenue() {
-        return salesData.stream()
-            .mapToDouble(SalesRecord::getTotalSales)
-            .sum();
+        return salesData.stream().collect(totalRevenue());
     }
     
     /**
      * 2. Calculate average order value
-     * Demonstrates: mapToDouble, average, orElse
+     * Demonstrates: averagingDouble (0.0 when there are no orders)
      */
     public double calculateAverageOrderValue() {
-        return salesData.stream()
-            .mapToDouble(SalesRecord::getTotalSales)
-            .average()
-            .orElse(0.0);
+        return salesData.stream().collect(averageOrderValue());
     }
     
     // ========== REGIONAL ANALYSIS ==========
@@ -161,11 +329,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, summingDouble
      */
     public Map<String, Double> getSalesByRegion() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getRegion,
-                Collectors.summingDouble(SalesRecord::getTotalSales)
-            ));
+        return salesData.stream().collect(salesByRegion());
     }
     
     /**
@@ -173,11 +337,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, averagingDouble
      */
     public Map<String, Double> getAverageSalesByRegion() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getRegion,
-                Collectors.averagingDouble(SalesRecord::getTotalSales)
-            ));
+        return salesData.stream().collect(averageSalesByRegion());
     }
     
     /**
@@ -185,11 +345,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, counting
      */
     public Map<String, Long> getOrderCountByRegion() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getRegion,
-                Collectors.counting()
-            ));
+        return salesData.stream().collect(orderCountByRegion());
     }
     
     // ========== CATEGORY ANALYSIS ==========
@@ -199,11 +355,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, summingDouble
      */
     public Map<String, Double> getSalesByCategory() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getCategory,
-                Collectors.summingDouble(SalesRecord::getTotalSales)
-            ));
+        return salesData.stream().collect(salesByCategory());
     }
     
     /**
@@ -211,11 +363,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, averagingDouble
      */
     public Map<String, Double> getAveragePriceByCategory() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getCategory,
-                Collectors.averagingDouble(SalesRecord::getPrice)
-            ));
+        return salesData.stream().collect(averagePriceByCategory());
     }
     
     /**
@@ -223,11 +371,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, summarizingDouble
      */
     public Map<String, DoubleSummaryStatistics> getSalesStatisticsByCategory() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getCategory,
-                Collectors.summarizingDouble(SalesRecord::getTotalSales)
-            ));
+        return salesData.stream().collect(salesStatisticsByCategory());
     }
     
     // ========== PRODUCT ANALYSIS ==========
@@ -237,16 +381,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, sorted, limit
      */
     public List<Map.Entry<String, Double>> getTopProductsByRevenue(int n) {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getProduct,
-                Collectors.summingDouble(SalesRecord::getTotalSales)
-            ))
-            .entrySet()
-            .stream()
-            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-            .limit(n)
-            .collect(Collectors.toList());
+        return salesData.stream().collect(topProductsByRevenue(n));
     }
     
     /**
@@ -254,11 +389,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, summingInt
      */
     public Map<String, Integer> getTotalQuantityByProduct() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getProduct,
-                Collectors.summingInt(SalesRecord::getQuantity)
-            ));
+        return salesData.stream().collect(totalQuantityByProduct());
     }
     
     /**
@@ -266,11 +397,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy, mapping, toSet
      */
     public Map<String, Set<String>> getProductsByCategory() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getCategory,
-                Collectors.mapping(SalesRecord::getProduct, Collectors.toSet())
-            ));
+        return salesData.stream().collect(productsByCategory());
     }
     
     // ========== TEMPORAL ANALYSIS ==========
@@ -280,20 +407,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy with date formatting, sorted
      */
     public Map<String, Double> getMonthlySalesTrend() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getMonthYear,
-                Collectors.summingDouble(SalesRecord::getTotalSales)
-            ))
-            .entrySet()
-            .stream()
-            .sorted(Map.Entry.comparingByKey())
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
+        return salesData.stream().collect(monthlySalesTrend());
     }
     
     /**
@@ -301,33 +415,25 @@ public class SalesDataAnalyzer {
      * Demonstrates: groupingBy with year extraction
      */
     public Map<String, Double> getYearlySales() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getYear,
-                Collectors.summingDouble(SalesRecord::getTotalSales)
-            ));
+        return salesData.stream().collect(yearlySales());
     }
     
     // ========== ADVANCED ANALYSIS ==========
     
     /**
      * 14. Find highest value order
-     * Demonstrates: max with comparator, Optional
+     * Demonstrates: maxBy with comparator, Optional
      */
     public Optional<SalesRecord> getHighestValueOrder() {
-        return salesData.stream()
-            .max(Comparator.comparingDouble(SalesRecord::getTotalSales));
+        return salesData.stream().collect(highestValueOrder());
     }
     
     /**
      * 15. Get orders above threshold
-     * Demonstrates: filter, sorted
+     * Demonstrates: filtering, sorted
      */
     public List<SalesRecord> getOrdersAboveThreshold(double threshold) {
-        return salesData.stream()
-            .filter(record -> record.getTotalSales() > threshold)
-            .sorted(Comparator.comparingDouble(SalesRecord::getTotalSales).reversed())
-            .collect(Collectors.toList());
+        return salesData.stream().collect(ordersAboveThreshold(threshold));
     }
     
     /**
@@ -335,10 +441,7 @@ public class SalesDataAnalyzer {
      * Demonstrates: partitioningBy
      */
     public Map<Boolean, List<SalesRecord>> partitionOrdersByValue(double threshold) {
-        return salesData.stream()
-            .collect(Collectors.partitioningBy(
-                record -> record.getTotalSales() >= threshold
-            ));
+        return salesData.stream().collect(ordersPartitionedByValue(threshold));
     }
     
     /**
@@ -346,36 +449,386 @@ public class SalesDataAnalyzer {
      * Demonstrates: nested collectors
      */
     public Map<String, Long> getDistinctProductCountByRegion() {
-        return salesData.stream()
-            .collect(Collectors.groupingBy(
-                SalesRecord::getRegion,
-                Collectors.mapping(
-                    SalesRecord::getProduct,
-                    Collectors.collectingAndThen(Collectors.toSet(), set -> (long) set.size())
-                )
-            ));
+        return salesData.stream().collect(distinctProductCountByRegion());
     }
     
     /**
      * 18. Get revenue percentage by region
-     * Demonstrates: complex calculation with streams
+     * Demonstrates: collectingAndThen; the total is the sum of the regional totals,
+     * so one pass is enough instead of one for the total and one for the regions
      */
     public Map<String, Double> getRevenuePercentageByRegion() {
-        double totalRevenue = calculateTotalRevenue();
-        return getSalesByRegion().entrySet().stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                entry -> (entry.getValue() / totalRevenue) * 100
-            ));
+        return salesData.stream().collect(revenuePercentageByRegion());
     }
     
+    // ========== AGGREGATION COLLECTORS ==========
+    // Each analysis above is defined once here, so it can run on its own or be
+    // registered with an AggregationEngine and computed together with the others
+    
     /**
-     * Print all analysis results to console
+     * 1. Collector for the total revenue across all sales
+     * Demonstrates: summingDouble
+     */
+    public static Collector<SalesRecord, ?, Double> totalRevenue() {
+        return Collectors.summingDouble(SalesRecord::getTotalSales);
+    }
+    
+    /**
+     * 2. Collector for the average order value
+     * Demonstrates: averagingDouble (0.0 when there are no orders)
      */
+    public static Collector<SalesRecord, ?, Double> averageOrderValue() {
+        return Collectors.averagingDouble(SalesRecord::getTotalSales);
+    }
+    
+    /**
+     * 3. Collector for total sales by region
+     * Demonstrates: groupingBy, summingDouble
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> salesByRegion() {
+        return Collectors.groupingBy(
+            SalesRecord::getRegion,
+            Collectors.summingDouble(SalesRecord::getTotalSales)
+        );
+    }
+    
+    /**
+     * 4. Collector for average sales by region
+     * Demonstrates: groupingBy, averagingDouble
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> averageSalesByRegion() {
+        return Collectors.groupingBy(
+            SalesRecord::getRegion,
+            Collectors.averagingDouble(SalesRecord::getTotalSales)
+        );
+    }
+    
+    /**
+     * 5. Collector for the order count by region
+     * Demonstrates: groupingBy, counting
+     */
+    public static Collector<SalesRecord, ?, Map<String, Long>> orderCountByRegion() {
+        return Collectors.groupingBy(
+            SalesRecord::getRegion,
+            Collectors.counting()
+        );
+    }
+    
+    /**
+     * 6. Collector for total sales by category
+     * Demonstrates: groupingBy, summingDouble
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> salesByCategory() {
+        return Collectors.groupingBy(
+            SalesRecord::getCategory,
+            Collectors.summingDouble(SalesRecord::getTotalSales)
+        );
+    }
+    
+    /**
+     * 7. Collector for the average price by category
+     * Demonstrates: groupingBy, averagingDouble
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> averagePriceByCategory() {
+        return Collectors.groupingBy(
+            SalesRecord::getCategory,
+            Collectors.averagingDouble(SalesRecord::getPrice)
+        );
+    }
+    
+    /**
+     * 8. Collector for sales statistics by category
+     * Demonstrates: groupingBy, summarizingDouble
+     */
+    public static Collector<SalesRecord, ?, Map<String, DoubleSummaryStatistics>> salesStatisticsByCategory() {
+        return Collectors.groupingBy(
+            SalesRecord::getCategory,
+            Collectors.summarizingDouble(SalesRecord::getTotalSales)
+        );
+    }
+    
+    /**
+     * 9. Collector for the top N products by revenue
+     * Demonstrates: collectingAndThen, groupingBy, sorted, limit
+     */
+    public static Collector<SalesRecord, ?, List<Map.Entry<String, Double>>> topProductsByRevenue(int n) {
+        return Collectors.collectingAndThen(
+            Collectors.groupingBy(
+                SalesRecord::getProduct,
+                Collectors.summingDouble(SalesRecord::getTotalSales)
+            ),
+            revenueByProduct -> revenueByProduct.entrySet()
+                .stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(n)
+                .collect(Collectors.toList())
+        );
+    }
+    
+    /**
+     * 10. Collector for the total quantity sold by product
+     * Demonstrates: groupingBy, summingInt
+     */
+    public static Collector<SalesRecord, ?, Map<String, Integer>> totalQuantityByProduct() {
+        return Collectors.groupingBy(
+            SalesRecord::getProduct,
+            Collectors.summingInt(SalesRecord::getQuantity)
+        );
+    }
+    
+    /**
+     * 11. Collector for the products in each category
+     * Demonstrates: groupingBy, mapping, toSet
+     */
+    public static Collector<SalesRecord, ?, Map<String, Set<String>>> productsByCategory() {
+        return Collectors.groupingBy(
+            SalesRecord::getCategory,
+            Collectors.mapping(SalesRecord::getProduct, Collectors.toSet())
+        );
+    }
+    
+    /**
+     * 12. Collector for the monthly sales trend, oldest month first
+     * Demonstrates: collectingAndThen, groupingBy, toMap into a LinkedHashMap
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> monthlySalesTrend() {
+        return Collectors.collectingAndThen(
+            Collectors.groupingBy(
+                SalesRecord::getMonthYear,
+                Collectors.summingDouble(SalesRecord::getTotalSales)
+            ),
+            salesByMonth -> salesByMonth.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .collect(Collectors.toMap(
+                    Map.Entry::getKey,
+                    Map.Entry::getValue,
+                    (e1, e2) -> e1,
+                    LinkedHashMap::new
+                ))
+        );
+    }
+    
+    /**
+     * 13. Collector for sales by year
+     * Demonstrates: groupingBy with year extraction
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> yearlySales() {
+        return Collectors.groupingBy(
+            SalesRecord::getYear,
+            Collectors.summingDouble(SalesRecord::getTotalSales)
+        );
+    }
+    
+    /**
+     * 14. Collector for the highest value order
+     * Demonstrates: maxBy with comparator, Optional
+     */
+    public static Collector<SalesRecord, ?, Optional<SalesRecord>> highestValueOrder() {
+        return Collectors.maxBy(Comparator.comparingDouble(SalesRecord::getTotalSales));
+    }
+    
+    /**
+     * 15. Collector for the orders above a threshold, largest first
+     * Demonstrates: filtering, collectingAndThen
+     */
+    public static Collector<SalesRecord, ?, List<SalesRecord>> ordersAboveThreshold(double threshold) {
+        return Collectors.collectingAndThen(
+            Collectors.filtering(record -> record.getTotalSales() > threshold, Collectors.toList()),
+            orders -> {
+                orders.sort(Comparator.comparingDouble(SalesRecord::getTotalSales).reversed());
+                return orders;
+            }
+        );
+    }
+    
+    /**
+     * 16. Collector that partitions orders by value
+     * Demonstrates: partitioningBy
+     */
+    public static Collector<SalesRecord, ?, Map<Boolean, List<SalesRecord>>> ordersPartitionedByValue(double threshold) {
+        return Collectors.partitioningBy(
+            record -> record.getTotalSales() >= threshold
+        );
+    }
+    
+    /**
+     * 17. Collector for the distinct product count by region
+     * Demonstrates: nested collectors
+     */
+    public static Collector<SalesRecord, ?, Map<String, Long>> distinctProductCountByRegion() {
+        return Collectors.groupingBy(
+            SalesRecord::getRegion,
+            Collectors.mapping(
+                SalesRecord::getProduct,
+                Collectors.collectingAndThen(Collectors.toSet(), set -> (long) set.size())
+            )
+        );
+    }
+    
+    /**
+     * 18. Collector for each region's share of the revenue
+     * Demonstrates: collectingAndThen over salesByRegion, so one pass is enough
+     */
+    public static Collector<SalesRecord, ?, Map<String, Double>> revenuePercentageByRegion() {
+        return Collectors.collectingAndThen(
+            salesByRegion(),
+            byRegion -> {
+                double totalRevenue = byRegion.values().stream().mapToDouble(Double::doubleValue).sum();
+                return byRegion.entrySet().stream()
+                    .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> (entry.getValue() / totalRevenue) * 100
+                    ));
+            }
+        );
+    }
+    
+    // ========== FUSED SINGLE-PASS ENGINE ==========
+    
+    /**
+     * Computes any number of registered aggregations in a single scan of the records
+     * One combined accumulator holds every registered collector's container, so each
+     * record is read once and fed to all of them, instead of one full pass per analysis
+     * Demonstrates: composing Collectors through Collector.of (supplier, accumulator, combiner, finisher)
+     */
+    public static class AggregationEngine {
+        private final List<Collector<SalesRecord, Object, Object>> collectors = new ArrayList<>();
+        private final List<Aggregate<Object>> aggregates = new ArrayList<>();
+        private long recordsScanned;
+        private int passes;
+    
+        /**
+         * Registers an aggregation; its result is available from the handle after run()
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Aggregate<R> register(Collector<SalesRecord, ?, R> collector) {
+            collectors.add((Collector<SalesRecord, Object, Object>) collector);
+            Aggregate<R> aggregate = new Aggregate<>();
+            aggregates.add((Aggregate<Object>) aggregate);
+            return aggregate;
+        }
+    
+        /**
+         * Computes every registered aggregation in one pass over records
+         */
+        public void run(Collection<SalesRecord> records) {
+            run(records.stream());
+        }
+    
+        /**
+         * Computes every registered aggregation in one pass over the stream; a parallel
+         * stream splits the scan and merges the partial accumulators
+         */
+        public void run(Stream<SalesRecord> records) {
+            Accumulation accumulation = records.collect(combined());
+            for (int i = 0; i < collectors.size(); i++) {
+                aggregates.get(i).complete(collectors.get(i).finisher().apply(accumulation.containers[i]));
+            }
+            recordsScanned = accumulation.records;
+            passes++;
+        }
+    
+        // Records read by the last run
+        public long getRecordsScanned() {
+            return recordsScanned;
+        }
+    
+        // Scans performed so far, however many aggregations each computed
+        public int getPasses() {
+            return passes;
+        }
+    
+        public int getAggregationCount() {
+            return collectors.size();
+        }
+    
+        private Collector<SalesRecord, Accumulation, Accumulation> combined() {
+            return Collector.of(
+                () -> {
+                    Object[] containers = new Object[collectors.size()];
+                    for (int i = 0; i < containers.length; i++) {
+                        containers[i] = collectors.get(i).supplier().get();
+                    }
+                    return new Accumulation(containers);
+                },
+                (accumulation, record) -> {
+                    for (int i = 0; i < accumulation.containers.length; i++) {
+                        collectors.get(i).accumulator().accept(accumulation.containers[i], record);
+                    }
+                    accumulation.records++;
+                },
+                (left, right) -> {
+                    for (int i = 0; i < left.containers.length; i++) {
+                        left.containers[i] = collectors.get(i).combiner().apply(left.containers[i], right.containers[i]);
+                    }
+                    left.records += right.records;
+                    return left;
+                }
+            );
+        }
+    
+        // Per-collector containers for one (partial) scan
+        private static class Accumulation {
+            private final Object[] containers;
+            private long records;
+    
+            Accumulation(Object[] containers) {
+                this.containers = containers;
+            }
+        }
+    }
+    
+    /**
+     * Handle to one aggregation registered with an AggregationEngine
+     */
+    public static class Aggregate<R> {
+        private R value;
+        private boolean computed;
+    
+        private void complete(R result) {
+            this.value = result;
+            this.computed = true;
+        }
+    
+        public R get() {
+            if (!computed) {
+                throw new IllegalStateException("Aggregation has not been computed; call run() on the engine first");
+            }
+            return value;
+        }
+    
+        public boolean isComputed() {
+            return computed;
+        }
+    }
+    
     /**
      * Print all analysis results to console
+     * All 18 analyses are registered with one engine and computed in a single pass
      */
     public void runAllAnalyses() {
+        AggregationEngine engine = new AggregationEngine();
+        Aggregate<Double> totalRevenue = engine.register(totalRevenue());
+        Aggregate<Double> averageOrderValue = engine.register(averageOrderValue());
+        Aggregate<Map<String, Double>> salesByRegion = engine.register(salesByRegion());
+        Aggregate<Map<String, Double>> averageSalesByRegion = engine.register(averageSalesByRegion());
+        Aggregate<Map<String, Long>> orderCountByRegion = engine.register(orderCountByRegion());
+        Aggregate<Map<String, Double>> salesByCategory = engine.register(salesByCategory());
+        Aggregate<Map<String, Double>> averagePriceByCategory = engine.register(averagePriceByCategory());
+        Aggregate<Map<String, DoubleSummaryStatistics>> statisticsByCategory = engine.register(salesStatisticsByCategory());
+        Aggregate<List<Map.Entry<String, Double>>> topProducts = engine.register(topProductsByRevenue(5));
+        Aggregate<Map<String, Integer>> quantityByProduct = engine.register(totalQuantityByProduct());
+        Aggregate<Map<String, Set<String>>> productsByCategory = engine.register(productsByCategory());
+        Aggregate<Map<String, Double>> monthlyTrend = engine.register(monthlySalesTrend());
+        Aggregate<Map<String, Double>> yearlySales = engine.register(yearlySales());
+        Aggregate<Optional<SalesRecord>> highestOrder = engine.register(highestValueOrder());
+        Aggregate<List<SalesRecord>> ordersAbove1000 = engine.register(ordersAboveThreshold(1000.0));
+        Aggregate<Map<String, Double>> revenuePercentage = engine.register(revenuePercentageByRegion());
+        Aggregate<Map<String, Long>> distinctProducts = engine.register(distinctProductCountByRegion());
+        Aggregate<Map<Boolean, List<SalesRecord>>> partitionBy500 = engine.register(ordersPartitionedByValue(500.0));
+        engine.run(salesData);
+        
         System.out.println("================================================================");
         System.out.println("           SALES DATA ANALYSIS RESULTS                          ");
         System.out.println("================================================================");
@@ -383,38 +836,38 @@ public class SalesDataAnalyzer {
         
         // Basic Aggregations
         System.out.println("\n=== BASIC AGGREGATIONS ===");
-        System.out.printf("1. Total Revenue: $%,.2f%n", calculateTotalRevenue());
-        System.out.printf("2. Average Order Value: $%,.2f%n", calculateAverageOrderValue());
+        System.out.printf("1. Total Revenue: $%,.2f%n", totalRevenue.get());
+        System.out.printf("2. Average Order Value: $%,.2f%n", averageOrderValue.get());
         
         // Regional Analysis
         System.out.println("\n=== REGIONAL ANALYSIS ===");
         System.out.println("3. Total Sales by Region:");
-        getSalesByRegion().entrySet().stream()
+        salesByRegion.get().entrySet().stream()
             .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .forEach(e -> System.out.printf("   %-10s: $%,10.2f%n", e.getKey(), e.getValue()));
         
         System.out.println("\n4. Average Sales by Region:");
-        getAverageSalesByRegion().entrySet().stream()
+        averageSalesByRegion.get().entrySet().stream()
             .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .forEach(e -> System.out.printf("   %-10s: $%,10.2f%n", e.getKey(), e.getValue()));
         
         System.out.println("\n5. Order Count by Region:");
-        getOrderCountByRegion().forEach((region, count) -> 
+        orderCountByRegion.get().forEach((region, count) -> 
             System.out.printf("   %-10s: %d orders%n", region, count));
         
         // Category Analysis
         System.out.println("\n=== CATEGORY ANALYSIS ===");
         System.out.println("6. Total Sales by Category:");
-        getSalesByCategory().entrySet().stream()
+        salesByCategory.get().entrySet().stream()
             .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .forEach(e -> System.out.printf("   %-15s: $%,10.2f%n", e.getKey(), e.getValue()));
         
         System.out.println("\n7. Average Price by Category:");
-        getAveragePriceByCategory().forEach((cat, avg) -> 
+        averagePriceByCategory.get().forEach((cat, avg) -> 
             System.out.printf("   %-15s: $%8.2f%n", cat, avg));
         
         System.out.println("\n8. Sales Statistics by Category:");
-        getSalesStatisticsByCategory().forEach((cat, stats) -> {
+        statisticsByCategory.get().forEach((cat, stats) -> {
             System.out.printf("   %s:%n", cat);
             System.out.printf("      Count: %d, Min: $%.2f, Max: $%.2f, Avg: $%.2f, Total: $%.2f%n",
                 stats.getCount(), stats.getMin(), stats.getMax(), stats.getAverage(), stats.getSum());
@@ -423,51 +876,51 @@ public class SalesDataAnalyzer {
         // Product Analysis
         System.out.println("\n=== PRODUCT ANALYSIS ===");
         System.out.println("9. Top 5 Products by Revenue:");
-        getTopProductsByRevenue(5).forEach(e -> 
+        topProducts.get().forEach(e -> 
             System.out.printf("   %-15s: $%,10.2f%n", e.getKey(), e.getValue()));
         
         System.out.println("\n10. Total Quantity Sold by Product:");
-        getTotalQuantityByProduct().entrySet().stream()
+        quantityByProduct.get().entrySet().stream()
             .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
             .limit(10)
             .forEach(e -> System.out.printf("   %-15s: %4d units%n", e.getKey(), e.getValue()));
         
         System.out.println("\n11. Products by Category:");
-        getProductsByCategory().forEach((cat, prods) -> 
+        productsByCategory.get().forEach((cat, prods) -> 
             System.out.printf("   %-15s: %s%n", cat, prods));
         
         // Temporal Analysis
         System.out.println("\n=== TEMPORAL ANALYSIS ===");
         System.out.println("12. Monthly Sales Trend:");
-        getMonthlySalesTrend().forEach((month, total) -> 
+        monthlyTrend.get().forEach((month, total) -> 
             System.out.printf("   %-10s: $%,10.2f%n", month, total));
         
         System.out.println("\n13. Yearly Sales:");
-        getYearlySales().forEach((year, total) -> 
+        yearlySales.get().forEach((year, total) -> 
             System.out.printf("   %-10s: $%,10.2f%n", year, total));
         
         // Advanced Analysis
         System.out.println("\n=== ADVANCED ANALYSIS ===");
         System.out.println("14. Highest Value Order:");
-        getHighestValueOrder().ifPresent(record -> 
+        highestOrder.get().ifPresent(record -> 
             System.out.printf("   %s%n", record));
         
         System.out.println("\n15. Orders Above $1000:");
-        getOrdersAboveThreshold(1000.0).stream()
+        ordersAbove1000.get().stream()
             .limit(10)
             .forEach(r -> System.out.printf("   %s%n", r));
         
         System.out.println("\n16. Revenue Percentage by Region:");
-        getRevenuePercentageByRegion().entrySet().stream()
+        revenuePercentage.get().entrySet().stream()
             .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .forEach(e -> System.out.printf("   %-10s: %6.2f%%%n", e.getKey(), e.getValue()));
         
         System.out.println("\n17. Distinct Product Count by Region:");
-        getDistinctProductCountByRegion().forEach((region, count) -> 
+        distinctProducts.get().forEach((region, count) -> 
         System.out.printf("   %-10s: %d products%n", region, count));
     
         System.out.println("\n18. Order Value Distribution (threshold=$500):");
-        Map<Boolean, List<SalesRecord>> partition = partitionOrdersByValue(500.0);
+        Map<Boolean, List<SalesRecord>> partition = partitionBy500.get();
         System.out.printf("   High Value (>=$500): %d orders%n", partition.get(true).size());
         System.out.printf("   Low Value (<$500):  %d orders%n", partition.get(false).size());
     
@@ -1,7 +1,10 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Standalone unit tests for SalesDataAnalyzer (No JUnit required)
@@ -48,6 +51,8 @@ public class SalesDataAnalyzerTest {
             test22_EmptyResults(analyzer);
             test23_OptionalHandling(analyzer);
             test24_CSVParsingErrors();
+            test25_FusedAggregationEngine(analyzer);
+            test26_ParallelMappedLoader();
             
             // Cleanup
             Files.deleteIfExists(Paths.get(TEST_CSV_FILE));
@@ -393,4 +398,126 @@ public class SalesDataAnalyzerTest {
         assertEquals(2, badAnalyzer.salesData.size(), "Loads only valid records");
         Files.deleteIfExists(Paths.get("bad_test.csv"));
     }
+    
+    private static void test25_FusedAggregationEngine(SalesDataAnalyzer analyzer) {
+        testHeader("Test 25: Fused Single-Pass Aggregation Engine");
+        SalesDataAnalyzer.AggregationEngine engine = new SalesDataAnalyzer.AggregationEngine();
+        SalesDataAnalyzer.Aggregate<Double> revenue = engine.register(SalesDataAnalyzer.totalRevenue());
+        SalesDataAnalyzer.Aggregate<Double> average = engine.register(SalesDataAnalyzer.averageOrderValue());
+        SalesDataAnalyzer.Aggregate<Map<String, Double>> byRegion = engine.register(SalesDataAnalyzer.salesByRegion());
+        SalesDataAnalyzer.Aggregate<Map<String, Long>> countByRegion = engine.register(SalesDataAnalyzer.orderCountByRegion());
+        SalesDataAnalyzer.Aggregate<Map<String, Double>> byCategory = engine.register(SalesDataAnalyzer.salesByCategory());
+        SalesDataAnalyzer.Aggregate<Map<String, Double>> monthly = engine.register(SalesDataAnalyzer.monthlySalesTrend());
+        SalesDataAnalyzer.Aggregate<Map<String, Double>> yearly = engine.register(SalesDataAnalyzer.yearlySales());
+        SalesDataAnalyzer.Aggregate<List<Map.Entry<String, Double>>> top = engine.register(SalesDataAnalyzer.topProductsByRevenue(3));
+        SalesDataAnalyzer.Aggregate<Optional<SalesDataAnalyzer.SalesRecord>> highest = engine.register(SalesDataAnalyzer.highestValueOrder());
+        SalesDataAnalyzer.Aggregate<List<SalesDataAnalyzer.SalesRecord>> above = engine.register(SalesDataAnalyzer.ordersAboveThreshold(500.0));
+        SalesDataAnalyzer.Aggregate<Map<String, Double>> percentages = engine.register(SalesDataAnalyzer.revenuePercentageByRegion());
+        
+        boolean rejected = false;
+        try {
+            revenue.get();
+        } catch (IllegalStateException e) {
+            rejected = true;
+        }
+        assertTrue(rejected, "Result unavailable before the engine runs");
+        
+        // Expected values are the ones tests 2-19 check; a parallel scan merges partial accumulators and must agree
+        String[] runs = {"Fused", "Parallel fused"};
+        for (int run = 0; run < runs.length; run++) {
+            String label = runs[run];
+            if (run == 0) {
+                engine.run(analyzer.salesData);
+            } else {
+                engine.run(analyzer.salesData.parallelStream());
+            }
+            assertEquals(11, engine.getAggregationCount(), label + ": eleven aggregations registered");
+            assertEquals(run + 1, engine.getPasses(), label + ": every aggregation computed in a single additional pass");
+            assertEquals(10L, engine.getRecordsScanned(), label + ": each record scanned once");
+            assertEquals(5075.0, revenue.get(), 0.01, label + " total revenue");
+            assertEquals(507.5, average.get(), 0.01, label + " average order value");
+            assertEquals(4, byRegion.get().size(), label + " sales cover 4 regions");
+            assertEquals(2050.0, byRegion.get().get("North"), 0.01, label + " North sales");
+            long orders = countByRegion.get().values().stream().mapToLong(Long::longValue).sum();
+            assertEquals(10L, orders, label + " total orders");
+            assertEquals(3825.0, byCategory.get().get("Electronics"), 0.01, label + " Electronics sales");
+            assertTrue(monthly.get() instanceof LinkedHashMap, label + " monthly trend is a LinkedHashMap");
+            assertEquals(Arrays.asList("2024-01", "2024-02", "2024-03", "2024-04"), new ArrayList<>(monthly.get().keySet()),
+                label + " monthly trend keeps month order");
+            assertEquals(2000.0, monthly.get().get("2024-01"), 0.01, label + " January sales");
+            assertEquals(5075.0, yearly.get().get("2024"), 0.01, label + " 2024 sales");
+            assertEquals(3, top.get().size(), label + " top products returns 3");
+            assertEquals("Laptop", top.get().get(0).getKey(), label + " top product is Laptop");
+            assertEquals(2400.0, top.get().get(0).getValue(), 0.01, label + " Laptop revenue");
+            assertTrue(highest.get().isPresent(), label + " highest order exists");
+            assertEquals(1200.0, highest.get().get().getTotalSales(), 0.01, label + " highest order value");
+            assertEquals(3, above.get().size(), label + " orders above $500");
+            assertEquals(1200.0, above.get().get(0).getTotalSales(), 0.01, label + " orders above threshold sorted descending");
+            assertEquals(800.0, above.get().get(2).getTotalSales(), 0.01, label + " smallest order above threshold");
+            double totalPercentage = percentages.get().values().stream().mapToDouble(Double::doubleValue).sum();
+            assertEquals(100.0, totalPercentage, 0.01, label + " percentages sum to 100");
+        }
+    }
+    
+    private static void test26_ParallelMappedLoader() throws IOException {
+        testHeader("Test 26: Parallel Memory-Mapped CSV Loader");
+        String[] regions = {"North", "South", "East", "West"};
+        StringBuilder csv = new StringBuilder("OrderID,Region,Product,Category,Price,Quantity,Date\n");
+        for (int i = 1; i <= 5000; i++) {
+            csv.append(String.format("ORD%05d,%s,Product%d,Category%d,%d.50,%d,2024-%02d-%02d",
+                i, regions[i % 4], i % 37, i % 5, 10 + i % 90, 1 + i % 7, 1 + i % 12, 1 + i % 28));
+            // Mix \n, \r\n and lone \r line endings, leave one bad line and no newline after the last row
+            if (i == 2500) {
+                csv.append("\nBAD LINE");
+            }
+            if (i < 5000) {
+                csv.append(i % 3 == 0 ? "\r\n" : i % 5 == 0 ? "\r" : "\n");
+            }
+        }
+        Files.write(Paths.get("parallel_test.csv"), csv.toString().getBytes());
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Tiny chunks force hundreds of newline-aligned splits, many of them mid-file
+            List<SalesDataAnalyzer.SalesRecord> parallel =
+                SalesDataAnalyzer.loadSalesData(Paths.get("parallel_test.csv"), pool, 512);
+            List<SalesDataAnalyzer.SalesRecord> sequential =
+                SalesDataAnalyzer.loadSalesDataSequential("parallel_test.csv");
+            assertEquals(5000, parallel.size(), "Loads every valid row across chunks");
+            assertEquals(sequential.size(), parallel.size(), "Same row count as the sequential loader");
+            assertEquals(sequential.toString(), parallel.toString(), "Same records in file order");
+            assertEquals("ORD05000", parallel.get(parallel.size() - 1).getOrderId(), "Last row without newline loaded");
+            
+            SalesDataAnalyzer pooled = new SalesDataAnalyzer("parallel_test.csv", pool);
+            assertEquals(parallel.toString(), pooled.salesData.toString(), "Constructor uses the parallel loader");
+            
+            // 0xFF is never valid UTF-8; both loaders must reject it rather than substitute a replacement char
+            Files.write(Paths.get("parallel_test.csv"), "OrderID,Region,Product,Category,Price,Quantity,Date\nORD1,North,Widget\u00ff,A,1.00,1,2024-01-01\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            boolean parallelRejected = false;
+            try {
+                SalesDataAnalyzer.loadSalesData(Paths.get("parallel_test.csv"), pool, 512);
+            } catch (UncheckedIOException e) {
+                parallelRejected = true;
+            }
+            assertTrue(parallelRejected, "Parallel loader throws on malformed UTF-8");
+            boolean sequentialRejected = false;
+            try {
+                SalesDataAnalyzer.loadSalesDataSequential("parallel_test.csv");
+            } catch (UncheckedIOException e) {
+                sequentialRejected = true;
+            }
+            assertTrue(sequentialRejected, "Sequential loader throws on malformed UTF-8");
+            
+            Files.write(Paths.get("parallel_test.csv"), "OrderID,Region,Product,Category,Price,Quantity,Date\n".getBytes());
+            assertEquals(0, SalesDataAnalyzer.loadSalesData(Paths.get("parallel_test.csv"), pool, 512).size(),
+                "Header-only file loads no records");
+            Files.write(Paths.get("parallel_test.csv"), new byte[0]);
+            assertEquals(0, SalesDataAnalyzer.loadSalesData(Paths.get("parallel_test.csv"), pool, 512).size(),
+                "Empty file loads no records");
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(Paths.get("parallel_test.csv"));
+        }
+    }
 }